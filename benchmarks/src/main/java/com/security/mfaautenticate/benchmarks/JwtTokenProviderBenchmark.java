@@ -0,0 +1,55 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.security.JwtTokenProvider;
+import com.security.mfaautenticate.security.TenantContext;
+import io.jsonwebtoken.Claims;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emisión y verificación de JWT (HMAC-SHA): la verificación corre en cada petición autenticada.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtTokenProviderBenchmark {
+
+    private static final String EMAIL = "bench@example.com";
+
+    private JwtTokenProvider tokenProvider;
+    private String token;
+    private String tampered;
+
+    @Setup
+    public void setUp() {
+        tokenProvider = new JwtTokenProvider();
+        ReflectionTestUtils.setField(tokenProvider, "jwtSecret",
+                "benchmark-secret-key-with-at-least-256-bits-for-hmac-sha");
+        ReflectionTestUtils.setField(tokenProvider, "jwtExpiration", 3_600_000L);
+
+        token = tokenProvider.generateToken(EMAIL, TenantContext.DEFAULT);
+        // Misma longitud, firma inválida: se rechaza tras calcular el HMAC
+        char last = token.charAt(token.length() - 1);
+        tampered = token.substring(0, token.length() - 1) + (last == 'A' ? 'B' : 'A');
+    }
+
+    @Benchmark
+    public String generate() {
+        return tokenProvider.generateToken(EMAIL, TenantContext.DEFAULT);
+    }
+
+    @Benchmark
+    public Claims validate() {
+        return tokenProvider.getValidClaims(token);
+    }
+
+    @Benchmark
+    public Claims rejectTampered() {
+        return tokenProvider.getValidClaims(tampered);
+    }
+}
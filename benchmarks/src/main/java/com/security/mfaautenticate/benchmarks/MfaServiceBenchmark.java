@@ -0,0 +1,57 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.service.MfaService;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verificación TOTP (código válido y código incorrecto, que recorre toda la ventana) y generación
+ * del QR de alta de MFA.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MfaServiceBenchmark {
+
+    private MfaService mfaService;
+    private String secret;
+    private String validCode;
+    private String invalidCode;
+
+    @Setup
+    public void setUp() {
+        mfaService = new MfaService();
+        ReflectionTestUtils.setField(mfaService, "issuer", "MFA-Authenticate-App");
+        secret = mfaService.generateSecretKey();
+    }
+
+    // El código cambia cada 30 s: se recalcula en cada iteración para que siga siendo válido
+    @Setup(Level.Iteration)
+    public void refreshCode() {
+        int code = new GoogleAuthenticator().getTotpPassword(secret);
+        validCode = String.format("%06d", code);
+        invalidCode = String.format("%06d", (code + 500_000) % 1_000_000);
+    }
+
+    @Benchmark
+    public boolean verifyValidCode() {
+        return mfaService.verifyCode(secret, validCode);
+    }
+
+    @Benchmark
+    public boolean verifyInvalidCode() {
+        return mfaService.verifyCode(secret, invalidCode);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String generateQRCodeDataUri() {
+        return mfaService.generateQRCodeDataUri(secret, "bench@example.com");
+    }
+}
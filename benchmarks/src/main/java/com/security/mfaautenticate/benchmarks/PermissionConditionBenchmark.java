@@ -0,0 +1,86 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.Permission;
+import com.security.mfaautenticate.entity.Resource;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.security.ConditionContext;
+import com.security.mfaautenticate.service.EffectivePermissions;
+import com.security.mfaautenticate.service.RbacService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de {@link EffectivePermissions#isGranted} con y sin condición sobre el permiso. El caso
+ * incondicional debe quedar prácticamente igual que el chequeo sin contexto. Un rol con READ
+ * incondicional y UPDATE condicionado sobre un recurso propio, añadido al grafo de {@link RbacFixture}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionConditionBenchmark {
+
+    private RbacFixture fixture;
+    private EffectivePermissions effectivePermissions;
+    private List<Long> roleIds;
+    private Long resourceId;
+    private ConditionContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = RbacFixture.start(3);
+        RbacService rbacService = fixture.bean(RbacService.class);
+        effectivePermissions = fixture.bean(EffectivePermissions.class);
+
+        Resource resource = rbacService.createResource("Conditions", null, "bench/conditions");
+        Permission plain = rbacService.createPermission(resource.getId(), Operation.READ);
+        Permission conditional = rbacService.createPermission(resource.getId(), Operation.UPDATE,
+                "user.mfaEnabled && time.hour >= 0");
+        Role role = rbacService.createRole("BENCH_CONDITIONS", null);
+        rbacService.assignPermissionToRole(role.getId(), plain.getId());
+        rbacService.assignPermissionToRole(role.getId(), conditional.getId());
+        roleIds = List.of(role.getId());
+        resourceId = resource.getId();
+
+        User user = User.builder().id(1L).email(RbacFixture.MEMBER).oauthProvider(OAuthProvider.GOOGLE)
+                .mfaEnabled(true).build();
+        context = new ConditionContext() {
+            @Override
+            public User user() {
+                return user;
+            }
+        };
+
+        // El primer chequeo compila el modelo fuera de la medición y valida el escenario
+        if (!withoutContext() || !unconditional() || !conditional()) {
+            throw new IllegalStateException("El escenario de condiciones no concede lo esperado");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean withoutContext() {
+        return effectivePermissions.isGranted(roleIds, resourceId, Operation.READ);
+    }
+
+    @Benchmark
+    public boolean unconditional() {
+        return effectivePermissions.isGranted(roleIds, resourceId, Operation.READ, context);
+    }
+
+    @Benchmark
+    public boolean conditional() {
+        return effectivePermissions.isGranted(roleIds, resourceId, Operation.UPDATE, context);
+    }
+}
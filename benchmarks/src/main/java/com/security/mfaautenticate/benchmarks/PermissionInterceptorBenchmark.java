@@ -0,0 +1,95 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.security.PermissionInterceptor;
+import com.security.mfaautenticate.security.RequirePermission;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decisión completa de {@link PermissionInterceptor#preHandle} para un handler con
+ * {@link RequirePermission}: chequeo de admin, permiso y registro de auditoría. Grafo de
+ * {@value #ROLES} roles; el principal ya está autenticado, como tras JwtAuthenticationFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PermissionInterceptorBenchmark {
+
+    static final int ROLES = 100;
+
+    private RbacFixture fixture;
+    private PermissionInterceptor interceptor;
+    private HandlerMethod granted;
+    private HandlerMethod denied;
+    private MockHttpServletRequest memberRequest;
+    private MockHttpServletRequest adminRequest;
+
+    /**
+     * Handlers de ejemplo; las rutas coinciden con las del grafo de {@link RbacFixture} para {@value #ROLES} roles.
+     */
+    public static class Handlers {
+
+        @RequirePermission(resource = "bench/r0", operation = Operation.READ)
+        public void granted() {
+        }
+
+        @RequirePermission(resource = "bench/r98", operation = Operation.READ)
+        public void denied() {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchMethodException {
+        fixture = RbacFixture.start(ROLES);
+        interceptor = fixture.bean(PermissionInterceptor.class);
+        Handlers handlers = new Handlers();
+        granted = new HandlerMethod(handlers, Handlers.class.getMethod("granted"));
+        denied = new HandlerMethod(handlers, Handlers.class.getMethod("denied"));
+
+        UserRepository userRepository = fixture.bean(UserRepository.class);
+        memberRequest = request(userRepository.findWithRolesByEmail(RbacFixture.MEMBER).get(0));
+        adminRequest = request(userRepository.findWithRolesByEmail(RbacFixture.ADMIN).get(0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean memberGranted() throws Exception {
+        return interceptor.preHandle(memberRequest, new MockHttpServletResponse(), granted);
+    }
+
+    @Benchmark
+    public boolean memberDenied() throws Exception {
+        return interceptor.preHandle(memberRequest, new MockHttpServletResponse(), denied);
+    }
+
+    @Benchmark
+    public boolean admin() throws Exception {
+        return interceptor.preHandle(adminRequest, new MockHttpServletResponse(), denied);
+    }
+
+    private static MockHttpServletRequest request(User user) {
+        List<SimpleGrantedAuthority> authorities = user.getRoles().stream()
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role.getName()))
+                .toList();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/bench");
+        request.setUserPrincipal(new UsernamePasswordAuthenticationToken(user, null, authorities));
+        return request;
+    }
+}
@@ -0,0 +1,99 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.MfaAutenticateApplication;
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.Resource;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.service.RbacService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Aplicación completa sobre H2 en memoria con un grafo RBAC sintético de {@code roles} roles:
+ * el rol {@code i} hereda del rol {@code (i - 1) / 2} (árbol binario, profundidad log2) y concede
+ * READ sobre el recurso {@code bench/r<i>}. El usuario {@link #MEMBER} tiene solo el rol más
+ * profundo, así que {@code bench/r0} se concede por herencia y {@code bench/r<roles - 2>} se deniega;
+ * {@link #ADMIN} tiene el rol ADMIN.
+ */
+final class RbacFixture implements AutoCloseable {
+
+    static final String MEMBER = "member@bench.example.com";
+    static final String ADMIN = "admin@bench.example.com";
+
+    private final ConfigurableApplicationContext context;
+
+    private RbacFixture(ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    static RbacFixture start(int roles) {
+        if (roles < 3) {
+            throw new IllegalArgumentException("Se necesitan al menos 3 roles");
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(MfaAutenticateApplication.class)
+                .profiles("bench")
+                // Como argumento: las propiedades por defecto del builder pierden ante application.yml
+                .run("--spring.datasource.url=jdbc:h2:mem:bench_" + System.nanoTime()
+                        + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+        RbacFixture fixture = new RbacFixture(context);
+        fixture.seed(roles);
+        return fixture;
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    static String grantedPath() {
+        return "bench/r0";
+    }
+
+    static String deniedPath(int roles) {
+        return "bench/r" + (roles - 2);
+    }
+
+    private void seed(int roles) {
+        RbacService rbacService = bean(RbacService.class);
+        UserRepository userRepository = bean(UserRepository.class);
+
+        Long[] roleIds = new Long[roles];
+        for (int i = 0; i < roles; i++) {
+            Resource resource = rbacService.createResource("R" + i, null, "bench/r" + i);
+            Role role = rbacService.createRole("BENCH_" + i, null);
+            rbacService.assignPermissionToRole(role.getId(),
+                    rbacService.createPermission(resource.getId(), Operation.READ).getId());
+            if (i > 0) {
+                rbacService.assignParentToRole(role.getId(), roleIds[(i - 1) / 2]);
+            }
+            roleIds[i] = role.getId();
+        }
+
+        User member = userRepository.save(user(MEMBER));
+        rbacService.assignRoleToUser(member.getId(), roleIds[roles - 1]);
+        User admin = userRepository.save(user(ADMIN));
+        rbacService.assignRoleToUser(admin.getId(), rbacService.getRoleByName("ADMIN").orElseThrow().getId());
+
+        // El primer chequeo compila los permisos efectivos fuera de la medición y valida el grafo
+        if (!rbacService.hasPermission(MEMBER, grantedPath(), Operation.READ)
+                || rbacService.hasPermission(MEMBER, deniedPath(roles), Operation.READ)) {
+            throw new IllegalStateException("El grafo sintético no concede lo esperado");
+        }
+    }
+
+    private static User user(String email) {
+        return User.builder()
+                .email(email)
+                .name(email)
+                .oauthProvider(OAuthProvider.GOOGLE)
+                .oauthId(email)
+                .build();
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,54 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.service.RbacService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RbacService#hasPermission} sobre grafos RBAC de tamaño creciente (ver {@link RbacFixture}):
+ * consulta de los roles del usuario más la prueba de bits en memoria.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RbacServiceBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int roles;
+
+    private RbacFixture fixture;
+    private RbacService rbacService;
+    private String deniedPath;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = RbacFixture.start(roles);
+        rbacService = fixture.bean(RbacService.class);
+        deniedPath = RbacFixture.deniedPath(roles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public boolean grantedByInheritance() {
+        return rbacService.hasPermission(RbacFixture.MEMBER, RbacFixture.grantedPath(), Operation.READ);
+    }
+
+    @Benchmark
+    public boolean denied() {
+        return rbacService.hasPermission(RbacFixture.MEMBER, deniedPath, Operation.READ);
+    }
+
+    @Benchmark
+    public boolean unknownUser() {
+        return rbacService.hasPermission("nobody@bench.example.com", RbacFixture.grantedPath(), Operation.READ);
+    }
+}
@@ -0,0 +1,85 @@
+package com.security.mfaautenticate.benchmarks;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.service.RbacService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alta masiva de usuarios con su rol: cada operación persiste {@code chunk} usuarios en una
+ * transacción (ids de secuencia pooled e inserciones JDBC en lote). Los usuarios insertados se
+ * borran al final de cada iteración para que la tabla no crezca durante la medición.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserInsertBenchmark {
+
+    private static final String EMAIL_PREFIX = "insert";
+
+    @Param({"100", "1000"})
+    public int chunk;
+
+    private RbacFixture fixture;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+    private Long roleId;
+    private long nextUser;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = RbacFixture.start(3);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(fixture.bean(EntityManagerFactory.class));
+        transactionTemplate = fixture.bean(TransactionTemplate.class);
+        jdbcTemplate = fixture.bean(JdbcTemplate.class);
+        roleId = fixture.bean(RbacService.class).getRoleByName("USER").orElseThrow().getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteInsertedUsers() {
+        jdbcTemplate.update("delete from user_roles where user_id in (select id from users where email like ?)",
+                EMAIL_PREFIX + "%");
+        jdbcTemplate.update("delete from users where email like ?", EMAIL_PREFIX + "%");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void insertChunk() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Role role = entityManager.getReference(Role.class, roleId);
+            for (int i = 0; i < chunk; i++) {
+                entityManager.persist(user(nextUser++, role));
+            }
+            entityManager.flush();
+            entityManager.clear();
+        });
+    }
+
+    private static User user(long i, Role role) {
+        return User.builder()
+                .email(EMAIL_PREFIX + i + "@bench.example.com")
+                .name("Bench " + i)
+                .oauthProvider(OAuthProvider.GOOGLE)
+                .oauthId(EMAIL_PREFIX + "-" + i)
+                .roles(new HashSet<>(Set.of(role)))
+                .build();
+    }
+}
@@ -0,0 +1,88 @@
+package com.security.mfaautenticate.loadtest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latencias por operación. Cada usuario virtual escribe en su propio recorder, sin sincronización
+ * en el camino medido; al terminar se combinan con {@link #merge} y se resumen en percentiles.
+ */
+final class LatencyRecorder {
+
+    private final Map<String, Samples> operations = new LinkedHashMap<>();
+
+    void record(String operation, long nanos) {
+        samples(operation).add(nanos);
+    }
+
+    void error(String operation, Exception cause) {
+        Samples samples = samples(operation);
+        if (samples.errors++ == 0) {
+            samples.firstError = cause.getMessage();
+        }
+    }
+
+    synchronized void merge(LatencyRecorder other) {
+        other.operations.forEach((operation, samples) -> {
+            Samples target = samples(operation);
+            for (int i = 0; i < samples.size; i++) {
+                target.add(samples.values[i]);
+            }
+            if (target.firstError == null) {
+                target.firstError = samples.firstError;
+            }
+            target.errors += samples.errors;
+        });
+    }
+
+    /**
+     * Percentiles por rango más cercano sobre todas las muestras correctas; el throughput es de
+     * peticiones correctas sobre la duración total de la fase medida.
+     */
+    synchronized List<Summary> summarize(Duration elapsed) {
+        double seconds = elapsed.toNanos() / 1e9;
+        List<Summary> summaries = new ArrayList<>();
+        operations.forEach((operation, samples) -> {
+            long[] sorted = Arrays.copyOf(samples.values, samples.size);
+            Arrays.sort(sorted);
+            summaries.add(new Summary(operation, sorted.length, samples.errors, sorted.length / seconds,
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100),
+                    samples.firstError));
+        });
+        return summaries;
+    }
+
+    private Samples samples(String operation) {
+        return operations.computeIfAbsent(operation, key -> new Samples());
+    }
+
+    private static double percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    record Summary(String operation, int count, int errors, double throughput,
+                   double p50Ms, double p90Ms, double p99Ms, double maxMs, String firstError) {
+    }
+
+    private static final class Samples {
+        private long[] values = new long[256];
+        private int size;
+        private int errors;
+        private String firstError;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
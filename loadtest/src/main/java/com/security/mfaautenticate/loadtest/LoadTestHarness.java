@@ -0,0 +1,180 @@
+package com.security.mfaautenticate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.security.mfaautenticate.MfaAutenticateApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prueba de carga de extremo a extremo: arranca el proveedor OAuth2 simulado, la aplicación
+ * completa apuntando a él y {@code users} usuarios virtuales concurrentes, cada uno con
+ * {@code logins} logins OAuth2 (el primero con alta y activación de MFA, el resto con verificación
+ * MFA) y {@code calls} llamadas autenticadas por login. Imprime throughput y percentiles de
+ * latencia por operación y los guarda en JSON.
+ * <p>
+ * Argumentos {@code clave=valor}: {@code users} (20), {@code logins} (5), {@code calls} (20),
+ * {@code warmup} (usuarios de calentamiento, no medidos; 4), {@code db} ({@code h2} en memoria o
+ * {@code postgres} con el datasource de application.yml) y {@code result} (ruta del JSON).
+ * Los que empiezan por {@code --} pasan tal cual a la aplicación, p. ej.
+ * {@code --spring.datasource.url=jdbc:postgresql://localhost:5432/mfa_load}.
+ */
+public final class LoadTestHarness {
+
+    private static final String EMAIL_DOMAIN = "@loadtest.example.com";
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+        try (StubOAuthProvider provider = StubOAuthProvider.start();
+             ConfigurableApplicationContext application = startApplication(options, provider)) {
+            int port = ((WebServerApplicationContext) application).getWebServer().getPort();
+            URI base = URI.create("http://localhost:" + port);
+            System.out.printf("Aplicación en %s (%s), proveedor simulado en %s%n", base, options.db(), provider.baseUrl());
+
+            // Calentamiento: JIT, pools de conexiones y cachés antes de medir
+            run(base, objectMapper, "warmup-", options.warmup(), options);
+
+            System.out.printf("Midiendo: %d usuarios x %d logins x %d llamadas%n",
+                    options.users(), options.logins(), options.calls());
+            LatencyRecorder recorder = new LatencyRecorder();
+            long start = System.nanoTime();
+            run(base, objectMapper, "vu-", options.users(), options, recorder);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+            List<LatencyRecorder.Summary> summaries = recorder.summarize(elapsed);
+            print(summaries, elapsed);
+            write(objectMapper, options, summaries, elapsed);
+        }
+    }
+
+    private static ConfigurableApplicationContext startApplication(Options options, StubOAuthProvider provider) {
+        List<String> arguments = new ArrayList<>(provider.applicationArguments());
+        arguments.addAll(options.applicationArguments());
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(MfaAutenticateApplication.class);
+        // Las URIs del proveedor van como argumentos: las propiedades por defecto del builder pierden ante application.yml
+        return switch (options.db()) {
+            case "h2" -> builder.profiles("loadtest", "loadtest-h2").run(arguments.toArray(String[]::new));
+            case "postgres" -> builder.profiles("loadtest").run(arguments.toArray(String[]::new));
+            default -> throw new IllegalArgumentException("db desconocida: " + options.db());
+        };
+    }
+
+    private static void run(URI base, ObjectMapper objectMapper, String prefix, int users, Options options) throws InterruptedException {
+        run(base, objectMapper, prefix, users, options, new LatencyRecorder());
+    }
+
+    /**
+     * Un hilo por usuario virtual; todos arrancan a la vez y cada uno combina sus latencias al terminar.
+     */
+    private static void run(URI base, ObjectMapper objectMapper, String prefix, int users, Options options,
+                            LatencyRecorder recorder) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(1);
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(users, 1))) {
+            for (int i = 0; i < users; i++) {
+                String email = prefix + i + EMAIL_DOMAIN;
+                executor.execute(() -> {
+                    LatencyRecorder local = new LatencyRecorder();
+                    VirtualUser user = new VirtualUser(base, email, objectMapper, local);
+                    try {
+                        ready.await();
+                        user.run(options.logins(), options.calls());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        recorder.merge(local);
+                    }
+                });
+            }
+            ready.countDown();
+        }
+    }
+
+    private static void print(List<LatencyRecorder.Summary> summaries, Duration elapsed) {
+        System.out.printf("%nDuración: %.1f s%n", elapsed.toNanos() / 1e9);
+        System.out.printf("%-14s %8s %7s %9s %9s %9s %9s %9s%n",
+                "operación", "total", "errores", "req/s", "p50 ms", "p90 ms", "p99 ms", "máx ms");
+        for (LatencyRecorder.Summary summary : summaries) {
+            System.out.printf("%-14s %8d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    summary.operation(), summary.count(), summary.errors(), summary.throughput(),
+                    summary.p50Ms(), summary.p90Ms(), summary.p99Ms(), summary.maxMs());
+        }
+        summaries.stream()
+                .filter(summary -> summary.firstError() != null)
+                .forEach(summary -> System.out.printf("Primer error en %s: %s%n", summary.operation(), summary.firstError()));
+    }
+
+    private static void write(ObjectMapper objectMapper, Options options, List<LatencyRecorder.Summary> summaries,
+                              Duration elapsed) throws Exception {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("users", options.users());
+        result.put("logins", options.logins());
+        result.put("calls", options.calls());
+        result.put("db", options.db());
+        result.put("elapsedSeconds", elapsed.toNanos() / 1e9);
+        result.put("operations", summaries);
+
+        Path path = Path.of(options.result());
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.writeValue(path.toFile(), result);
+        System.out.printf("Resultados en %s%n", path.toAbsolutePath());
+    }
+
+    record Options(int users, int logins, int calls, int warmup, String db, String result,
+                   List<String> applicationArguments) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>(Map.of(
+                    "users", "20",
+                    "logins", "5",
+                    "calls", "20",
+                    "warmup", "4",
+                    "db", "h2",
+                    "result", "loadtest-result.json"));
+            List<String> applicationArguments = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    applicationArguments.add(arg);
+                    continue;
+                }
+                int separator = arg.indexOf('=');
+                if (separator < 0 || !values.containsKey(arg.substring(0, separator))) {
+                    throw new IllegalArgumentException("Argumento desconocido: " + arg);
+                }
+                values.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+
+            Options options = new Options(
+                    Integer.parseInt(values.get("users")),
+                    Integer.parseInt(values.get("logins")),
+                    Integer.parseInt(values.get("calls")),
+                    Integer.parseInt(values.get("warmup")),
+                    values.get("db"),
+                    values.get("result"),
+                    List.copyOf(applicationArguments));
+            if (options.users() < 1 || options.logins() < 1 || options.calls() < 0 || options.warmup() < 0) {
+                throw new IllegalArgumentException("users y logins deben ser >= 1; calls y warmup >= 0");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.security.mfaautenticate.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor de autorización y de userinfo con la forma de Google, en loopback y puerto libre.
+ * {@code /authorize} no muestra consentimiento: redirige en el acto al {@code redirect_uri} con un
+ * código para el email indicado en {@code login_hint}. {@code /token} canjea el código por un access
+ * token y {@code /userinfo} devuelve {@code sub}, {@code email} y {@code name} de ese email.
+ * Códigos y tokens son de un solo uso, así que la memoria no crece con la duración de la prueba.
+ */
+final class StubOAuthProvider implements AutoCloseable {
+
+    static final String LOGIN_HINT = "login_hint";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, String> codes = new ConcurrentHashMap<>();
+    private final Map<String, String> tokens = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private StubOAuthProvider(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static StubOAuthProvider start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        StubOAuthProvider provider = new StubOAuthProvider(server, executor);
+        server.createContext("/authorize", provider::authorize);
+        server.createContext("/token", provider::token);
+        server.createContext("/userinfo", provider::userinfo);
+        server.setExecutor(executor);
+        server.start();
+        return provider;
+    }
+
+    String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Argumentos para la aplicación: el registro google pasa a usar este proveedor. Sin scope
+     * {@code openid} el login es OAuth2 simple (userinfo), sin ID token ni JWKS que simular.
+     */
+    List<String> applicationArguments() {
+        String prefix = "--spring.security.oauth2.client.provider.google.";
+        return List.of(
+                prefix + "authorization-uri=" + baseUrl() + "/authorize",
+                prefix + "token-uri=" + baseUrl() + "/token",
+                prefix + "user-info-uri=" + baseUrl() + "/userinfo",
+                prefix + "user-name-attribute=sub");
+    }
+
+    private void authorize(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parse(exchange.getRequestURI().getRawQuery());
+        String redirectUri = query.get("redirect_uri");
+        String email = query.get(LOGIN_HINT);
+        if (redirectUri == null || email == null) {
+            respond(exchange, 400, Map.of("error", "invalid_request"));
+            return;
+        }
+
+        String code = UUID.randomUUID().toString();
+        codes.put(code, email);
+        String location = redirectUri + (redirectUri.contains("?") ? "&" : "?") + "code=" + encode(code);
+        if (query.containsKey("state")) {
+            location += "&state=" + encode(query.get("state"));
+        }
+        exchange.getResponseHeaders().set("Location", location);
+        exchange.sendResponseHeaders(302, -1);
+        exchange.close();
+    }
+
+    private void token(HttpExchange exchange) throws IOException {
+        Map<String, String> form = parse(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String email = form.get("code") != null ? codes.remove(form.get("code")) : null;
+        if (email == null) {
+            respond(exchange, 400, Map.of("error", "invalid_grant"));
+            return;
+        }
+
+        String accessToken = UUID.randomUUID().toString();
+        tokens.put(accessToken, email);
+        respond(exchange, 200, Map.of(
+                "access_token", accessToken,
+                "token_type", "Bearer",
+                "expires_in", 3600,
+                "scope", "email profile"));
+    }
+
+    private void userinfo(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String email = authorization != null && authorization.startsWith("Bearer ")
+                ? tokens.remove(authorization.substring(7)) : null;
+        if (email == null) {
+            respond(exchange, 401, Map.of("error", "invalid_token"));
+            return;
+        }
+
+        respond(exchange, 200, Map.of(
+                "sub", "stub-" + email,
+                "email", email,
+                "email_verified", true,
+                "name", email.substring(0, email.indexOf('@'))));
+    }
+
+    private void respond(HttpExchange exchange, int status, Map<String, ?> body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parse(String encoded) {
+        Map<String, String> values = new HashMap<>();
+        if (encoded == null || encoded.isEmpty()) {
+            return values;
+        }
+        for (String pair : encoded.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+}
@@ -0,0 +1,165 @@
+package com.security.mfaautenticate.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Un usuario con su propio cliente HTTP y sus cookies, como un navegador. El primer login da de alta
+ * la cuenta y activa MFA (setup + verify con el TOTP calculado aquí); los siguientes pasan por la
+ * verificación MFA que exige el success handler. Tras cada login hace {@code calls} llamadas
+ * autenticadas, alternando {@code /api/user/profile} y {@code /api/test/sensitive} (step-up).
+ */
+final class VirtualUser {
+
+    static final String LOGIN = "oauth2.login";
+    static final String MFA_SETUP = "mfa.setup";
+    static final String MFA_VERIFY = "mfa.verify";
+    static final String PROFILE = "api.profile";
+    static final String SENSITIVE = "api.sensitive";
+
+    private static final GoogleAuthenticator AUTHENTICATOR = new GoogleAuthenticator();
+
+    private final URI application;
+    private final String email;
+    private final ObjectMapper objectMapper;
+    private final LatencyRecorder recorder;
+    private final HttpClient client;
+    private String secret;
+
+    VirtualUser(URI application, String email, ObjectMapper objectMapper, LatencyRecorder recorder) {
+        this.application = application;
+        this.email = email;
+        this.objectMapper = objectMapper;
+        this.recorder = recorder;
+        // Las redirecciones se siguen a mano: cada salto es parte del flujo y se comprueba
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .cookieHandler(new CookieManager())
+                .build();
+    }
+
+    /**
+     * Un fallo corta solo el login en curso (ya contado como error de su operación); el usuario
+     * sigue con el siguiente.
+     */
+    void run(int logins, int calls) {
+        for (int i = 0; i < logins; i++) {
+            try {
+                String token = secret == null ? enroll() : loginWithMfa();
+                for (int call = 0; call < calls; call++) {
+                    String path = call % 2 == 0 ? "/api/user/profile" : "/api/test/sensitive";
+                    timed(call % 2 == 0 ? PROFILE : SENSITIVE, () -> send(get(path).header("Authorization",
+                            "Bearer " + token), 200));
+                }
+            } catch (Exception e) {
+                // Registrado en timed
+            }
+        }
+    }
+
+    private String enroll() throws Exception {
+        URI landing = timed(LOGIN, this::login);
+        if (!landing.getPath().equals("/dashboard.html")) {
+            throw new IllegalStateException("Alta con MFA ya activo: " + landing);
+        }
+        secret = timed(MFA_SETUP, () -> json(send(post("/api/auth/mfa/setup?email=" + encode(email),
+                HttpRequest.BodyPublishers.noBody()), 200)).get("secret").asText());
+        try {
+            return verify();
+        } catch (Exception e) {
+            // MFA sigue sin activar: el próximo login vuelve a darse de alta
+            secret = null;
+            throw e;
+        }
+    }
+
+    private String loginWithMfa() throws Exception {
+        URI landing = timed(LOGIN, this::login);
+        if (!landing.getPath().equals("/mfa-verification.html")) {
+            throw new IllegalStateException("Login sin verificación MFA: " + landing);
+        }
+        return verify();
+    }
+
+    private String verify() throws Exception {
+        String body = objectMapper.writeValueAsString(Map.of(
+                "email", email,
+                "code", String.format("%06d", AUTHENTICATOR.getTotpPassword(secret))));
+        return timed(MFA_VERIFY, () -> json(send(post("/api/auth/mfa/verify",
+                HttpRequest.BodyPublishers.ofString(body)).header("Content-Type", "application/json"), 200))
+                .get("token").asText());
+    }
+
+    /**
+     * Aplicación → proveedor (con {@code login_hint}) → callback de la aplicación, que canjea el
+     * código y consulta userinfo. Devuelve la página a la que redirige el success handler.
+     */
+    private URI login() throws Exception {
+        URI authorize = location(send(get("/oauth2/authorization/google"), 302));
+        URI callback = location(send(HttpRequest.newBuilder(URI.create(authorize + "&"
+                + StubOAuthProvider.LOGIN_HINT + "=" + encode(email))).GET(), 302));
+        URI landing = location(send(HttpRequest.newBuilder(callback).GET(), 302));
+        if (landing.getPath().equals("/dashboard.html")
+                && UriComponentsBuilder.fromUri(landing).build().getQueryParams().getFirst("token") == null) {
+            throw new IllegalStateException("Redirección al dashboard sin token");
+        }
+        return landing;
+    }
+
+    private <T> T timed(String operation, Callable<T> step) throws Exception {
+        long start = System.nanoTime();
+        try {
+            T result = step.call();
+            recorder.record(operation, System.nanoTime() - start);
+            return result;
+        } catch (Exception e) {
+            recorder.error(operation, e);
+            throw e;
+        }
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return HttpRequest.newBuilder(application.resolve(path)).GET();
+    }
+
+    private HttpRequest.Builder post(String path, HttpRequest.BodyPublisher body) {
+        return HttpRequest.newBuilder(application.resolve(path)).POST(body);
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request, int expectedStatus) throws Exception {
+        HttpRequest built = request.build();
+        HttpResponse<String> response = client.send(built, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != expectedStatus) {
+            throw new IllegalStateException(built.method() + " " + built.uri().getPath() + " -> "
+                    + response.statusCode());
+        }
+        return response;
+    }
+
+    private URI location(HttpResponse<String> response) {
+        String location = response.headers().firstValue("Location")
+                .orElseThrow(() -> new IllegalStateException("Redirección sin Location"));
+        return response.uri().resolve(location);
+    }
+
+    private JsonNode json(HttpResponse<String> response) throws Exception {
+        return objectMapper.readTree(response.body());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,6 @@
 package com.security.mfaautenticate.config;
 
+import com.security.mfaautenticate.security.TenantContext;
 import com.security.mfaautenticate.service.RbacService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,11 +13,15 @@ import org.springframework.stereotype.Component;
 public class DataInitializer implements CommandLineRunner {
 
     private final RbacService rbacService;
+    private final TenancyProperties tenancyProperties;
 
     @Override
     public void run(String... args) throws Exception {
-        log.info("Initializing default roles...");
-        rbacService.initializeDefaultRoles();
+        // Cada tenant tiene sus propios ADMIN y USER
+        for (String tenant : tenancyProperties.tenants()) {
+            log.info("Initializing default roles for tenant {}...", tenant);
+            TenantContext.runAs(tenant, rbacService::initializeDefaultRoles);
+        }
         log.info("Default roles initialized successfully");
     }
 }
@@ -0,0 +1,25 @@
+package com.security.mfaautenticate.config;
+
+import com.security.mfaautenticate.dto.RbacSnapshotStats;
+import com.security.mfaautenticate.service.RbacSnapshotStore;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * /actuator/rbacsnapshot: antigüedad y versiones del snapshot RBAC persistido y cuántas decisiones
+ * se tomaron con él en modo degradado.
+ */
+@Component
+@Endpoint(id = "rbacsnapshot")
+@RequiredArgsConstructor
+public class RbacSnapshotEndpoint {
+
+    private final RbacSnapshotStore rbacSnapshotStore;
+
+    @ReadOperation
+    public RbacSnapshotStats snapshot() {
+        return rbacSnapshotStore.stats();
+    }
+}
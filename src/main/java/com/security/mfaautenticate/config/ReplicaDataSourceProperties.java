@@ -0,0 +1,42 @@
+package com.security.mfaautenticate.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Réplicas de lectura (app.datasource.*). Sin réplicas todo va al primario.
+ * Usuario y contraseña, si se omiten, se toman de spring.datasource.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.datasource")
+public class ReplicaDataSourceProperties {
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    /**
+     * Tiempo durante el cual las lecturas van al primario tras un cambio RBAC (read-your-writes).
+     * Debe superar max-lag: una réplica sana nunca está más atrasada que eso.
+     */
+    private Duration stickyWindow = Duration.ofSeconds(10);
+
+    private Duration healthCheckTimeout = Duration.ofSeconds(2);
+
+    /**
+     * Consulta que devuelve el retraso de replicación en segundos. Vacía: no se mide el retraso.
+     */
+    private String lagQuery;
+
+    private Duration maxLag = Duration.ofSeconds(5);
+
+    @Data
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+        private int maximumPoolSize = 10;
+    }
+}
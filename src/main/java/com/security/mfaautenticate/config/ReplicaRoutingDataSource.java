@@ -0,0 +1,137 @@
+package com.security.mfaautenticate.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Envía las transacciones @Transactional(readOnly = true) a una réplica sana y el resto al primario.
+ * Debe usarse detrás de un LazyConnectionDataSourceProxy: la conexión se pide en la primera
+ * sentencia, cuando el flag readOnly de la transacción ya está publicado.
+ * <p>
+ * Tras un cambio RBAC las lecturas de este nodo van al primario durante sticky-window,
+ * para no leer (ni cachear) un estado anterior a la escritura desde una réplica atrasada.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    private final List<HikariDataSource> replicas;
+    private volatile boolean[] healthy;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ReplicaDataSourceProperties properties;
+
+    private volatile long primaryUntilNanos = System.nanoTime();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<HikariDataSource> replicas,
+                                    ReplicaDataSourceProperties properties) {
+        this.replicas = replicas;
+        this.healthy = new boolean[replicas.size()];
+        this.properties = properties;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (HikariDataSource replica : replicas) {
+            targets.put(replica.getPoolName(), replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || System.nanoTime() - primaryUntilNanos < 0) {
+            return PRIMARY;
+        }
+
+        boolean[] current = healthy;
+        int size = current.length;
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (current[index]) {
+                return replicas.get(index).getPoolName();
+            }
+        }
+        return PRIMARY;
+    }
+
+    /**
+     * Lecturas de este nodo al primario durante sticky-window.
+     */
+    public void stickToPrimary() {
+        primaryUntilNanos = System.nanoTime() + properties.getStickyWindow().toNanos();
+    }
+
+    public boolean hasHealthyReplica() {
+        for (boolean replicaHealthy : healthy) {
+            if (replicaHealthy) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${app.datasource.health-check-ms:5000}")
+    public void checkReplicas() {
+        boolean[] previous = healthy;
+        boolean[] next = new boolean[replicas.size()];
+        for (int i = 0; i < next.length; i++) {
+            HikariDataSource replica = replicas.get(i);
+            next[i] = isHealthy(replica);
+            if (next[i] != previous[i]) {
+                log.info("Réplica {} {}", replica.getPoolName(), next[i] ? "disponible" : "fuera de rotación");
+            }
+        }
+        healthy = next;
+    }
+
+    private boolean isHealthy(HikariDataSource replica) {
+        int timeoutSeconds = (int) Math.max(1, properties.getHealthCheckTimeout().toSeconds());
+        try (Connection connection = replica.getConnection()) {
+            if (!connection.isValid(timeoutSeconds)) {
+                return false;
+            }
+            String lagQuery = properties.getLagQuery();
+            if (lagQuery == null || lagQuery.isBlank()) {
+                return true;
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(timeoutSeconds);
+                try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                    double lagSeconds = rs.next() ? rs.getDouble(1) : 0;
+                    Duration lag = Duration.ofMillis((long) (lagSeconds * 1000));
+                    if (lag.compareTo(properties.getMaxLag()) > 0) {
+                        log.warn("Réplica {} con {} de retraso", replica.getPoolName(), lag);
+                        return false;
+                    }
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Réplica {} no responde: {}", replica.getPoolName(), e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,55 @@
+package com.security.mfaautenticate.config;
+
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tenants (app.tenancy.*). Quien entra por OAuth2 queda en el tenant de su dominio de email;
+ * sin coincidencia, en el tenant por defecto. Después el tenant viaja en el JWT.
+ */
+@Data
+@ConfigurationProperties(prefix = "app.tenancy")
+public class TenancyProperties {
+
+    /**
+     * Dominio de email -> tenant. Ejemplo: {@code acme.com: acme}.
+     */
+    private Map<String, String> emailDomains = new HashMap<>();
+
+    /**
+     * Tenant -> emails que reciben ADMIN al darse de alta en ese tenant. Ejemplo:
+     * {@code acme: [it@acme.com]}. Ser el primero en entrar a un tenant no da ADMIN.
+     */
+    private Map<String, List<String>> adminEmails = new HashMap<>();
+
+    public String tenantForEmail(String email) {
+        int at = email == null ? -1 : email.lastIndexOf('@');
+        if (at < 0) {
+            return TenantContext.DEFAULT;
+        }
+        return emailDomains.getOrDefault(email.substring(at + 1).toLowerCase(Locale.ROOT), TenantContext.DEFAULT);
+    }
+
+    public boolean isAdminEmail(String tenant, String email) {
+        return email != null && adminEmails.getOrDefault(tenant, List.of()).stream()
+                .anyMatch(email::equalsIgnoreCase);
+    }
+
+    /**
+     * Tenants conocidos: el por defecto y los de {@link #emailDomains}.
+     */
+    public Set<String> tenants() {
+        Set<String> tenants = new LinkedHashSet<>();
+        tenants.add(TenantContext.DEFAULT);
+        tenants.addAll(emailDomains.values());
+        return tenants;
+    }
+}
@@ -1,15 +1,31 @@
 package com.security.mfaautenticate.controller;
 
+import com.security.mfaautenticate.dto.AuditEventPage;
+import com.security.mfaautenticate.dto.UserFilter;
+import com.security.mfaautenticate.dto.UserPage;
+import com.security.mfaautenticate.dto.UserStatsSnapshot;
+import com.security.mfaautenticate.entity.AuditEventType;
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Role;
 import com.security.mfaautenticate.entity.User;
-import com.security.mfaautenticate.repository.UserRepository;
 import com.security.mfaautenticate.security.CustomOAuth2User;
+import com.security.mfaautenticate.security.TenantContext;
+import com.security.mfaautenticate.service.AuditLog;
+import com.security.mfaautenticate.service.UserListingService;
+import com.security.mfaautenticate.service.UserStatsService;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.io.IOException;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,14 +36,24 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AdminController {
 
-    private final UserRepository userRepository;
+    private final UserListingService userListingService;
+    private final UserStatsService userStatsService;
+    private final AuditLog auditLog;
 
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers(Authentication authentication) {
+    public ResponseEntity<?> getAllUsers(Authentication authentication,
+                                         @RequestParam(required = false) OAuthProvider provider,
+                                         @RequestParam(required = false) Boolean mfaEnabled,
+                                         @RequestParam(required = false) String role,
+                                         @RequestParam(required = false)
+                                         @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant inactiveSince,
+                                         @RequestParam(required = false) Long after,
+                                         @RequestParam(required = false) Integer size) {
         User currentUser = getUserFromAuthentication(authentication);
-        List<User> users = userRepository.findAll();
+        UserPage page = userListingService.findPage(new UserFilter(provider, mfaEnabled, role, inactiveSince),
+                after, size);
 
-        List<Map<String, Object>> userList = users.stream()
+        List<Map<String, Object>> userList = page.getUsers().stream()
                 .map(user -> {
                     Map<String, Object> userMap = new HashMap<>();
                     userMap.put("id", user.getId());
@@ -35,32 +61,75 @@ public class AdminController {
                     userMap.put("name", user.getName());
                     userMap.put("provider", user.getOauthProvider());
                     userMap.put("mfaEnabled", user.isMfaEnabled());
+                    userMap.put("lastLoginAt", user.getLastLoginAt());
+                    userMap.put("lastSeenAt", user.getLastSeenAt());
                     userMap.put("roles", user.getRoles().stream()
-                            .map(role -> role.getName())
+                            .map(Role::getName)
                             .collect(Collectors.toList()));
                     return userMap;
                 })
                 .collect(Collectors.toList());
 
-        return ResponseEntity.ok(Map.of(
-                "message", "Lista de usuarios - Solo ADMIN",
-                "admin", currentUser.getEmail(),
-                "users", userList
-        ));
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Lista de usuarios - Solo ADMIN");
+        response.put("admin", currentUser.getEmail());
+        response.put("users", userList);
+        response.put("nextCursor", page.getNextCursor());
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping(value = "/users/export", produces = "application/x-ndjson")
+    public void exportUsers(@RequestParam(required = false) OAuthProvider provider,
+                            @RequestParam(required = false) Boolean mfaEnabled,
+                            @RequestParam(required = false) String role,
+                            @RequestParam(required = false)
+                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant inactiveSince,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"");
+
+        userListingService.exportNdjson(new UserFilter(provider, mfaEnabled, role, inactiveSince),
+                response.getOutputStream());
     }
 
     @GetMapping("/stats")
     public ResponseEntity<?> getStats() {
-        long totalUsers = userRepository.count();
-        long usersWithMfa = userRepository.findAll().stream()
-                .filter(User::isMfaEnabled)
-                .count();
-
-        return ResponseEntity.ok(Map.of(
-                "message", "Estadísticas del sistema - Solo ADMIN",
-                "totalUsers", totalUsers,
-                "usersWithMfa", usersWithMfa
-        ));
+        UserStatsSnapshot stats = userStatsService.snapshot();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Estadísticas del tenant - Solo ADMIN");
+        response.put("tenant", TenantContext.current());
+        response.put("totalUsers", stats.getTotalUsers());
+        response.put("usersWithMfa", stats.getUsersWithMfa());
+        response.put("byProvider", stats.getByProvider());
+        response.put("byRole", stats.getByRole());
+        response.put("loginsPerMinute", stats.getLoginsPerMinute());
+        response.put("mfaFailuresPerMinute", stats.getMfaFailuresPerMinute());
+
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * Eventos de auditoría del tenant en curso, del más reciente al más antiguo. Los publicados en
+     * el último app.audit.flush-ms pueden no aparecer todavía.
+     */
+    @GetMapping("/audit")
+    public ResponseEntity<?> getAuditEvents(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) AuditEventType type,
+            @RequestParam(required = false) String email,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Integer size) {
+        AuditEventPage page = auditLog.findPage(from, to, type, email, before, size);
+        return ResponseEntity.ok(page);
+    }
+
+    @GetMapping("/audit/stats")
+    public ResponseEntity<?> getAuditStats() {
+        return ResponseEntity.ok(auditLog.stats());
     }
 
     private User getUserFromAuthentication(Authentication authentication) {
@@ -1,17 +1,18 @@
 package com.security.mfaautenticate.controller;
 
+import com.security.mfaautenticate.dto.MfaStateRow;
 import com.security.mfaautenticate.dto.MfaVerificationRequest;
-import com.security.mfaautenticate.entity.User;
-import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.entity.AuditEventType;
 import com.security.mfaautenticate.security.JwtTokenProvider;
+import com.security.mfaautenticate.service.AuditLog;
 import com.security.mfaautenticate.service.MfaService;
+import com.security.mfaautenticate.service.MfaStateService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -21,30 +22,19 @@ import java.util.Map;
 public class AuthController {
 
     private final MfaService mfaService;
-    private final UserRepository userRepository;
+    private final MfaStateService mfaStateService;
     private final JwtTokenProvider jwtTokenProvider;
+    private final AuditLog auditLog;
 
     @PostMapping("/mfa/setup")
     public ResponseEntity<?> setupMfa(@RequestParam String email) {
         try {
             log.info("Setup MFA para: {}", email);
 
-            // Buscar todos los usuarios con este email
-            List<User> users = userRepository.findAllByEmail(email);
-
-            if (users.isEmpty()) {
-                throw new RuntimeException("Usuario no encontrado");
-            }
-
-            String secret = mfaService.generateSecretKey();
+            // Un solo UPDATE guarda el secreto en TODOS los usuarios con este email
+            String secret = mfaStateService.setup(email);
             String qrCodeDataUri = mfaService.generateQRCodeDataUri(secret, email);
 
-            // Guardar el secreto en TODOS los usuarios con este email
-            for (User user : users) {
-                user.setMfaSecret(secret);
-                userRepository.save(user);
-            }
-
             Map<String, String> response = new HashMap<>();
             response.put("secret", secret);
             response.put("qrCodeUrl", qrCodeDataUri);
@@ -63,35 +53,11 @@ public class AuthController {
         try {
             log.info("Verificando MFA para: {}", request.getEmail());
 
-            // Buscar todos los usuarios con este email
-            List<User> users = userRepository.findAllByEmail(request.getEmail());
-
-            if (users.isEmpty()) {
-                throw new RuntimeException("Usuario no encontrado");
-            }
-
-            User firstUser = users.get(0);
-
-            if (firstUser.getMfaSecret() == null) {
-                throw new RuntimeException("MFA no configurado");
-            }
-
-            boolean isValid = mfaService.verifyCode(firstUser.getMfaSecret(), request.getCode());
+            // Activar MFA en TODOS los usuarios con este email (un solo UPDATE)
+            String email = mfaStateService.enable(request.getEmail(), request.getCode());
 
-            if (!isValid) {
-                log.warn("Código MFA inválido para: {}", request.getEmail());
-                return ResponseEntity.badRequest().body(Map.of("error", "Código inválido"));
-            }
-
-            // Activar MFA en TODOS los usuarios con este email
-            for (User user : users) {
-                user.setMfaEnabled(true);
-                user.setUsingMfa(true);
-                userRepository.save(user);
-            }
-
-            // Generar nuevo token JWT
-            String token = jwtTokenProvider.generateToken(firstUser.getEmail());
+            // Token nuevo con amr=mfa y auth_time actual: también sirve como step-up
+            String token = jwtTokenProvider.generateMfaToken(email);
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "MFA activado correctamente");
@@ -99,10 +65,12 @@ public class AuthController {
             response.put("mfaEnabled", true);
 
             log.info("MFA activado exitosamente para: {}", request.getEmail());
+            auditLog.record(AuditEventType.MFA_SUCCESS, email, null);
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error en verify MFA: {}", e.getMessage());
+            auditLog.record(AuditEventType.MFA_FAILURE, request.getEmail(), e.getMessage());
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
@@ -112,20 +80,8 @@ public class AuthController {
         try {
             log.info("Desactivando MFA para: {}", email);
 
-            // Buscar todos los usuarios con este email
-            List<User> users = userRepository.findAllByEmail(email);
-
-            if (users.isEmpty()) {
-                throw new RuntimeException("Usuario no encontrado");
-            }
-
-            // Desactivar MFA en TODOS los usuarios con este email
-            for (User user : users) {
-                user.setMfaEnabled(false);
-                user.setUsingMfa(false);
-                user.setMfaSecret(null);
-                userRepository.save(user);
-            }
+            // Desactivar MFA en TODOS los usuarios con este email (un solo UPDATE)
+            mfaStateService.disable(email);
 
             log.info("MFA desactivado para: {}", email);
 
@@ -141,22 +97,15 @@ public class AuthController {
         try {
             log.info("Consultando estado MFA para: {}", email);
 
-            // Buscar todos los usuarios con este email
-            List<User> users = userRepository.findAllByEmail(email);
-
-            if (users.isEmpty()) {
-                throw new RuntimeException("Usuario no encontrado");
-            }
-
             // Tomar el primer usuario (todos comparten el mismo estado de MFA)
-            User user = users.get(0);
+            MfaStateRow user = mfaStateService.state(email).get(0);
 
             Map<String, Object> response = new HashMap<>();
-            response.put("mfaEnabled", user.isMfaEnabled());
-            response.put("email", user.getEmail());
-            response.put("name", user.getName());
+            response.put("mfaEnabled", user.mfaEnabled());
+            response.put("email", user.email());
+            response.put("name", user.name());
 
-            log.info("Estado MFA para {}: {}", email, user.isMfaEnabled());
+            log.info("Estado MFA para {}: {}", email, user.mfaEnabled());
 
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -1,16 +1,32 @@
 package com.security.mfaautenticate.controller;
 
+import com.security.mfaautenticate.dto.*;
 import com.security.mfaautenticate.entity.*;
-import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.service.RbacCatalogService;
+import com.security.mfaautenticate.service.RbacCatalogService.Catalog;
+import com.security.mfaautenticate.service.RbacCatalogService.RenderedCatalog;
+import com.security.mfaautenticate.service.RbacImpactService;
+import com.security.mfaautenticate.service.RbacManifestService;
+import com.security.mfaautenticate.service.RbacManifestService.Format;
 import com.security.mfaautenticate.service.RbacService;
+import com.security.mfaautenticate.service.RbacVersion;
+import com.security.mfaautenticate.service.UserListingService;
+import com.security.mfaautenticate.service.UserRoleBulkService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 @RestController
 @RequestMapping("/api/rbac")
@@ -19,7 +35,14 @@ import java.util.Map;
 public class RbacController {
 
     private final RbacService rbacService;
-    private final UserRepository userRepository;
+    private final UserListingService userListingService;
+    private final RbacCatalogService rbacCatalogService;
+    private final RbacVersion rbacVersion;
+    private final RbacManifestService rbacManifestService;
+    private final UserRoleBulkService userRoleBulkService;
+    private final RbacImpactService rbacImpactService;
+
+    private static final String VERSION_HEADER = "X-RBAC-Version";
 
     // ==================== ROLE ENDPOINTS ====================
 
@@ -37,8 +60,9 @@ public class RbacController {
     }
 
     @GetMapping("/roles")
-    public ResponseEntity<List<Role>> getAllRoles() {
-        return ResponseEntity.ok(rbacService.getAllRoles());
+    public ResponseEntity<byte[]> getAllRoles(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponse(Catalog.ROLES, ifNoneMatch);
     }
 
     @DeleteMapping("/roles/{roleId}")
@@ -46,6 +70,8 @@ public class RbacController {
         try {
             rbacService.deleteRole(roleId);
             return ResponseEntity.ok(Map.of("message", "Role deleted successfully"));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error deleting role", e);
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -69,8 +95,9 @@ public class RbacController {
     }
 
     @GetMapping("/resources")
-    public ResponseEntity<List<Resource>> getAllResources() {
-        return ResponseEntity.ok(rbacService.getAllResources());
+    public ResponseEntity<byte[]> getAllResources(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponse(Catalog.RESOURCES, ifNoneMatch);
     }
 
     @DeleteMapping("/resources/{resourceId}")
@@ -78,12 +105,32 @@ public class RbacController {
         try {
             rbacService.deleteResource(resourceId);
             return ResponseEntity.ok(Map.of("message", "Resource deleted successfully"));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error deleting resource", e);
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    @GetMapping("/resources/{resourceId}/subjects")
+    public ResponseEntity<?> getResourceSubjects(@PathVariable Long resourceId,
+                                                 @RequestParam Operation operation,
+                                                 @RequestParam(required = false) Long after,
+                                                 @RequestParam(required = false) Integer size) {
+        try {
+            long version = rbacVersion.current();
+            ResourceSubjectsPage page = rbacService.findSubjects(resourceId, operation, after, size);
+            return ResponseEntity.ok()
+                    .header(VERSION_HEADER, String.valueOf(version))
+                    .cacheControl(CacheControl.noStore())
+                    .body(page);
+        } catch (Exception e) {
+            log.error("Error getting resource subjects", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ==================== PERMISSION ENDPOINTS ====================
 
     @PostMapping("/permissions")
@@ -91,7 +138,9 @@ public class RbacController {
         try {
             Long resourceId = Long.valueOf(request.get("resourceId").toString());
             Operation operation = Operation.valueOf(request.get("operation").toString());
-            Permission permission = rbacService.createPermission(resourceId, operation);
+            Object condition = request.get("condition");
+            Permission permission = rbacService.createPermission(resourceId, operation,
+                    condition == null ? null : condition.toString());
             return ResponseEntity.ok(permission);
         } catch (Exception e) {
             log.error("Error creating permission", e);
@@ -100,8 +149,21 @@ public class RbacController {
     }
 
     @GetMapping("/permissions")
-    public ResponseEntity<List<Permission>> getAllPermissions() {
-        return ResponseEntity.ok(rbacService.getAllPermissions());
+    public ResponseEntity<byte[]> getAllPermissions(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return catalogResponse(Catalog.PERMISSIONS, ifNoneMatch);
+    }
+
+    @PutMapping("/permissions/{permissionId}/condition")
+    public ResponseEntity<?> updatePermissionCondition(@PathVariable Long permissionId,
+                                                       @RequestBody Map<String, String> request) {
+        try {
+            Permission permission = rbacService.updatePermissionCondition(permissionId, request.get("condition"));
+            return ResponseEntity.ok(permission);
+        } catch (Exception e) {
+            log.error("Error updating permission condition", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
 
     @DeleteMapping("/permissions/{permissionId}")
@@ -109,6 +171,8 @@ public class RbacController {
         try {
             rbacService.deletePermission(permissionId);
             return ResponseEntity.ok(Map.of("message", "Permission deleted successfully"));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("Error deleting permission", e);
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -143,6 +207,32 @@ public class RbacController {
         }
     }
 
+    @PostMapping("/roles/{roleId}/parents/{parentId}")
+    public ResponseEntity<?> assignParentToRole(
+            @PathVariable Long roleId,
+            @PathVariable Long parentId) {
+        try {
+            rbacService.assignParentToRole(roleId, parentId);
+            return ResponseEntity.ok(Map.of("message", "Parent role assigned successfully"));
+        } catch (Exception e) {
+            log.error("Error assigning parent role", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @DeleteMapping("/roles/{roleId}/parents/{parentId}")
+    public ResponseEntity<?> removeParentFromRole(
+            @PathVariable Long roleId,
+            @PathVariable Long parentId) {
+        try {
+            rbacService.removeParentFromRole(roleId, parentId);
+            return ResponseEntity.ok(Map.of("message", "Parent role removed successfully"));
+        } catch (Exception e) {
+            log.error("Error removing parent role", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PostMapping("/users/{userId}/roles/{roleId}")
     public ResponseEntity<?> assignRoleToUser(
             @PathVariable Long userId,
@@ -169,36 +259,176 @@ public class RbacController {
         }
     }
 
+    @PostMapping("/roles/{roleId}/users/grant")
+    public ResponseEntity<?> grantRoleToUsers(@PathVariable Long roleId,
+                                              @RequestBody BulkRoleAssignmentRequest request) {
+        try {
+            return ResponseEntity.ok(userRoleBulkService.grant(roleId, request));
+        } catch (Exception e) {
+            log.error("Error assigning role to users", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @PostMapping("/roles/{roleId}/users/revoke")
+    public ResponseEntity<?> revokeRoleFromUsers(@PathVariable Long roleId,
+                                                 @RequestBody BulkRoleAssignmentRequest request) {
+        try {
+            return ResponseEntity.ok(userRoleBulkService.revoke(roleId, request));
+        } catch (Exception e) {
+            log.error("Error removing role from users", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     // ==================== USER ENDPOINTS ====================
 
     @GetMapping("/users")
-    public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(userRepository.findAll());
+    public ResponseEntity<?> getAllUsers(@RequestParam(required = false) OAuthProvider provider,
+                                         @RequestParam(required = false) Boolean mfaEnabled,
+                                         @RequestParam(required = false) String role,
+                                         @RequestParam(required = false) Long after,
+                                         @RequestParam(required = false) Integer size) {
+        // Sin ETag: la página depende de altas y del estado MFA, que no pasan por la versión RBAC
+        long version = rbacVersion.current();
+        UserPage page = userListingService.findPage(new UserFilter(provider, mfaEnabled, role, null), after, size);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("users", page.getUsers().stream().map(RbacUserView::of).toList());
+        response.put("nextCursor", page.getNextCursor());
+        return ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(version))
+                .cacheControl(CacheControl.noStore())
+                .body(response);
     }
 
     @GetMapping("/users/{userId}")
-    public ResponseEntity<?> getUserWithRoles(@PathVariable Long userId) {
+    public ResponseEntity<?> getUserWithRoles(@PathVariable Long userId,
+                                              @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+            long version = rbacVersion.current();
+            String etag = etag("user-" + userId, version);
+            if (matchesEtag(ifNoneMatch, etag)) {
+                return notModified(etag, version);
+            }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", user.getId());
-            response.put("email", user.getEmail());
-            response.put("name", user.getName());
-            response.put("roles", user.getRoles());
+            UserRolesView user = rbacService.getUserRolesView(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
 
-            return ResponseEntity.ok(response);
+            return versioned(ResponseEntity.ok(), etag, version).body(user);
         } catch (Exception e) {
             log.error("Error getting user", e);
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    // ==================== CHANGES (DELTA) ====================
+
+    @GetMapping("/changes")
+    public ResponseEntity<RbacDelta> getChanges(@RequestParam long since) {
+        RbacDelta delta = rbacCatalogService.changesSince(since);
+        return ResponseEntity.ok()
+                .header(VERSION_HEADER, String.valueOf(delta.version()))
+                .cacheControl(CacheControl.noStore())
+                .body(delta);
+    }
+
+    // ==================== IMPACT (WHAT-IF) ====================
+
+    @PostMapping("/impact")
+    public ResponseEntity<?> simulateChange(@RequestBody RbacImpactRequest request,
+                                            @RequestParam(required = false) Integer limit) {
+        try {
+            RbacImpact impact = rbacImpactService.simulate(request, limit);
+            return ResponseEntity.ok()
+                    .header(VERSION_HEADER, String.valueOf(impact.version()))
+                    .cacheControl(CacheControl.noStore())
+                    .body(impact);
+        } catch (Exception e) {
+            log.error("Error simulating RBAC change", e);
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // ==================== MANIFEST (BULK) ====================
+
+    @PostMapping(value = "/manifest", consumes = {MediaType.APPLICATION_JSON_VALUE, "application/yaml",
+            "application/x-yaml", "text/yaml"})
+    public ResponseEntity<?> importManifest(@RequestParam(defaultValue = "false") boolean prune,
+                                            @RequestParam(defaultValue = "false") boolean dryRun,
+                                            HttpServletRequest request) {
+        try {
+            Format format = request.getContentType().contains("yaml") ? Format.YAML : Format.JSON;
+            RbacManifest manifest = rbacManifestService.read(request.getInputStream(), format);
+            return ResponseEntity.ok(rbacManifestService.importManifest(manifest, prune, dryRun));
+        } catch (Exception e) {
+            log.error("Error importing RBAC manifest", e);
+            return ResponseEntity.badRequest().body(Map.of("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    @GetMapping("/manifest")
+    public void exportManifest(@RequestParam(defaultValue = "json") String format,
+                               HttpServletResponse response) throws IOException {
+        Format outputFormat = "yaml".equalsIgnoreCase(format) ? Format.YAML : Format.JSON;
+        String extension = outputFormat == Format.YAML ? "yaml" : "json";
+
+        response.setContentType(outputFormat == Format.YAML ? "application/yaml" : MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"rbac-manifest." + extension + "\"");
+
+        rbacManifestService.exportManifest(response.getOutputStream(), outputFormat);
+    }
+
     // ==================== OPERATIONS ENUM ====================
 
     @GetMapping("/operations")
     public ResponseEntity<Operation[]> getOperations() {
         return ResponseEntity.ok(Operation.values());
     }
+
+    // ==================== CONDITIONAL GET ====================
+
+    private ResponseEntity<byte[]> catalogResponse(Catalog catalog, String ifNoneMatch) {
+        String name = catalog.name().toLowerCase();
+
+        // 304 solo con la versión en memoria: sin consultas ni serialización
+        long version = rbacVersion.current();
+        if (matchesEtag(ifNoneMatch, etag(name, version))) {
+            return notModified(etag(name, version), version);
+        }
+
+        RenderedCatalog rendered = rbacCatalogService.get(catalog);
+        return versioned(ResponseEntity.ok(), etag(name, rendered.version()), rendered.version())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(rendered.json());
+    }
+
+    private static String etag(String name, long version) {
+        return "\"rbac-" + name + "-" + version + "\"";
+    }
+
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag, long version) {
+        return versioned(ResponseEntity.status(HttpStatus.NOT_MODIFIED), etag, version).build();
+    }
+
+    private static ResponseEntity.BodyBuilder versioned(ResponseEntity.BodyBuilder builder, String etag, long version) {
+        return builder
+                .eTag(etag)
+                .header(VERSION_HEADER, String.valueOf(version))
+                .cacheControl(CacheControl.noCache().cachePrivate());
+    }
 }
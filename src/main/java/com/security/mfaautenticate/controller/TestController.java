@@ -1,5 +1,7 @@
 package com.security.mfaautenticate.controller;
 
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.security.RequirePermission;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -18,4 +20,10 @@ public class TestController {
     public ResponseEntity<String> protectedEndpoint() {
         return ResponseEntity.ok("Protected endpoint - authentication required");
     }
-}
\ No newline at end of file
+
+    @GetMapping("/sensitive")
+    @RequirePermission(resource = "test/sensitive", operation = Operation.READ, requireMfa = true, maxAuthAge = 300)
+    public ResponseEntity<String> sensitiveEndpoint() {
+        return ResponseEntity.ok("Sensitive endpoint - MFA verified in the last 5 minutes");
+    }
+}
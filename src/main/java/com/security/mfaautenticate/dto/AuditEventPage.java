@@ -0,0 +1,12 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.AuditEvent;
+
+import java.util.List;
+
+/**
+ * Eventos de auditoría del más reciente al más antiguo. nextCursor es el id a enviar como
+ * "before" para la siguiente página, o null si no hay más resultados.
+ */
+public record AuditEventPage(List<AuditEvent> events, Long nextCursor) {
+}
@@ -0,0 +1,14 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Contadores del registro de auditoría desde el arranque del nodo. {@code dropped} son eventos
+ * descartados con el buffer lleno o por un lote que no se pudo escribir; {@code sampledOut},
+ * eventos de rutina omitidos por la política SAMPLE.
+ */
+public record AuditStats(long published,
+                         long written,
+                         long dropped,
+                         long sampledOut,
+                         int pending,
+                         int capacity) {
+}
@@ -0,0 +1,18 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Usuarios afectados por una asignación masiva de rol: una lista de ids, un filtro o ambos
+ * (se combinan con AND). Un campo null significa "sin filtro", pero al menos uno es obligatorio.
+ */
+@Data
+public class BulkRoleAssignmentRequest {
+    private List<Long> userIds;
+    private OAuthProvider provider;
+    private String emailDomain;
+    private Boolean mfaEnabled;
+}
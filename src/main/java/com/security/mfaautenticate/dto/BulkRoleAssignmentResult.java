@@ -0,0 +1,8 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Resultado de una asignación o revocación masiva: usuarios que realmente cambiaron
+ * y versión RBAC resultante.
+ */
+public record BulkRoleAssignmentResult(Long roleId, String role, int affected, long version) {
+}
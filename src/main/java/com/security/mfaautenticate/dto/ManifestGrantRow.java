@@ -0,0 +1,9 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+/**
+ * Fila plana (rol x permiso) para exportar el manifiesto en streaming.
+ */
+public record ManifestGrantRow(String roleName, String roleDescription, String resourceName, Operation operation) {
+}
@@ -0,0 +1,10 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+/**
+ * Fila plana (recurso x operación, con la condición del permiso) para exportar el manifiesto en streaming.
+ */
+public record ManifestResourceRow(String name, String description, String path, Operation operation,
+                                  String condition) {
+}
@@ -0,0 +1,10 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+
+/**
+ * Estado MFA de una cuenta, sin cargar la entidad ni sus roles. Todas las cuentas
+ * que comparten email (una por proveedor OAuth2) comparten también este estado.
+ */
+public record MfaStateRow(OAuthProvider provider, String email, String name, boolean mfaEnabled, String mfaSecret) {
+}
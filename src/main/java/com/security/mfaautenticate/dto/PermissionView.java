@@ -0,0 +1,14 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+public record PermissionView(Long id, Operation operation, String condition, ResourceRef resource) {
+
+    public PermissionView(Long id, Operation operation, String condition,
+                          Long resourceId, String resourceName, String resourcePath) {
+        this(id, operation, condition, new ResourceRef(resourceId, resourceName, resourcePath));
+    }
+
+    public record ResourceRef(Long id, String name, String path) {
+    }
+}
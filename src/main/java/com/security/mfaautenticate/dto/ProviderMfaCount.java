@@ -0,0 +1,13 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+
+/**
+ * Fila agregada: cantidad de usuarios por tenant, proveedor y estado de MFA.
+ */
+public interface ProviderMfaCount {
+    String getTenant();
+    OAuthProvider getProvider();
+    Boolean getMfaEnabled();
+    long getTotal();
+}
@@ -0,0 +1,33 @@
+package com.security.mfaautenticate.dto;
+
+import java.util.List;
+
+/**
+ * Cambios RBAC desde una versión. Si full es true el cliente debe recargar todo
+ * (la versión pedida ya no está en el registro o hay demasiados cambios).
+ * Los borrados no se propagan en cascada: el cliente quita las referencias a
+ * roles, recursos y permisos eliminados.
+ */
+public record RbacDelta(long version,
+                        boolean full,
+                        EntityDelta<RoleView> roles,
+                        EntityDelta<ResourceView> resources,
+                        EntityDelta<PermissionView> permissions,
+                        EntityDelta<RbacUserView> users) {
+
+    public static RbacDelta full(long version) {
+        return new RbacDelta(version, true, null, null, null, null);
+    }
+
+    public static RbacDelta empty(long version) {
+        return new RbacDelta(version, false, EntityDelta.empty(), EntityDelta.empty(),
+                EntityDelta.empty(), EntityDelta.empty());
+    }
+
+    public record EntityDelta<T>(List<T> upserted, List<Long> deleted) {
+
+        public static <T> EntityDelta<T> empty() {
+            return new EntityDelta<>(List.of(), List.of());
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+import java.util.List;
+
+/**
+ * Resultado de simular un cambio RBAC: por cada par (recurso, operación) que cambia, cuántos
+ * usuarios lo ganarían o perderían y cuáles (hasta el límite pedido, por id ascendente).
+ * {@code usersAffected} cuenta usuarios distintos en todo el cambio.
+ */
+public record RbacImpact(long version,
+                         RbacImpactRequest.Change change,
+                         long usersAffected,
+                         List<Entry> entries) {
+
+    public record Entry(Long resourceId,
+                        Operation operation,
+                        long gained,
+                        long lost,
+                        List<Long> gainedUsers,
+                        List<Long> lostUsers) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.security.mfaautenticate.dto;
+
+import lombok.Data;
+
+/**
+ * Cambio RBAC a simular sin aplicarlo. Según {@code change} se usan {@code roleId},
+ * {@code permissionId} y/o {@code parentId}.
+ */
+@Data
+public class RbacImpactRequest {
+
+    public enum Change {
+        REMOVE_PERMISSION_FROM_ROLE, // roleId, permissionId
+        DELETE_PERMISSION,           // permissionId
+        DELETE_ROLE,                 // roleId
+        ADD_PARENT,                  // roleId, parentId
+        REMOVE_PARENT                // roleId, parentId
+    }
+
+    private Change change;
+    private Long roleId;
+    private Long permissionId;
+    private Long parentId;
+}
@@ -0,0 +1,29 @@
+package com.security.mfaautenticate.dto;
+
+import lombok.Data;
+
+/**
+ * Resumen de una importación de manifiesto. Con dryRun los contadores describen
+ * lo que se aplicaría, sin haber escrito nada.
+ */
+@Data
+public class RbacImportResult {
+    private boolean dryRun;
+    private boolean prune;
+    private long version;
+
+    private int resourcesCreated;
+    private int resourcesUpdated;
+    private int resourcesDeleted;
+    private int permissionsCreated;
+    // Permisos cuya condición cambió
+    private int permissionsUpdated;
+    private int permissionsDeleted;
+    private int rolesCreated;
+    private int rolesUpdated;
+    private int rolesDeleted;
+    private int grantsAdded;
+    private int grantsRevoked;
+    private int parentsAdded;
+    private int parentsRemoved;
+}
@@ -0,0 +1,67 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifiesto RBAC (JSON o YAML) para importar y exportar el catálogo completo entre entornos.
+ * Los recursos y roles se identifican por nombre; los ids no viajan.
+ * <pre>
+ * resources:
+ *   - name: Documentos
+ *     path: documents
+ *     operations: [READ, UPDATE]
+ *     conditions:
+ *       UPDATE: user.mfaEnabled
+ * roles:
+ *   - name: EDITOR
+ *     parents: [LECTOR]
+ *     grants:
+ *       - resource: Documentos
+ *         operations: [READ, UPDATE]
+ * </pre>
+ * Las condiciones (ver {@code PermissionCondition}) son del permiso, no de la concesión: se
+ * declaran en el recurso, por operación, y rigen para todos los roles que la conceden.
+ */
+public record RbacManifest(List<ResourceEntry> resources, List<RoleEntry> roles) {
+
+    public List<ResourceEntry> resources() {
+        return resources == null ? List.of() : resources;
+    }
+
+    public List<RoleEntry> roles() {
+        return roles == null ? List.of() : roles;
+    }
+
+    public record ResourceEntry(String name, String description, String path, List<Operation> operations,
+                                Map<Operation, String> conditions) {
+
+        public List<Operation> operations() {
+            return operations == null ? List.of() : operations;
+        }
+
+        public Map<Operation, String> conditions() {
+            return conditions == null ? Map.of() : conditions;
+        }
+    }
+
+    public record RoleEntry(String name, String description, List<String> parents, List<GrantEntry> grants) {
+
+        public List<String> parents() {
+            return parents == null ? List.of() : parents;
+        }
+
+        public List<GrantEntry> grants() {
+            return grants == null ? List.of() : grants;
+        }
+    }
+
+    public record GrantEntry(String resource, List<Operation> operations) {
+
+        public List<Operation> operations() {
+            return operations == null ? List.of() : operations;
+        }
+    }
+}
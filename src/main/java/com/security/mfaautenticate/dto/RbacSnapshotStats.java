@@ -0,0 +1,18 @@
+package com.security.mfaautenticate.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Estado del snapshot RBAC persistido: archivo, cuándo se escribió, su antigüedad en segundos y la
+ * versión y cantidad de usuarios guardados por tenant. {@code degradedDecisions} cuenta las
+ * decisiones tomadas con el snapshot por no responder la base de datos desde el arranque del nodo.
+ */
+public record RbacSnapshotStats(String path,
+                                Instant writtenAt,
+                                Long ageSeconds,
+                                Map<String, Long> versions,
+                                Map<String, Integer> users,
+                                long degradedDecisions,
+                                Instant lastDegradedAt) {
+}
@@ -0,0 +1,24 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.User;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Usuario tal como lo muestra la administración RBAC: solo identidad y roles.
+ */
+public record RbacUserView(Long id, String email, String name, OAuthProvider oauthProvider, List<RoleRef> roles) {
+
+    public static RbacUserView of(User user) {
+        List<RoleRef> roles = user.getRoles().stream()
+                .map(role -> new RoleRef(role.getId(), role.getName()))
+                .sorted(Comparator.comparing(RoleRef::id))
+                .toList();
+        return new RbacUserView(user.getId(), user.getEmail(), user.getName(), user.getOauthProvider(), roles);
+    }
+
+    public record RoleRef(Long id, String name) {
+    }
+}
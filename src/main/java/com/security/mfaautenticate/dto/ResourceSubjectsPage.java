@@ -0,0 +1,19 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+import java.util.List;
+
+/**
+ * Usuarios que pueden realizar una operación sobre un recurso, paginados por cursor.
+ * {@code roles} son los roles que conceden la operación (directamente o por herencia),
+ * {@code total} el número de usuarios con alguno de ellos y {@code nextCursor} el id a enviar
+ * como "after" para la siguiente página, o null si no hay más resultados.
+ */
+public record ResourceSubjectsPage(Long resourceId,
+                                   Operation operation,
+                                   List<Long> roles,
+                                   long total,
+                                   List<RbacUserView> users,
+                                   Long nextCursor) {
+}
@@ -0,0 +1,4 @@
+package com.security.mfaautenticate.dto;
+
+public record ResourceView(Long id, String name, String description, String path) {
+}
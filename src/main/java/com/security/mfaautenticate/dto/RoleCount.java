@@ -0,0 +1,10 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Fila agregada: cantidad de usuarios de un tenant que tienen un rol.
+ */
+public interface RoleCount {
+    String getTenant();
+    String getRole();
+    long getTotal();
+}
@@ -0,0 +1,9 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+/**
+ * Fila plana (rol x permiso) usada para armar {@link RoleView} sin cargar entidades.
+ */
+public record RoleGrantRow(Long roleId, Long permissionId, Long resourceId, Operation operation, String condition) {
+}
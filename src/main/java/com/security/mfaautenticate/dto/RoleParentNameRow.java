@@ -0,0 +1,7 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Arista de la jerarquía por nombre, para el manifiesto RBAC.
+ */
+public record RoleParentNameRow(String roleName, String parentName) {
+}
@@ -0,0 +1,7 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Arista de la jerarquía de roles: {@code roleId} hereda los permisos de {@code parentId}.
+ */
+public record RoleParentRow(Long roleId, Long parentId) {
+}
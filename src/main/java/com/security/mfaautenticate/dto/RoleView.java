@@ -0,0 +1,17 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public record RoleView(Long id, String name, String description, List<Long> parents, List<Grant> permissions) {
+
+    // Usado por la consulta JPQL; padres y permisos se completan a partir de RoleParentRow y RoleGrantRow
+    public RoleView(Long id, String name, String description) {
+        this(id, name, description, new ArrayList<>(), new ArrayList<>());
+    }
+
+    public record Grant(Long id, Long resourceId, Operation operation) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Fila plana (usuario x rol) leída con cursor durante la exportación NDJSON.
+ * Un usuario con varios roles produce filas consecutivas con el mismo id.
+ */
+@Data
+@AllArgsConstructor
+public class UserExportRow {
+    private Long id;
+    private String email;
+    private String name;
+    private OAuthProvider provider;
+    private boolean mfaEnabled;
+    private String roleName;
+}
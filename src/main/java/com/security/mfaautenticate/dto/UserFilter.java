@@ -0,0 +1,25 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Filtros opcionales para los listados de usuarios de administración.
+ * Un campo null significa "sin filtro".
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserFilter {
+    private OAuthProvider provider;
+    private Boolean mfaEnabled;
+    private String role;
+    // Cuentas sin actividad desde este instante (o nunca vistas)
+    private Instant inactiveSince;
+}
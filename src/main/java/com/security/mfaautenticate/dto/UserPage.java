@@ -0,0 +1,18 @@
+package com.security.mfaautenticate.dto;
+
+import com.security.mfaautenticate.entity.User;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Página de usuarios obtenida por cursor. nextCursor es el id a enviar como "after"
+ * para la siguiente página, o null si no hay más resultados.
+ */
+@Data
+@AllArgsConstructor
+public class UserPage {
+    private List<User> users;
+    private Long nextCursor;
+}
@@ -0,0 +1,7 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Asignación de un rol directo a un usuario (fila de user_roles).
+ */
+public record UserRoleRow(Long userId, Long roleId) {
+}
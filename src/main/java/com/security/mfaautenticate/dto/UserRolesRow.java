@@ -0,0 +1,7 @@
+package com.security.mfaautenticate.dto;
+
+/**
+ * Fila plana (usuario x rol); los campos del rol son null si el usuario no tiene roles.
+ */
+public record UserRolesRow(Long id, String email, String name, Long roleId, String roleName, String roleDescription) {
+}
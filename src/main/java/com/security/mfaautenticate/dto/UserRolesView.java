@@ -0,0 +1,9 @@
+package com.security.mfaautenticate.dto;
+
+import java.util.List;
+
+public record UserRolesView(Long id, String email, String name, List<RoleRef> roles) {
+
+    public record RoleRef(Long id, String name, String description) {
+    }
+}
@@ -0,0 +1,21 @@
+package com.security.mfaautenticate.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserStatsSnapshot {
+    private long totalUsers;
+    private long usersWithMfa;
+    private Map<String, Map<String, Long>> byProvider;
+    private Map<String, Long> byRole;
+    private long[] loginsPerMinute;
+    private long[] mfaFailuresPerMinute;
+}
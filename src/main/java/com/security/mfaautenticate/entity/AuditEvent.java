@@ -0,0 +1,49 @@
+package com.security.mfaautenticate.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.TenantId;
+
+import java.time.Instant;
+
+/**
+ * Evento de auditoría: decisiones de autorización, verificaciones MFA y logins. Se escriben por
+ * lotes JDBC desde AuditLog, fuera de la petición; JPA solo se usa para consultarlos.
+ */
+@Entity
+@Table(name = "audit_events", indexes = {
+        @Index(name = "idx_audit_events_tenant_occurred_at", columnList = "tenant_id, occurred_at"),
+        @Index(name = "idx_audit_events_tenant_email_occurred_at", columnList = "tenant_id, email, occurred_at")
+})
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuditEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    @Column(nullable = false, length = 32)
+    @Enumerated(EnumType.STRING)
+    private AuditEventType type;
+
+    private String email;
+
+    private String resource;
+
+    @Column(length = 16)
+    @Enumerated(EnumType.STRING)
+    private Operation operation;
+
+    private String detail;
+}
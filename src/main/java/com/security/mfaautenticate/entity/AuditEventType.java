@@ -0,0 +1,17 @@
+package com.security.mfaautenticate.entity;
+
+public enum AuditEventType {
+    AUTHZ_ALLOW,
+    AUTHZ_DENY,
+    MFA_SUCCESS,
+    MFA_FAILURE,
+    LOGIN;
+
+    /**
+     * Eventos de rutina: con el buffer bajo presión y la política SAMPLE solo se guarda una muestra.
+     * Denegaciones y fallos de MFA se intentan guardar siempre.
+     */
+    public boolean isRoutine() {
+        return this == AUTHZ_ALLOW || this == MFA_SUCCESS || this == LOGIN;
+    }
+}
@@ -3,25 +3,37 @@ package com.security.mfaautenticate.entity;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.TenantId;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@NamedEntityGraph(name = "Permission.resource", attributeNodes = @NamedAttributeNode("resource"))
 @Table(name = "permissions")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rbac.permissions")
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @EqualsAndHashCode(exclude = {"roles"})
 @ToString(exclude = {"roles"})
-public class Permission {
+public class Permission implements TenantScoped {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "permissions_seq")
+    @SequenceGenerator(name = "permissions_seq", sequenceName = "permissions_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne
+    // Partición RBAC: Hibernate lo asigna al insertar y filtra cada consulta por el tenant actual
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "resource_id", nullable = false)
     private Resource resource;
 
@@ -29,6 +41,13 @@ public class Permission {
     @Enumerated(EnumType.STRING)
     private Operation operation;
 
+    /**
+     * Condición opcional sobre atributos del usuario, la petición o la hora
+     * (ver {@link com.security.mfaautenticate.security.PermissionCondition}). Null = sin condición.
+     */
+    @Column(name = "condition_expr", length = 500)
+    private String condition;
+
     @JsonBackReference("role-permissions")
     @ManyToMany(mappedBy = "permissions")
     private Set<Role> roles = new HashSet<>();
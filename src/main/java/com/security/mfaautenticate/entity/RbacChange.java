@@ -0,0 +1,55 @@
+package com.security.mfaautenticate.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.TenantId;
+
+import java.time.Instant;
+
+/**
+ * Registro de cambios RBAC. Cada escritura de RbacService inserta una fila en la misma
+ * transacción con la siguiente versión del tenant (ver {@link RbacTenantVersion}); los nodos
+ * la comparan para invalidar cachés y responder deltas a la UI de administración.
+ */
+@Entity
+@Table(name = "rbac_changes", indexes = {
+        @Index(name = "idx_rbac_changes_occurred_at", columnList = "occurred_at"),
+        @Index(name = "uk_rbac_changes_tenant_version", columnList = "tenant_id, version", unique = true)
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RbacChange {
+
+    // Solo clave de la fila: un id se asigna al insertar, no al confirmar, así que no sirve como
+    // cursor de deltas. El orden lo da version
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
+    // Versión del tenant asignada en orden de commit; consecutiva dentro de cada tenant
+    @Column(nullable = false, updatable = false)
+    private Long version;
+
+    @Column(name = "entity_type", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private RbacEntityType entityType;
+
+    @Column(name = "entity_id", nullable = false)
+    private Long entityId;
+
+    @Column(name = "occurred_at", nullable = false)
+    private Instant occurredAt;
+
+    public RbacChange(RbacEntityType entityType, Long entityId, long version) {
+        this.version = version;
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.occurredAt = Instant.now();
+    }
+}
@@ -0,0 +1,8 @@
+package com.security.mfaautenticate.entity;
+
+public enum RbacEntityType {
+    ROLE,
+    RESOURCE,
+    PERMISSION,
+    USER
+}
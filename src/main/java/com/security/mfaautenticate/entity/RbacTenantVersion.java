@@ -0,0 +1,25 @@
+package com.security.mfaautenticate.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Contador de versión RBAC de un tenant. RbacVersion lo incrementa con JDBC en la misma
+ * transacción que registra el cambio; la fila queda bloqueada hasta el commit, así que las
+ * versiones de un tenant se confirman en orden. JPA solo lo declara para el esquema.
+ */
+@Entity
+@Table(name = "rbac_versions")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class RbacTenantVersion {
+
+    @Id
+    @Column(name = "tenant_id", length = 64)
+    private String tenant;
+
+    @Column(nullable = false)
+    private long version;
+}
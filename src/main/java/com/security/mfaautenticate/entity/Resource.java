@@ -1,8 +1,12 @@
 package com.security.mfaautenticate.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.TenantId;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -14,24 +18,37 @@ import java.util.Set;
  * se pueden realizar sobre cada recurso.
  */
 @Entity
-@Table(name = "resources")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@Table(name = "resources", indexes = {
+        @Index(name = "idx_resources_path", columnList = "path")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_resources_tenant_name", columnNames = {"tenant_id", "name"})
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rbac.resources")
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @EqualsAndHashCode(exclude = {"permissions"})
 @ToString(exclude = {"permissions"})
-public class Resource {
+public class Resource implements TenantScoped {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "resources_seq")
+    @SequenceGenerator(name = "resources_seq", sequenceName = "resources_seq", allocationSize = 50)
     private Long id;
 
+    // Partición RBAC: Hibernate lo asigna al insertar y filtra cada consulta por el tenant actual
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
     /**
      * Nombre de la entidad de negocio.
      * Ejemplos: "Productos", "Usuarios", "Documentos", "Órdenes"
      */
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String name;
 
     /**
@@ -4,38 +4,70 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.TenantId;
 
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "roles")
+@NamedEntityGraph(
+        name = "Role.permissions",
+        attributeNodes = @NamedAttributeNode(value = "permissions", subgraph = "permission-resource"),
+        subgraphs = @NamedSubgraph(name = "permission-resource", attributeNodes = @NamedAttributeNode("resource"))
+)
+@Table(name = "roles", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_roles_tenant_name", columnNames = {"tenant_id", "name"})
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rbac.roles")
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@EqualsAndHashCode(exclude = {"permissions", "users"})
-@ToString(exclude = {"permissions", "users"})
-public class Role {
+@EqualsAndHashCode(exclude = {"permissions", "parents", "users"})
+@ToString(exclude = {"permissions", "parents", "users"})
+public class Role implements TenantScoped {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "roles_seq")
+    @SequenceGenerator(name = "roles_seq", sequenceName = "roles_seq", allocationSize = 50)
     private Long id;
 
-    @Column(unique = true, nullable = false)
+    // Partición RBAC: Hibernate lo asigna al insertar y filtra cada consulta por el tenant actual
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
+    @Column(nullable = false)
     private String name;
 
     private String description;
 
     @JsonManagedReference("role-permissions")
-    @ManyToMany(fetch = FetchType.EAGER)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rbac.roles.permissions")
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "role_permissions",
         joinColumns = @JoinColumn(name = "role_id"),
-        inverseJoinColumns = @JoinColumn(name = "permission_id")
+        inverseJoinColumns = @JoinColumn(name = "permission_id"),
+        indexes = @Index(name = "idx_role_permissions_role_permission", columnList = "role_id, permission_id")
     )
     private Set<Permission> permissions = new HashSet<>();
 
+    // Roles de los que hereda permisos; los efectivos se precalculan en EffectivePermissions
+    @JsonIgnore
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "rbac.roles.parents")
+    @ManyToMany(fetch = FetchType.LAZY)
+    @JoinTable(
+        name = "role_parents",
+        joinColumns = @JoinColumn(name = "role_id"),
+        inverseJoinColumns = @JoinColumn(name = "parent_id"),
+        indexes = @Index(name = "idx_role_parents_parent", columnList = "parent_id")
+    )
+    private Set<Role> parents = new HashSet<>();
+
     @JsonIgnore
     @ManyToMany(mappedBy = "roles")
     private Set<User> users = new HashSet<>();
@@ -0,0 +1,10 @@
+package com.security.mfaautenticate.entity;
+
+/**
+ * Entidad particionada por tenant. Hibernate filtra por tenant las consultas, pero no las
+ * búsquedas por id (find, findById, deleteById): esas se comprueban con TenantContext.owns.
+ */
+public interface TenantScoped {
+
+    String getTenant();
+}
@@ -5,11 +5,26 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.TenantId;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
+@NamedEntityGraphs({
+        @NamedEntityGraph(name = "User.roles", attributeNodes = @NamedAttributeNode("roles")),
+        @NamedEntityGraph(
+                name = "User.rolesWithPermissions",
+                attributeNodes = @NamedAttributeNode(value = "roles", subgraph = "role-permissions"),
+                subgraphs = {
+                        @NamedSubgraph(name = "role-permissions",
+                                attributeNodes = @NamedAttributeNode(value = "permissions", subgraph = "permission-resource")),
+                        @NamedSubgraph(name = "permission-resource",
+                                attributeNodes = @NamedAttributeNode("resource"))
+                }
+        )
+})
 @Table(name = "users", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"oauth_provider", "oauth_id"})
 })
@@ -17,12 +32,18 @@ import java.util.Set;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class User {
+public class User implements TenantScoped {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
+    // Tenant del usuario: viaja en el claim "tenant" del JWT y fija la partición RBAC de sus peticiones
+    @TenantId
+    @Column(name = "tenant_id", nullable = false, updatable = false, length = 64)
+    private String tenant;
+
     @Column(nullable = false)  // Ya no unique
     private String email;
 
@@ -46,11 +67,20 @@ public class User {
     @Column(name = "using_mfa")
     private boolean usingMfa;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    // Solo los escribe UserActivityTracker por JDBC: un save() de JPA con la entidad cargada
+    // antes del último volcado no debe pisarlos con valores viejos
+    @Column(name = "last_login_at", insertable = false, updatable = false)
+    private Instant lastLoginAt;
+
+    @Column(name = "last_seen_at", insertable = false, updatable = false)
+    private Instant lastSeenAt;
+
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
         name = "user_roles",
         joinColumns = @JoinColumn(name = "user_id"),
-        inverseJoinColumns = @JoinColumn(name = "role_id")
+        inverseJoinColumns = @JoinColumn(name = "role_id"),
+        indexes = @Index(name = "idx_user_roles_user_role", columnList = "user_id, role_id")
     )
     @Builder.Default
     private Set<Role> roles = new HashSet<>();
@@ -0,0 +1,35 @@
+package com.security.mfaautenticate.repository;
+
+import com.security.mfaautenticate.entity.AuditEvent;
+import com.security.mfaautenticate.entity.AuditEventType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+@Transactional(readOnly = true)
+public interface AuditEventRepository extends JpaRepository<AuditEvent, Long> {
+
+    // Rango de tiempo sobre (tenant_id, occurred_at) o (tenant_id, email, occurred_at);
+    // del más reciente al más antiguo, paginado por id
+    @Query("""
+            select e from AuditEvent e
+            where e.occurredAt >= :from and e.occurredAt < :to
+              and (:type is null or e.type = :type)
+              and (:email is null or e.email = :email)
+              and e.id < :before
+            order by e.id desc
+            """)
+    List<AuditEvent> findPage(@Param("from") Instant from,
+                              @Param("to") Instant to,
+                              @Param("type") AuditEventType type,
+                              @Param("email") String email,
+                              @Param("before") Long before,
+                              Limit limit);
+}
@@ -1,16 +1,45 @@
 package com.security.mfaautenticate.repository;
 
+import com.security.mfaautenticate.dto.PermissionView;
 import com.security.mfaautenticate.entity.Operation;
 import com.security.mfaautenticate.entity.Permission;
 import com.security.mfaautenticate.entity.Resource;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface PermissionRepository extends JpaRepository<Permission, Long> {
     List<Permission> findByResource(Resource resource);
     Optional<Permission> findByResourceAndOperation(Resource resource, Operation operation);
+
+    @EntityGraph("Permission.resource")
+    Optional<Permission> findWithResourceById(Long id);
+
+    @EntityGraph("Permission.resource")
+    @Query("select p from Permission p order by p.id")
+    List<Permission> findAllWithResource();
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.PermissionView(p.id, p.operation, p.condition, res.id, res.name, res.path)
+            from Permission p join p.resource res
+            order by p.id
+            """)
+    List<PermissionView> findAllViews();
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.PermissionView(p.id, p.operation, p.condition, res.id, res.name, res.path)
+            from Permission p join p.resource res
+            where p.id in :ids
+            order by p.id
+            """)
+    List<PermissionView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,38 @@
+package com.security.mfaautenticate.repository;
+
+import com.security.mfaautenticate.entity.RbacChange;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface RbacChangeRepository extends JpaRepository<RbacChange, Long> {
+
+    // Todas las consultas se filtran por el tenant de la sesión (@TenantId).
+    // El registro se lee siempre del primario (transacción no readOnly): una réplica
+    // atrasada no debe adelantar ni retrasar lo que se cachea con esa versión
+    @Transactional
+    @Query("select coalesce(min(c.version), 0) from RbacChange c")
+    long findOldestVersion();
+
+    @Transactional
+    List<RbacChange> findByVersionGreaterThanOrderByVersionAsc(Long since, Limit limit);
+
+    // Conserva siempre la última fila de cada tenant: findOldestVersion sigue marcando desde dónde
+    // hay registro completo
+    @Transactional
+    @Modifying
+    @Query("""
+            delete from RbacChange c
+            where c.occurredAt < :cutoff
+              and c.version < (select max(c2.version) from RbacChange c2 where c2.tenant = c.tenant)
+            """)
+    int deleteOlderThan(@Param("cutoff") Instant cutoff);
+}
@@ -1,14 +1,51 @@
 package com.security.mfaautenticate.repository;
 
+import com.security.mfaautenticate.dto.ManifestResourceRow;
+import com.security.mfaautenticate.dto.ResourceView;
 import com.security.mfaautenticate.entity.Resource;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
+@Transactional(readOnly = true)
 public interface ResourceRepository extends JpaRepository<Resource, Long> {
     Optional<Resource> findByName(String name);
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = "rbac.queries")
+    })
     Optional<Resource> findByPath(String path);
+
     boolean existsByName(String name);
+
+    @Query("select new com.security.mfaautenticate.dto.ResourceView(r.id, r.name, r.description, r.path) from Resource r order by r.id")
+    List<ResourceView> findAllViews();
+
+    @Query("select new com.security.mfaautenticate.dto.ResourceView(r.id, r.name, r.description, r.path) from Resource r where r.id in :ids order by r.id")
+    List<ResourceView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Exportación del manifiesto: una fila por operación, agrupadas por nombre de recurso
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new com.security.mfaautenticate.dto.ManifestResourceRow(r.name, r.description, r.path, p.operation, p.condition)
+            from Resource r left join r.permissions p
+            order by r.name, p.operation
+            """)
+    Stream<ManifestResourceRow> streamManifestRows();
 }
@@ -1,13 +1,101 @@
 package com.security.mfaautenticate.repository;
 
+import com.security.mfaautenticate.dto.ManifestGrantRow;
+import com.security.mfaautenticate.dto.RoleGrantRow;
+import com.security.mfaautenticate.dto.RoleParentNameRow;
+import com.security.mfaautenticate.dto.RoleParentRow;
+import com.security.mfaautenticate.dto.RoleView;
 import com.security.mfaautenticate.entity.Role;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
+@Transactional(readOnly = true)
 public interface RoleRepository extends JpaRepository<Role, Long> {
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = AvailableHints.HINT_CACHE_REGION, value = "rbac.queries")
+    })
     Optional<Role> findByName(String name);
+
     boolean existsByName(String name);
+
+    @EntityGraph("Role.permissions")
+    Optional<Role> findWithPermissionsById(Long id);
+
+    @EntityGraph("Role.permissions")
+    @Query("select r from Role r order by r.id")
+    List<Role> findAllWithPermissions();
+
+    // Jerarquía de roles
+    @EntityGraph(attributePaths = "parents")
+    Optional<Role> findWithParentsById(Long id);
+
+    @EntityGraph(attributePaths = "parents")
+    @Query("select r from Role r join r.parents p where p.id = :parentId")
+    List<Role> findChildrenOf(@Param("parentId") Long parentId);
+
+    @Query("select new com.security.mfaautenticate.dto.RoleParentRow(r.id, p.id) from Role r join r.parents p")
+    List<RoleParentRow> findAllParentRows();
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.RoleParentRow(r.id, p.id)
+            from Role r join r.parents p
+            where r.id in :ids
+            """)
+    List<RoleParentRow> findParentRowsByRoleIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.RoleParentNameRow(r.name, p.name)
+            from Role r join r.parents p
+            order by r.name, p.name
+            """)
+    List<RoleParentNameRow> findAllParentNameRows();
+
+    // Proyecciones de solo lectura para el catálogo RBAC
+    @Query("select new com.security.mfaautenticate.dto.RoleView(r.id, r.name, r.description) from Role r order by r.id")
+    List<RoleView> findAllViews();
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.RoleGrantRow(r.id, p.id, p.resource.id, p.operation, p.condition)
+            from Role r join r.permissions p
+            order by r.id, p.id
+            """)
+    List<RoleGrantRow> findAllGrantRows();
+
+    @Query("select new com.security.mfaautenticate.dto.RoleView(r.id, r.name, r.description) from Role r where r.id in :ids order by r.id")
+    List<RoleView> findViewsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.RoleGrantRow(r.id, p.id, p.resource.id, p.operation, p.condition)
+            from Role r join r.permissions p
+            where r.id in :ids
+            order by r.id, p.id
+            """)
+    List<RoleGrantRow> findGrantRowsByRoleIdIn(@Param("ids") Collection<Long> ids);
+
+    // Exportación del manifiesto: una fila por permiso concedido, agrupadas por rol y recurso
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new com.security.mfaautenticate.dto.ManifestGrantRow(r.name, r.description, res.name, p.operation)
+            from Role r left join r.permissions p left join p.resource res
+            order by r.name, res.name, p.operation
+            """)
+    Stream<ManifestGrantRow> streamManifestGrantRows();
 }
@@ -1,17 +1,177 @@
 package com.security.mfaautenticate.repository;
 
+import com.security.mfaautenticate.dto.MfaStateRow;
+import com.security.mfaautenticate.dto.ProviderMfaCount;
+import com.security.mfaautenticate.dto.RoleCount;
+import com.security.mfaautenticate.dto.UserExportRow;
+import com.security.mfaautenticate.dto.UserRoleRow;
+import com.security.mfaautenticate.dto.UserRolesRow;
 import com.security.mfaautenticate.entity.OAuthProvider;
 import com.security.mfaautenticate.entity.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+// Consultas readOnly: van a una réplica de lectura si hay alguna disponible
+@Transactional(readOnly = true)
 public interface UserRepository extends JpaRepository<User, Long> {
 
-    Optional<User> findByEmail(String email);
+    // Búsquedas por email sin distinguir mayúsculas: usan el índice sobre lower(email)
+    @Query("select u from User u where lower(u.email) = lower(:email)")
+    Optional<User> findByEmail(@Param("email") String email);
 
-    List<User> findAllByEmail(String email);
+    // Flujo MFA: se lee el secreto recién guardado, siempre en el primario
+    @Transactional
+    @Query("""
+            select new com.security.mfaautenticate.dto.MfaStateRow(u.oauthProvider, u.email, u.name, u.mfaEnabled, u.mfaSecret)
+            from User u
+            where lower(u.email) = lower(:email)
+            order by u.id
+            """)
+    List<MfaStateRow> findMfaStateByEmail(@Param("email") String email);
 
+    // Cambios de estado MFA: un único UPDATE para todas las cuentas con el email
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update User u set u.mfaSecret = :secret where lower(u.email) = lower(:email)")
+    int updateMfaSecretByEmail(@Param("email") String email, @Param("secret") String secret);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update User u set u.mfaEnabled = true, u.usingMfa = true where lower(u.email) = lower(:email)")
+    int enableMfaByEmail(@Param("email") String email);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("""
+            update User u set u.mfaEnabled = false, u.usingMfa = false, u.mfaSecret = null
+            where lower(u.email) = lower(:email)
+            """)
+    int disableMfaByEmail(@Param("email") String email);
+
+    @Query("select count(u) > 0 from User u where lower(u.email) = lower(:email)")
+    boolean existsByEmail(@Param("email") String email);
+
+    // Principal de autenticación: usuario + roles en una sola consulta
+    @EntityGraph("User.roles")
+    @Query("select u from User u where lower(u.email) = lower(:email)")
+    List<User> findWithRolesByEmail(@Param("email") String email);
+
+    @EntityGraph("User.roles")
+    Optional<User> findWithRolesById(Long id);
+
+    // Login OAuth2: lectura seguida de alta o actualización, en el primario
+    @Transactional
+    @EntityGraph("User.roles")
     Optional<User> findByOauthProviderAndOauthId(OAuthProvider provider, String oauthId);
-}
\ No newline at end of file
+
+    // Listados de administración
+    @EntityGraph("User.roles")
+    @Query("select u from User u order by u.id")
+    List<User> findAllWithRoles();
+
+    @EntityGraph("User.roles")
+    List<User> findWithRolesByIdInOrderByIdAsc(Collection<Long> ids);
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.UserRolesRow(u.id, u.email, u.name, r.id, r.name, r.description)
+            from User u left join u.roles r
+            where u.id = :id
+            order by r.id
+            """)
+    List<UserRolesRow> findRolesRowsById(@Param("id") Long id);
+
+    // Paginación por cursor (keyset): solo ids, las filas se cargan después con sus roles
+    @Query("""
+            select u.id from User u
+            where u.id > :after
+              and (:provider is null or u.oauthProvider = :provider)
+              and (:mfaEnabled is null or u.mfaEnabled = :mfaEnabled)
+              and (:role is null or exists (
+                    select 1 from User ur join ur.roles r where ur = u and r.name = :role))
+              and (:inactiveSince is null or u.lastSeenAt is null or u.lastSeenAt < :inactiveSince)
+            order by u.id
+            """)
+    List<Long> findIdsAfter(@Param("after") long after,
+                            @Param("provider") OAuthProvider provider,
+                            @Param("mfaEnabled") Boolean mfaEnabled,
+                            @Param("role") String role,
+                            @Param("inactiveSince") Instant inactiveSince,
+                            Limit limit);
+
+    // Exportación: proyección plana leída con cursor, sin entidades en el contexto de persistencia
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("""
+            select new com.security.mfaautenticate.dto.UserExportRow(
+                u.id, u.email, u.name, u.oauthProvider, u.mfaEnabled, r.name)
+            from User u left join u.roles r
+            where (:provider is null or u.oauthProvider = :provider)
+              and (:mfaEnabled is null or u.mfaEnabled = :mfaEnabled)
+              and (:role is null or exists (
+                    select 1 from User ur join ur.roles rr where ur = u and rr.name = :role))
+              and (:inactiveSince is null or u.lastSeenAt is null or u.lastSeenAt < :inactiveSince)
+            order by u.id
+            """)
+    Stream<UserExportRow> streamExportRows(@Param("provider") OAuthProvider provider,
+                                           @Param("mfaEnabled") Boolean mfaEnabled,
+                                           @Param("role") String role,
+                                           @Param("inactiveSince") Instant inactiveSince);
+
+    // Chequeos RBAC: se resuelven en la base de datos sin materializar el grafo
+    @Query("""
+            select count(u) > 0 from User u
+            join u.roles r
+            where lower(u.email) = lower(:email) and r.name = :roleName
+            """)
+    boolean existsByEmailAndRolesName(@Param("email") String email, @Param("roleName") String roleName);
+
+    // Roles directos del usuario; los permisos efectivos se resuelven en memoria (EffectivePermissions)
+    @Query("select r.id from User u join u.roles r where lower(u.email) = lower(:email)")
+    List<Long> findRoleIdsByEmail(@Param("email") String email);
+
+    // Índice inverso rol -> usuarios (SubjectIndex): carga completa con cursor y recarga por usuario
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("select new com.security.mfaautenticate.dto.UserRoleRow(u.id, r.id) from User u join u.roles r")
+    Stream<UserRoleRow> streamUserRoleRows();
+
+    @Query("""
+            select new com.security.mfaautenticate.dto.UserRoleRow(u.id, r.id)
+            from User u join u.roles r
+            where u.id in :ids
+            """)
+    List<UserRoleRow> findUserRoleRowsByUserIdIn(@Param("ids") Collection<Long> ids);
+
+    // Estadísticas agregadas (semilla y reconciliación de los contadores en memoria)
+    @Query("""
+            select u.tenant as tenant, u.oauthProvider as provider, u.mfaEnabled as mfaEnabled, count(u) as total
+            from User u
+            group by u.tenant, u.oauthProvider, u.mfaEnabled
+            """)
+    List<ProviderMfaCount> countByProviderAndMfa();
+
+    @Query("""
+            select u.tenant as tenant, r.name as role, count(u) as total
+            from User u join u.roles r
+            group by u.tenant, r.name
+            """)
+    List<RoleCount> countByRole();
+}
@@ -0,0 +1,86 @@
+package com.security.mfaautenticate.security;
+
+import com.security.mfaautenticate.entity.User;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+/**
+ * Atributos contra los que se evalúa la condición de un permiso: el usuario autenticado,
+ * la petición y la hora. Los valores se leen al evaluarse, de modo que construir el contexto
+ * no cuesta nada cuando el permiso no tiene condición.
+ */
+public interface ConditionContext {
+
+    /**
+     * Contexto sin atributos: toda condición que dependa de ellos resulta falsa.
+     */
+    ConditionContext NONE = new ConditionContext() {
+    };
+
+    default User user() {
+        return null;
+    }
+
+    default String method() {
+        return null;
+    }
+
+    default String path() {
+        return null;
+    }
+
+    default String parameter(String name) {
+        return null;
+    }
+
+    default String pathVariable(String name) {
+        return null;
+    }
+
+    default String header(String name) {
+        return null;
+    }
+
+    default ZonedDateTime now() {
+        return ZonedDateTime.now();
+    }
+
+    static ConditionContext of(HttpServletRequest request, User user) {
+        return new ConditionContext() {
+            @Override
+            public User user() {
+                return user;
+            }
+
+            @Override
+            public String method() {
+                return request.getMethod();
+            }
+
+            @Override
+            public String path() {
+                return request.getRequestURI();
+            }
+
+            @Override
+            public String parameter(String name) {
+                return request.getParameter(name);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public String pathVariable(String name) {
+                Object variables = request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+                return variables instanceof Map<?, ?> map ? ((Map<String, String>) map).get(name) : null;
+            }
+
+            @Override
+            public String header(String name) {
+                return request.getHeader(name);
+            }
+        };
+    }
+}
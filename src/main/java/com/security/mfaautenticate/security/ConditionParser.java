@@ -0,0 +1,312 @@
+package com.security.mfaautenticate.security;
+
+import com.security.mfaautenticate.entity.User;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+/**
+ * Parser descendente de las condiciones de permisos. Los atributos se resuelven al compilar a
+ * funciones de acceso, de modo que evaluar no vuelve a mirar el texto de la expresión.
+ */
+final class ConditionParser {
+
+    private static final int MAX_LENGTH = 500;
+    private static final Function<ConditionContext, Object> NULL_LITERAL = context -> null;
+
+    private final String expression;
+    private final List<String> tokens;
+    private int position;
+
+    private ConditionParser(String expression) {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    static PermissionCondition compile(String expression) {
+        return parse(expression.strip());
+    }
+
+    private static PermissionCondition parse(String expression) {
+        if (expression.isEmpty() || expression.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("La condición debe tener entre 1 y " + MAX_LENGTH + " caracteres");
+        }
+        ConditionParser parser = new ConditionParser(expression);
+        Function<ConditionContext, Object> root = parser.or();
+        if (parser.position < parser.tokens.size()) {
+            throw parser.error("token inesperado '" + parser.tokens.get(parser.position) + "'");
+        }
+        return context -> Boolean.TRUE.equals(root.apply(context));
+    }
+
+    // or := and ('||' and)*
+    private Function<ConditionContext, Object> or() {
+        Function<ConditionContext, Object> left = and();
+        while (accept("||")) {
+            Function<ConditionContext, Object> l = left;
+            Function<ConditionContext, Object> r = and();
+            left = context -> isTrue(l.apply(context)) || isTrue(r.apply(context));
+        }
+        return left;
+    }
+
+    // and := unary ('&&' unary)*
+    private Function<ConditionContext, Object> and() {
+        Function<ConditionContext, Object> left = unary();
+        while (accept("&&")) {
+            Function<ConditionContext, Object> l = left;
+            Function<ConditionContext, Object> r = unary();
+            left = context -> isTrue(l.apply(context)) && isTrue(r.apply(context));
+        }
+        return left;
+    }
+
+    // unary := '!' unary | comparison
+    private Function<ConditionContext, Object> unary() {
+        if (accept("!")) {
+            Function<ConditionContext, Object> operand = unary();
+            // La negación de un atributo ausente sigue sin cumplirse
+            return context -> operand.apply(context) instanceof Boolean value ? !value : null;
+        }
+        return comparison();
+    }
+
+    // comparison := operand (op operand)?
+    private Function<ConditionContext, Object> comparison() {
+        Function<ConditionContext, Object> left = operand();
+        String op = peek();
+        if (op == null || !List.of("==", "!=", "<", "<=", ">", ">=").contains(op)) {
+            return left;
+        }
+        position++;
+        Function<ConditionContext, Object> right = operand();
+
+        // Solo "x == null" / "x != null" prueban ausencia; cualquier otra comparación con null es falsa
+        if (left == NULL_LITERAL || right == NULL_LITERAL) {
+            Function<ConditionContext, Object> other = left == NULL_LITERAL ? right : left;
+            return switch (op) {
+                case "==" -> context -> other.apply(context) == null;
+                case "!=" -> context -> other.apply(context) != null;
+                default -> throw error("null solo admite == y !=");
+            };
+        }
+        return switch (op) {
+            case "==" -> context -> equal(left.apply(context), right.apply(context), true);
+            case "!=" -> context -> equal(left.apply(context), right.apply(context), false);
+            case "<" -> context -> ordered(left.apply(context), right.apply(context), c -> c < 0);
+            case "<=" -> context -> ordered(left.apply(context), right.apply(context), c -> c <= 0);
+            case ">" -> context -> ordered(left.apply(context), right.apply(context), c -> c > 0);
+            default -> context -> ordered(left.apply(context), right.apply(context), c -> c >= 0);
+        };
+    }
+
+    // operand := '(' or ')' | literal | attribute
+    private Function<ConditionContext, Object> operand() {
+        String token = next();
+        if (token.equals("(")) {
+            Function<ConditionContext, Object> inner = or();
+            expect(")");
+            return inner;
+        }
+        if (token.startsWith("'")) {
+            String value = token.substring(1, token.length() - 1);
+            return context -> value;
+        }
+        if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '-') {
+            BigDecimal value = number(token);
+            return context -> value;
+        }
+        return switch (token) {
+            case "true" -> context -> Boolean.TRUE;
+            case "false" -> context -> Boolean.FALSE;
+            case "null" -> NULL_LITERAL;
+            default -> attribute(token);
+        };
+    }
+
+    private Function<ConditionContext, Object> attribute(String name) {
+        switch (name) {
+            case "user.id":
+                return context -> userAttribute(context, User::getId);
+            case "user.email":
+                return context -> userAttribute(context, User::getEmail);
+            case "user.mfaEnabled":
+                return context -> userAttribute(context, User::isMfaEnabled);
+            case "user.provider":
+                return context -> userAttribute(context, user -> user.getOauthProvider().name());
+            case "request.method":
+                return ConditionContext::method;
+            case "request.path":
+                return ConditionContext::path;
+            case "time.hour":
+                return context -> context.now().getHour();
+            case "time.minute":
+                return context -> context.now().getMinute();
+            case "time.dayOfWeek":
+                return context -> context.now().getDayOfWeek().getValue();
+            default:
+                break;
+        }
+        if (name.startsWith("request.param.") && name.length() > "request.param.".length()) {
+            String parameter = name.substring("request.param.".length());
+            return context -> context.parameter(parameter);
+        }
+        if (name.startsWith("request.var.") && name.length() > "request.var.".length()) {
+            String variable = name.substring("request.var.".length());
+            return context -> context.pathVariable(variable);
+        }
+        if (name.startsWith("request.header.") && name.length() > "request.header.".length()) {
+            String header = name.substring("request.header.".length());
+            return context -> context.header(header);
+        }
+        throw error("atributo desconocido '" + name + "'");
+    }
+
+    private static Object userAttribute(ConditionContext context, Function<User, Object> getter) {
+        User user = context.user();
+        return user == null ? null : getter.apply(user);
+    }
+
+    // ==================== EVALUACIÓN ====================
+
+    private static boolean isTrue(Object value) {
+        return Boolean.TRUE.equals(value);
+    }
+
+    /**
+     * Igualdad ({@code expected} true) o desigualdad con coerción numérica: "42" (variable de ruta)
+     * es igual a 42L (user.id). Un atributo ausente no cumple ninguna de las dos.
+     */
+    private static boolean equal(Object left, Object right, boolean expected) {
+        if (left == null || right == null) {
+            return false;
+        }
+        BigDecimal l = numeric(left);
+        BigDecimal r = numeric(right);
+        if (l != null && r != null) {
+            return (l.compareTo(r) == 0) == expected;
+        }
+        return Objects.equals(left.toString(), right.toString()) == expected;
+    }
+
+    /**
+     * Orden numérico o, si algún lado no es número, lexicográfico. Con null ninguna comparación se cumple.
+     */
+    private static boolean ordered(Object left, Object right, IntPredicate test) {
+        if (left == null || right == null) {
+            return false;
+        }
+        BigDecimal l = numeric(left);
+        BigDecimal r = numeric(right);
+        if (l != null && r != null) {
+            return test.test(l.compareTo(r));
+        }
+        return test.test(left.toString().compareTo(right.toString()));
+    }
+
+    private static BigDecimal numeric(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal;
+        }
+        if (value instanceof Long || value instanceof Integer) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        if (value instanceof String text && !text.isEmpty()
+                && (Character.isDigit(text.charAt(0)) || text.charAt(0) == '-')) {
+            try {
+                return new BigDecimal(text);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    // ==================== TOKENS ====================
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'') {
+                int end = expression.indexOf('\'', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Condición inválida: cadena sin cerrar en '" + expression + "'");
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if ("=!<>&|".indexOf(c) >= 0) {
+                String two = i + 1 < expression.length() ? expression.substring(i, i + 2) : "";
+                if (List.of("==", "!=", "<=", ">=", "&&", "||").contains(two)) {
+                    tokens.add(two);
+                    i += 2;
+                } else if (c == '!' || c == '<' || c == '>') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("Condición inválida: operador '" + c + "' en '" + expression + "'");
+                }
+            } else if (Character.isLetterOrDigit(c) || c == '-' || c == '.' || c == '_') {
+                int start = i;
+                while (i < expression.length()) {
+                    char ch = expression.charAt(i);
+                    if (!(Character.isLetterOrDigit(ch) || ch == '.' || ch == '_' || (ch == '-' && i == start))) {
+                        break;
+                    }
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else {
+                throw new IllegalArgumentException("Condición inválida: carácter '" + c + "' en '" + expression + "'");
+            }
+        }
+        return tokens;
+    }
+
+    private String peek() {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw error("fin inesperado");
+        }
+        return tokens.get(position++);
+    }
+
+    private boolean accept(String token) {
+        if (token.equals(peek())) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("se esperaba '" + token + "'");
+        }
+    }
+
+    private BigDecimal number(String token) {
+        try {
+            return new BigDecimal(token);
+        } catch (NumberFormatException e) {
+            throw error("número inválido '" + token + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Condición inválida (" + message + "): " + expression);
+    }
+}
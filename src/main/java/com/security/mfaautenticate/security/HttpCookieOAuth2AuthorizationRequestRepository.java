@@ -0,0 +1,218 @@
+package com.security.mfaautenticate.security;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.security.oauth2.client.web.AuthorizationRequestRepository;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationResponseType;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Guarda el OAuth2AuthorizationRequest en una cookie cifrada (AES-GCM) en lugar de la HttpSession.
+ * GCM autentica el contenido, así que una cookie alterada o emitida con otra clave se descarta.
+ * Cualquier nodo con el mismo secreto puede completar el callback de OAuth2 sin estado en servidor.
+ * Al deserializar solo se admiten las clases de la solicitud (lista en {@link #ALLOWED_CLASSES}),
+ * por si el secreto llegara a filtrarse.
+ */
+@Component
+@Slf4j
+public class HttpCookieOAuth2AuthorizationRequestRepository
+        implements AuthorizationRequestRepository<OAuth2AuthorizationRequest> {
+
+    public static final String COOKIE_NAME = "OAUTH2_AUTH_REQUEST";
+
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+
+    /**
+     * Lo que serializa un OAuth2AuthorizationRequest: la solicitud, su tipo de concesión y de
+     * respuesta, las colecciones de java.util que envuelven scopes y parámetros, y valores simples.
+     */
+    private static final ObjectInputFilter ALLOWED_CLASSES = ObjectInputFilter.Config.createFilter(String.join(";",
+            "maxdepth=10", "maxrefs=1000", "maxarray=64", "maxbytes=16384",
+            OAuth2AuthorizationRequest.class.getName(),
+            AuthorizationGrantType.class.getName(),
+            OAuth2AuthorizationResponseType.class.getName(),
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableSet",
+            "java.util.Collections$UnmodifiableMap",
+            "java.util.HashSet",
+            "java.util.LinkedHashSet",
+            "java.util.HashMap",
+            "java.util.LinkedHashMap",
+            // HashMap valida el tamaño de su tabla como un array de Map.Entry al deserializarse
+            "java.util.Map$Entry",
+            "java.lang.String",
+            "java.lang.Boolean",
+            "java.lang.Number",
+            "java.lang.Integer",
+            "java.lang.Long",
+            "!*"));
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final boolean secureCookie;
+
+    public HttpCookieOAuth2AuthorizationRequestRepository(
+            @Value("${app.oauth2.cookie-secret:${app.jwt.secret}}") String secret,
+            @Value("${app.oauth2.authorization-request-ttl:3m}") Duration ttl,
+            @Value("${app.oauth2.secure-cookie:false}") boolean secureCookie) {
+        this.key = new SecretKeySpec(deriveKey(secret), "AES");
+        this.ttl = ttl;
+        this.secureCookie = secureCookie;
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest loadAuthorizationRequest(HttpServletRequest request) {
+        String state = request.getParameter(OAuth2ParameterNames.STATE);
+        if (state == null) {
+            return null;
+        }
+
+        OAuth2AuthorizationRequest authorizationRequest = readCookie(request);
+        if (authorizationRequest == null || !state.equals(authorizationRequest.getState())) {
+            return null;
+        }
+        return authorizationRequest;
+    }
+
+    @Override
+    public void saveAuthorizationRequest(OAuth2AuthorizationRequest authorizationRequest,
+                                         HttpServletRequest request, HttpServletResponse response) {
+        if (authorizationRequest == null) {
+            deleteCookie(response);
+            return;
+        }
+
+        String value = encrypt(authorizationRequest, System.currentTimeMillis() + ttl.toMillis());
+        response.addHeader(HttpHeaders.SET_COOKIE, buildCookie(value, ttl).toString());
+    }
+
+    @Override
+    public OAuth2AuthorizationRequest removeAuthorizationRequest(HttpServletRequest request,
+                                                                 HttpServletResponse response) {
+        OAuth2AuthorizationRequest authorizationRequest = loadAuthorizationRequest(request);
+        if (authorizationRequest != null) {
+            deleteCookie(response);
+        }
+        return authorizationRequest;
+    }
+
+    private OAuth2AuthorizationRequest readCookie(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return null;
+        }
+
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) {
+                return decrypt(cookie.getValue());
+            }
+        }
+        return null;
+    }
+
+    private void deleteCookie(HttpServletResponse response) {
+        response.addHeader(HttpHeaders.SET_COOKIE, buildCookie("", Duration.ZERO).toString());
+    }
+
+    private ResponseCookie buildCookie(String value, Duration maxAge) {
+        // Lax: el callback del proveedor es una navegación GET de nivel superior y debe llevar la cookie
+        return ResponseCookie.from(COOKIE_NAME, value)
+                .path("/")
+                .httpOnly(true)
+                .secure(secureCookie)
+                .sameSite("Lax")
+                .maxAge(maxAge)
+                .build();
+    }
+
+    private String encrypt(OAuth2AuthorizationRequest authorizationRequest, long expiresAt) {
+        try {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(1024);
+            try (DataOutputStream data = new DataOutputStream(plain)) {
+                data.writeLong(expiresAt);
+                try (ObjectOutputStream out = new ObjectOutputStream(data)) {
+                    out.writeObject(authorizationRequest);
+                }
+            }
+
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(plain.toByteArray());
+
+            byte[] payload = new byte[iv.length + encrypted.length];
+            System.arraycopy(iv, 0, payload, 0, iv.length);
+            System.arraycopy(encrypted, 0, payload, iv.length, encrypted.length);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(payload);
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo cifrar la solicitud de autorización OAuth2", e);
+        }
+    }
+
+    private OAuth2AuthorizationRequest decrypt(String value) {
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(value);
+            if (payload.length <= GCM_IV_LENGTH) {
+                return null;
+            }
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, payload, 0, GCM_IV_LENGTH));
+            byte[] plain = cipher.doFinal(payload, GCM_IV_LENGTH, payload.length - GCM_IV_LENGTH);
+
+            try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(plain))) {
+                long expiresAt = data.readLong();
+                if (System.currentTimeMillis() > expiresAt) {
+                    log.debug("Cookie de autorización OAuth2 expirada");
+                    return null;
+                }
+                try (ObjectInputStream in = new ObjectInputStream(data)) {
+                    in.setObjectInputFilter(ALLOWED_CLASSES);
+                    return (OAuth2AuthorizationRequest) in.readObject();
+                }
+            }
+        } catch (Exception e) {
+            // Cookie manipulada, cifrada con otra clave o de un formato anterior
+            log.warn("Cookie de autorización OAuth2 inválida: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] deriveKey(String secret) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update("oauth2-authorization-request:".getBytes(StandardCharsets.UTF_8));
+            return digest.digest(secret.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo derivar la clave de la cookie OAuth2", e);
+        }
+    }
+}
@@ -2,17 +2,21 @@ package com.security.mfaautenticate.security;
 
 import com.security.mfaautenticate.entity.User;
 import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.service.RbacSnapshotStore;
+import com.security.mfaautenticate.service.UserActivityTracker;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
@@ -25,8 +29,12 @@ import java.util.stream.Collectors;
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    public static final String TENANT_HEADER = "X-Tenant-ID";
+
     private final JwtTokenProvider tokenProvider;
     private final UserRepository userRepository;
+    private final UserActivityTracker userActivityTracker;
+    private final RbacSnapshotStore rbacSnapshotStore;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
@@ -34,12 +42,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         try {
             String jwt = getJwtFromRequest(request);
 
-            if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-                String email = tokenProvider.getEmailFromToken(jwt);
+            Claims claims = StringUtils.hasText(jwt) ? tokenProvider.getValidClaims(jwt) : null;
+
+            if (claims != null) {
+                // El tenant sale del token firmado y se fija antes de cargar el principal, que ya se
+                // busca solo en ese tenant. Tokens anteriores a los tenants: tenant por defecto
+                String tenant = claims.get(JwtTokenProvider.TENANT_CLAIM, String.class);
+                TenantContext.set(tenant != null ? tenant : TenantContext.DEFAULT);
+
+                String email = claims.getSubject();
 
-                User user = userRepository.findAllByEmail(email).stream()
-                        .findFirst()
-                        .orElse(null);
+                User user = loadPrincipal(email);
 
                 if (user != null) {
                     List<SimpleGrantedAuthority> authorities = user.getRoles().stream()
@@ -48,17 +61,39 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(user, null, authorities);
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                    // amr y auth_time viajan con la autenticación para el step-up de PermissionInterceptor
+                    authentication.setDetails(new TokenAuthenticationDetails(request, claims));
 
                     SecurityContextHolder.getContext().setAuthentication(authentication);
+                    userActivityTracker.recordSeen(user);
                     log.debug("Usuario autenticado: {} con roles: {}", email, authorities);
                 }
+            } else if (StringUtils.hasText(request.getHeader(TENANT_HEADER))) {
+                // Sin token (flujo MFA tras el login OAuth2) el cliente indica el tenant; no concede acceso,
+                // solo acota las búsquedas por email de /api/auth/**
+                TenantContext.set(request.getHeader(TENANT_HEADER));
             }
         } catch (Exception ex) {
             log.error("No se pudo establecer autenticación de usuario", ex);
         }
 
-        filterChain.doFilter(request, response);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            TenantContext.clear();
+        }
+    }
+
+    private User loadPrincipal(String email) {
+        try {
+            return userRepository.findWithRolesByEmail(email).stream()
+                    .findFirst()
+                    .orElse(null);
+        } catch (DataAccessException | TransactionException e) {
+            // Base de datos caída: principal del último snapshot RBAC; PermissionInterceptor solo admite lecturas
+            log.warn("No se pudo cargar el usuario {}, se usa el snapshot RBAC: {}", email, e.getMessage());
+            return rbacSnapshotStore.findUser(email).orElse(null);
+        }
     }
 
     private String getJwtFromRequest(HttpServletRequest request) {
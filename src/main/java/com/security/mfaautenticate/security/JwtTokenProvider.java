@@ -1,6 +1,7 @@
 package com.security.mfaautenticate.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,17 +10,54 @@ import org.springframework.stereotype.Component;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
 
 @Component
 public class JwtTokenProvider {
 
+    /**
+     * Métodos de autenticación (RFC 8176): "fed" para el login OAuth2, "otp" + "mfa" tras verificar el código.
+     */
+    public static final String AMR_CLAIM = "amr";
+
+    /**
+     * Momento de la última autenticación, en segundos desde epoch (OpenID Connect).
+     */
+    public static final String AUTH_TIME_CLAIM = "auth_time";
+
+    /**
+     * Tenant del usuario: fija la partición RBAC de todas sus peticiones (ver TenantContext).
+     */
+    public static final String TENANT_CLAIM = "tenant";
+
+    static final List<String> FEDERATED = List.of("fed");
+    static final List<String> MFA = List.of("fed", "otp", "mfa");
+
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
     @Value("${app.jwt.expiration}")
     private long jwtExpiration;
 
+    /**
+     * Token del login OAuth2, sin segundo factor, para el tenant de la petición en curso.
+     */
     public String generateToken(String email) {
+        return generateToken(email, TenantContext.current());
+    }
+
+    public String generateToken(String email, String tenant) {
+        return generateToken(email, tenant, FEDERATED);
+    }
+
+    /**
+     * Token emitido al verificar un código MFA; {@code auth_time} marca el momento de la verificación.
+     */
+    public String generateMfaToken(String email) {
+        return generateToken(email, TenantContext.current(), MFA);
+    }
+
+    private String generateToken(String email, String tenant, List<String> amr) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + jwtExpiration);
 
@@ -29,32 +67,40 @@ public class JwtTokenProvider {
                 .subject(email)
                 .issuedAt(now)
                 .expiration(expiryDate)
+                .claim(TENANT_CLAIM, tenant)
+                .claim(AMR_CLAIM, amr)
+                .claim(AUTH_TIME_CLAIM, now.getTime() / 1000)
                 .signWith(key)
                 .compact();
     }
 
     public String getEmailFromToken(String token) {
+        return parseClaims(token).getSubject();
+    }
+
+    public boolean validateToken(String token) {
+        return getValidClaims(token) != null;
+    }
+
+    /**
+     * Claims de un token con firma y vigencia válidas, o null si no lo es. Una sola verificación
+     * de firma por petición.
+     */
+    public Claims getValidClaims(String token) {
+        try {
+            return parseClaims(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Claims parseClaims(String token) {
         SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
 
-        Claims claims = Jwts.parser()
+        return Jwts.parser()
                 .verifyWith(key)
                 .build()
                 .parseSignedClaims(token)
                 .getPayload();
-
-        return claims.getSubject();
-    }
-
-    public boolean validateToken(String token) {
-        try {
-            SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-            Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
     }
-}
\ No newline at end of file
+}
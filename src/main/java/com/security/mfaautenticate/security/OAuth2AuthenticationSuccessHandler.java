@@ -30,10 +30,11 @@ public class OAuth2AuthenticationSuccessHandler extends SimpleUrlAuthenticationS
             // Si tiene MFA habilitado, redirigir a verificación MFA
             targetUrl = UriComponentsBuilder.fromUriString("/mfa-verification.html")
                     .queryParam("email", user.getEmail())
+                    .queryParam("tenant", user.getTenant())
                     .build().toUriString();
         } else {
             // Si no tiene MFA, generar token y redirigir al dashboard
-            String token = tokenProvider.generateToken(user.getEmail());
+            String token = tokenProvider.generateToken(user.getEmail(), user.getTenant());
             targetUrl = UriComponentsBuilder.fromUriString("/dashboard.html")
                     .queryParam("token", token)
                     .build().toUriString();
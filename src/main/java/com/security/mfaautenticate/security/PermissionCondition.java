@@ -0,0 +1,37 @@
+package com.security.mfaautenticate.security;
+
+/**
+ * Condición de un permiso ya compilada a un predicado. Compilar parsea el texto en cada llamada;
+ * quien evalúa la condición guarda el predicado (EffectivePermissions, en su snapshot).
+ * <p>
+ * Sintaxis: comparaciones {@code == != < <= > >=} entre atributos y literales (números,
+ * {@code 'texto'}, {@code true}, {@code false}, {@code null}), combinadas con {@code && || !} y
+ * paréntesis. Atributos:
+ * <ul>
+ *   <li>{@code user.id}, {@code user.email}, {@code user.mfaEnabled}, {@code user.provider}</li>
+ *   <li>{@code request.method}, {@code request.path}, {@code request.param.<nombre>},
+ *       {@code request.var.<variable de ruta>}, {@code request.header.<nombre>}</li>
+ *   <li>{@code time.hour}, {@code time.minute}, {@code time.dayOfWeek} (1 = lunes)</li>
+ * </ul>
+ * Ejemplos: {@code request.var.userId == user.id}, {@code user.mfaEnabled},
+ * {@code time.dayOfWeek <= 5 && time.hour >= 9 && time.hour < 18}.
+ */
+@FunctionalInterface
+public interface PermissionCondition {
+
+    /**
+     * Condición que nunca se cumple; se usa si una expresión guardada deja de compilar.
+     */
+    PermissionCondition DENY = context -> false;
+
+    boolean test(ConditionContext context);
+
+    /**
+     * Compila la expresión.
+     *
+     * @throws IllegalArgumentException si la expresión no es válida
+     */
+    static PermissionCondition compile(String expression) {
+        return ConditionParser.compile(expression);
+    }
+}
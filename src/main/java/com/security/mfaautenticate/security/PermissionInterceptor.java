@@ -1,15 +1,26 @@
 package com.security.mfaautenticate.security;
 
+import com.security.mfaautenticate.entity.AuditEventType;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.service.AuditLog;
 import com.security.mfaautenticate.service.RbacService;
+import com.security.mfaautenticate.service.RbacSnapshotStore;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
 
 @Component
 @RequiredArgsConstructor
@@ -17,6 +28,8 @@ import java.security.Principal;
 public class PermissionInterceptor implements HandlerInterceptor {
 
     private final RbacService rbacService;
+    private final AuditLog auditLog;
+    private final RbacSnapshotStore rbacSnapshotStore;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
@@ -36,27 +49,93 @@ public class PermissionInterceptor implements HandlerInterceptor {
         Principal principal = request.getUserPrincipal();
         if (principal == null) {
             log.warn("No authenticated user for protected resource");
+            auditLog.record(AuditEventType.AUTHZ_DENY, null, annotation.resource(), annotation.operation(),
+                    "unauthenticated");
             response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Authentication required");
             return false;
         }
 
-        String email = principal.getName();
+        // Con JWT el principal es la entidad User: getName() no devuelve el email
+        User user = principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof User authenticated ? authenticated : null;
+        String email = user != null ? user.getEmail() : principal.getName();
 
-        // Admins tienen acceso a todo
-        if (rbacService.isAdmin(email)) {
-            log.debug("Admin user {} accessing {}", email, annotation.resource());
-            return true;
+        boolean admin;
+        boolean hasPermission;
+        try {
+            // Admins tienen acceso a todo; el contexto solo se lee si el permiso tiene condición
+            admin = rbacService.isAdmin(email);
+            hasPermission = admin || rbacService.hasPermission(email, annotation.resource(), annotation.operation(),
+                    ConditionContext.of(request, user));
+        } catch (DataAccessException | TransactionException e) {
+            // Base de datos caída: solo lecturas, decididas con el último snapshot RBAC persistido
+            if (annotation.operation() != Operation.READ || !rbacSnapshotStore.covers()) {
+                log.warn("Authorization unavailable for {} on {}: {}", email, annotation.resource(), e.getMessage());
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Authorization temporarily unavailable");
+                return false;
+            }
+            admin = rbacSnapshotStore.isAdmin(email);
+            hasPermission = admin || rbacSnapshotStore.hasPermission(email, annotation.resource(),
+                    annotation.operation(), ConditionContext.of(request, user));
+            response.setHeader(RbacSnapshotStore.AGE_HEADER, String.valueOf(rbacSnapshotStore.age().toSeconds()));
+            log.warn("Degraded authorization for {} on {} from RBAC snapshot: {}", email, annotation.resource(),
+                    hasPermission);
         }
 
-        boolean hasPermission = rbacService.hasPermission(email, annotation.resource(), annotation.operation());
-
-        if (!hasPermission) {
+        if (admin) {
+            log.debug("Admin user {} accessing {}", email, annotation.resource());
+        } else if (!hasPermission) {
             log.warn("User {} lacks permission {} on {}", email, annotation.operation(), annotation.resource());
+            auditLog.record(AuditEventType.AUTHZ_DENY, email, annotation.resource(), annotation.operation(),
+                    "insufficient permissions");
             response.sendError(HttpServletResponse.SC_FORBIDDEN, "Insufficient permissions");
             return false;
         }
 
+        // El step-up se decide solo con los claims ya verificados del token, también para admins
+        if (!isStepUpSatisfied(annotation, principal)) {
+            log.info("User {} needs MFA step-up for {} on {}", email, annotation.operation(), annotation.resource());
+            auditLog.record(AuditEventType.AUTHZ_DENY, email, annotation.resource(), annotation.operation(),
+                    "mfa step-up required");
+            response.setHeader(HttpHeaders.WWW_AUTHENTICATE, stepUpChallenge(annotation));
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "MFA step-up required");
+            return false;
+        }
+
         log.debug("User {} has permission {} on {}", email, annotation.operation(), annotation.resource());
+        auditLog.record(AuditEventType.AUTHZ_ALLOW, email, annotation.resource(), annotation.operation(),
+                admin ? "admin" : null);
         return true;
     }
+
+    private static boolean isStepUpSatisfied(RequirePermission annotation, Principal principal) {
+        if (!annotation.requireMfa() && annotation.maxAuthAge() < 0) {
+            return true;
+        }
+        if (!(principal instanceof Authentication authentication
+                && authentication.getDetails() instanceof TokenAuthenticationDetails details)) {
+            return false;
+        }
+        if (annotation.requireMfa() && !details.isMfa()) {
+            return false;
+        }
+        return annotation.maxAuthAge() < 0
+                || details.isAuthenticatedWithin(Duration.ofSeconds(annotation.maxAuthAge()), Instant.now());
+    }
+
+    /**
+     * Desafío de step-up al estilo RFC 9470: el cliente vuelve a verificar MFA en
+     * {@code /api/auth/mfa/verify} y reintenta con el token nuevo.
+     */
+    private static String stepUpChallenge(RequirePermission annotation) {
+        StringBuilder challenge = new StringBuilder("Bearer error=\"insufficient_user_authentication\", "
+                + "error_description=\"A recent MFA verification is required\"");
+        if (annotation.requireMfa()) {
+            challenge.append(", amr_values=\"mfa\"");
+        }
+        if (annotation.maxAuthAge() >= 0) {
+            challenge.append(", max_age=").append(annotation.maxAuthAge());
+        }
+        return challenge.toString();
+    }
 }
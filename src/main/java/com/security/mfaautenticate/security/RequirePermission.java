@@ -12,4 +12,15 @@ import java.lang.annotation.Target;
 public @interface RequirePermission {
     String resource();
     Operation operation();
+
+    /**
+     * Exige que el token se haya emitido tras verificar un código MFA (claim {@code amr} con "mfa").
+     */
+    boolean requireMfa() default false;
+
+    /**
+     * Antigüedad máxima, en segundos, de la última autenticación (claim {@code auth_time}).
+     * Negativo: sin límite. Junto con {@link #requireMfa()} exige una verificación MFA reciente.
+     */
+    long maxAuthAge() default -1;
 }
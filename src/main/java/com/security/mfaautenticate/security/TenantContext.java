@@ -0,0 +1,85 @@
+package com.security.mfaautenticate.security;
+
+import com.security.mfaautenticate.entity.TenantScoped;
+
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Tenant de la petición en curso. JwtAuthenticationFilter lo fija a partir del claim "tenant" del
+ * token; sin token se usa {@link #DEFAULT}. Hibernate lo lee al abrir cada sesión (ver
+ * TenantIdentifierResolver), así que todas las consultas JPA quedan filtradas por él.
+ */
+public final class TenantContext {
+
+    public static final String DEFAULT = "default";
+
+    /**
+     * Sesiones sin filtro de tenant. Solo para tareas internas que recorren todos los tenants
+     * (estadísticas, limpieza del registro de cambios); nunca sale de un token.
+     */
+    public static final String ROOT = "*";
+
+    private static final Pattern VALID = Pattern.compile("[a-z0-9][a-z0-9_-]{0,63}");
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private TenantContext() {
+    }
+
+    public static String current() {
+        String tenant = CURRENT.get();
+        return tenant != null ? tenant : DEFAULT;
+    }
+
+    public static void set(String tenant) {
+        CURRENT.set(validate(tenant));
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Si la entidad pertenece al tenant en curso. Las búsquedas por id de Hibernate no aplican el
+     * filtro de tenant, así que deben pasar por aquí: {@code findById(id).filter(TenantContext::owns)}.
+     */
+    public static boolean owns(TenantScoped entity) {
+        String tenant = current();
+        return ROOT.equals(tenant) || tenant.equals(entity.getTenant());
+    }
+
+    /**
+     * Ejecuta la acción con otro tenant y restaura el anterior. Las sesiones de Hibernate ya
+     * abiertas en el hilo conservan su tenant: debe llamarse fuera de cualquier transacción.
+     */
+    public static <T> T callAs(String tenant, Supplier<T> action) {
+        String previous = CURRENT.get();
+        CURRENT.set(ROOT.equals(tenant) ? ROOT : validate(tenant));
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void runAs(String tenant, Runnable action) {
+        callAs(tenant, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @throws IllegalArgumentException si el identificador no es válido
+     */
+    public static String validate(String tenant) {
+        if (tenant == null || !VALID.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("Tenant inválido: " + tenant);
+        }
+        return tenant;
+    }
+}
@@ -0,0 +1,42 @@
+package com.security.mfaautenticate.security;
+
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Detalles de una autenticación por JWT: además de los datos de la petición conserva los
+ * claims {@code amr} y {@code auth_time} ya verificados, para exigir step-up sin consultar la base.
+ */
+@Getter
+public class TokenAuthenticationDetails extends WebAuthenticationDetails {
+
+    private final List<String> authenticationMethods;
+    private final Instant authTime;
+
+    public TokenAuthenticationDetails(HttpServletRequest request, Claims claims) {
+        super(request);
+        this.authenticationMethods = claims.get(JwtTokenProvider.AMR_CLAIM) instanceof List<?> amr
+                ? amr.stream().map(String::valueOf).toList()
+                : List.of();
+        this.authTime = claims.get(JwtTokenProvider.AUTH_TIME_CLAIM) instanceof Number seconds
+                ? Instant.ofEpochSecond(seconds.longValue())
+                : null;
+    }
+
+    public boolean isMfa() {
+        return authenticationMethods.contains("mfa");
+    }
+
+    /**
+     * Si la última autenticación ocurrió hace como mucho {@code maxAge}. Sin {@code auth_time} nunca lo es.
+     */
+    public boolean isAuthenticatedWithin(Duration maxAge, Instant now) {
+        return authTime != null && !authTime.plus(maxAge).isBefore(now);
+    }
+}
@@ -0,0 +1,175 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.AuditEventPage;
+import com.security.mfaautenticate.dto.AuditStats;
+import com.security.mfaautenticate.entity.AuditEvent;
+import com.security.mfaautenticate.entity.AuditEventType;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.repository.AuditEventRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro de auditoría asíncrono. El hilo de la petición solo publica el evento en un
+ * {@link AuditRingBuffer}; una tarea programada lo vacía cada app.audit.flush-ms y escribe los
+ * eventos en audit_events con batches JDBC. Si el buffer se llena, la política app.audit.overflow
+ * decide: DROP descarta los eventos nuevos; SAMPLE, además, a partir de 3/4 de ocupación guarda
+ * solo uno de cada app.audit.sample-rate eventos de rutina para dejar sitio a denegaciones y
+ * fallos. La petición nunca espera a la base de datos.
+ */
+@Service
+@Slf4j
+public class AuditLog {
+
+    public enum Overflow {
+        DROP,
+        SAMPLE
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_TEXT_LENGTH = 255;
+    private static final String INSERT = """
+            insert into audit_events (tenant_id, occurred_at, type, email, resource, operation, detail)
+            values (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditEventRepository auditEventRepository;
+    private final AuditRingBuffer<AuditEvent> buffer;
+    private final Overflow overflow;
+    private final int sampleRate;
+    private final int batchSize;
+    private final int highWaterMark;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder sampledOut = new LongAdder();
+
+    public AuditLog(JdbcTemplate jdbcTemplate,
+                    AuditEventRepository auditEventRepository,
+                    @Value("${app.audit.capacity:65536}") int capacity,
+                    @Value("${app.audit.overflow:DROP}") Overflow overflow,
+                    @Value("${app.audit.sample-rate:10}") int sampleRate,
+                    @Value("${app.audit.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.auditEventRepository = auditEventRepository;
+        this.buffer = new AuditRingBuffer<>(capacity);
+        this.overflow = overflow;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.batchSize = batchSize;
+        this.highWaterMark = buffer.capacity() / 4 * 3;
+    }
+
+    /**
+     * Publica un evento en el tenant de la petición en curso. No bloquea ni lanza excepciones.
+     */
+    public void record(AuditEventType type, String email, String resource, Operation operation, String detail) {
+        if (overflow == Overflow.SAMPLE && type.isRoutine() && buffer.size() >= highWaterMark
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            sampledOut.increment();
+            return;
+        }
+
+        AuditEvent event = AuditEvent.builder()
+                .tenant(TenantContext.current())
+                .occurredAt(Instant.now())
+                .type(type)
+                .email(truncate(email))
+                .resource(truncate(resource))
+                .operation(operation)
+                .detail(truncate(detail))
+                .build();
+        if (buffer.offer(event)) {
+            published.increment();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    public void record(AuditEventType type, String email, String detail) {
+        record(type, email, null, null, detail);
+    }
+
+    /**
+     * Escribe todo lo pendiente en lotes de app.audit.batch-size. Sin transacción: va al primario.
+     */
+    @Scheduled(initialDelayString = "${app.audit.flush-ms:1000}", fixedDelayString = "${app.audit.flush-ms:1000}")
+    public synchronized void flush() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private void write(List<AuditEvent> batch) {
+        List<Object[]> rows = batch.stream()
+                .map(event -> new Object[]{
+                        event.getTenant(),
+                        Timestamp.from(event.getOccurredAt()),
+                        event.getType().name(),
+                        event.getEmail(),
+                        event.getResource(),
+                        event.getOperation() != null ? event.getOperation().name() : null,
+                        event.getDetail()})
+                .toList();
+        try {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+            written.add(batch.size());
+        } catch (DataAccessException e) {
+            // Reintentar acumularía eventos sin límite si la base de datos no responde
+            dropped.add(batch.size());
+            log.error("No se pudieron escribir {} eventos de auditoría: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    /**
+     * Eventos del tenant en curso en [from, to); sin rango, las últimas 24 horas.
+     */
+    public AuditEventPage findPage(Instant from, Instant to, AuditEventType type, String email,
+                                   Long before, Integer size) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(Duration.ofDays(1));
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        List<AuditEvent> events = auditEventRepository.findPage(start, end, type, email,
+                before != null ? before : Long.MAX_VALUE, Limit.of(pageSize + 1));
+        if (events.size() <= pageSize) {
+            return new AuditEventPage(events, null);
+        }
+        List<AuditEvent> page = events.subList(0, pageSize);
+        return new AuditEventPage(page, page.get(pageSize - 1).getId());
+    }
+
+    public AuditStats stats() {
+        return new AuditStats(published.sum(), written.sum(), dropped.sum(), sampledOut.sum(),
+                buffer.size(), buffer.capacity());
+    }
+
+    private static String truncate(String value) {
+        return value == null || value.length() <= MAX_TEXT_LENGTH ? value : value.substring(0, MAX_TEXT_LENGTH);
+    }
+}
@@ -1,11 +1,15 @@
 package com.security.mfaautenticate.service;
 
+import com.security.mfaautenticate.config.TenancyProperties;
+import com.security.mfaautenticate.entity.AuditEventType;
 import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.RbacEntityType;
 import com.security.mfaautenticate.entity.Role;
 import com.security.mfaautenticate.entity.User;
 import com.security.mfaautenticate.repository.RoleRepository;
 import com.security.mfaautenticate.repository.UserRepository;
 import com.security.mfaautenticate.security.CustomOAuth2User;
+import com.security.mfaautenticate.security.TenantContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.oauth2.client.userinfo.DefaultOAuth2UserService;
@@ -25,6 +29,11 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
+    private final UserStatsService userStatsService;
+    private final RbacVersion rbacVersion;
+    private final TenancyProperties tenancyProperties;
+    private final AuditLog auditLog;
+    private final UserActivityTracker userActivityTracker;
 
     @Override
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
@@ -44,13 +53,27 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
         log.info("OAuth ID: {}", oauthId);
         log.info("Nombre: {}", name);
 
+        // El usuario vive en el tenant de su dominio de email; toda la carga o el alta ocurre ahí
+        String tenant = tenancyProperties.tenantForEmail(email);
+        User user = TenantContext.callAs(tenant, () -> {
+            User loaded = loadOrCreate(provider, email, oauthId, name);
+            auditLog.record(AuditEventType.LOGIN, email, provider.name());
+            return loaded;
+        });
+
+        userStatsService.recordLogin(user.getTenant());
+        userActivityTracker.recordLogin(user.getId());
+        return new CustomOAuth2User(oauth2User, user);
+    }
+
+    private User loadOrCreate(OAuthProvider provider, String email, String oauthId, String name) {
         // Buscar por provider + oauthId
         Optional<User> userOptional = userRepository.findByOauthProviderAndOauthId(provider, oauthId);
 
         User user;
         if (userOptional.isEmpty()) {
             // Usuario nuevo - verificar si hay otros usuarios con el mismo email
-            List<User> existingUsers = userRepository.findAllByEmail(email);
+            List<User> existingUsers = userRepository.findWithRolesByEmail(email);
 
             User.UserBuilder userBuilder = User.builder()
                     .email(email)
@@ -89,22 +112,26 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
             log.info("Usuario creado: {} con roles: {}", user.getEmail(),
                     user.getRoles().stream().map(Role::getName).toList());
 
-            // Asignar rol ADMIN al primer usuario del sistema
-            long totalUsers = userRepository.count();
-            if (totalUsers == 1) {
+            // ADMIN: el primer usuario de toda la instalación o un email configurado para el tenant.
+            // Nunca por ser el primero de un tenant: el tenant sale del dominio del email o de una
+            // cabecera, así que cualquiera podría estrenar uno y quedarse con su administración
+            if (tenancyProperties.isAdminEmail(TenantContext.current(), user.getEmail())
+                    || TenantContext.callAs(TenantContext.ROOT, userRepository::count) == 1) {
                 Role adminRole = roleRepository.findByName("ADMIN")
                         .orElseThrow(() -> new RuntimeException("Rol ADMIN no encontrado"));
                 user.getRoles().clear();
                 user.getRoles().add(adminRole);
                 user = userRepository.save(user);
-                log.info("Primer usuario registrado - Rol ADMIN asignado a: {}", user.getEmail());
+                log.info("Rol ADMIN asignado a: {} (tenant {})", user.getEmail(), TenantContext.current());
             }
+
+            userStatsService.recordUserCreated(user);
+            rbacVersion.recordChange(RbacEntityType.USER, user.getId());
         } else {
             user = userOptional.get();
             log.info("Usuario existente: {} con MFA: {}", user.getEmail(), user.isMfaEnabled());
         }
-
-        return new CustomOAuth2User(oauth2User, user);
+        return user;
     }
 
     private String extractEmail(OAuth2User oauth2User, OAuthProvider provider) {
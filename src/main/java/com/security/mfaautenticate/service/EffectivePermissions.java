@@ -0,0 +1,463 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.RoleGrantRow;
+import com.security.mfaautenticate.dto.ResourceView;
+import com.security.mfaautenticate.dto.RoleParentRow;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.RbacChange;
+import com.security.mfaautenticate.repository.RbacChangeRepository;
+import com.security.mfaautenticate.repository.ResourceRepository;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.security.ConditionContext;
+import com.security.mfaautenticate.security.PermissionCondition;
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Permisos efectivos por rol (directos más los heredados de toda la jerarquía), precalculados
+ * como bitsets sobre un índice denso de permisos. Un chequeo es una prueba de bit por rol del
+ * usuario, sin importar la profundidad de la jerarquía.
+ * El estado se compila por tenant y versión RBAC: cada tenant tiene su propio snapshot y los cambios
+ * de uno no recompilan los de otro. Ante cambios de roles (concesiones o jerarquía) solo se
+ * recalculan esos roles y sus descendientes; cambios de permisos o recursos, o un hueco en el
+ * registro de cambios, recompilan todo.
+ * Junto con los bitsets se compila un trie con las rutas de los recursos (con comodines {@code *} y
+ * {@code **}), de modo que resolver la ruta de un chequeo tampoco consulta la base de datos.
+ * Los permisos con condición guardan su predicado compilado en un arreglo indexado por bit; una
+ * concesión incondicional solo paga la lectura de una celda nula.
+ * El snapshot también puede restaurarse desde el archivo de {@link RbacSnapshotStore}: al arrancar
+ * solo se aplica el delta desde esa versión y, si la base de datos no responde al actualizar, se
+ * sigue sirviendo el último snapshot conocido.
+ */
+@Component
+@Slf4j
+public class EffectivePermissions {
+
+    private static final int MAX_INCREMENTAL_CHANGES = 1000;
+
+    private final RoleRepository roleRepository;
+    private final ResourceRepository resourceRepository;
+    private final RbacChangeRepository changeRepository;
+    private final RbacVersion rbacVersion;
+    private final TransactionTemplate primaryTransaction;
+
+    // Un snapshot independiente por tenant, cada uno con su versión
+    private final Map<String, AtomicReference<Snapshot>> snapshots = new ConcurrentHashMap<>();
+
+    public EffectivePermissions(RoleRepository roleRepository,
+                                ResourceRepository resourceRepository,
+                                RbacChangeRepository changeRepository,
+                                RbacVersion rbacVersion,
+                                PlatformTransactionManager transactionManager) {
+        this.roleRepository = roleRepository;
+        this.resourceRepository = resourceRepository;
+        this.changeRepository = changeRepository;
+        this.rbacVersion = rbacVersion;
+        // Transacción propia y no readOnly: se compila desde el primario aunque el chequeo
+        // llegue dentro de una transacción de solo lectura enrutada a una réplica
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.primaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Indica si alguno de los roles concede la operación sobre el recurso, directamente o por herencia.
+     * Un permiso con condición se evalúa sin atributos, así que solo se concede si la condición no
+     * depende de ellos.
+     */
+    public boolean isGranted(Collection<Long> roleIds, Long resourceId, Operation operation) {
+        return isGranted(roleIds, resourceId, operation, ConditionContext.NONE);
+    }
+
+    /**
+     * Como {@link #isGranted(Collection, Long, Operation)}, evaluando la condición del permiso (si la
+     * tiene) contra el contexto de la petición.
+     */
+    public boolean isGranted(Collection<Long> roleIds, Long resourceId, Operation operation, ConditionContext context) {
+        Snapshot current = current();
+
+        int bit = current.bit(resourceId, operation);
+        if (bit < 0) {
+            return false;
+        }
+
+        for (Long roleId : roleIds) {
+            BitSet effective = current.effective().get(roleId);
+            if (effective != null && effective.get(bit)) {
+                PermissionCondition condition = current.conditions()[bit];
+                return condition == null || condition.test(context);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Roles que conceden la operación sobre el recurso, directamente o por herencia, ordenados por id.
+     */
+    public List<Long> rolesGranting(Long resourceId, Operation operation) {
+        Snapshot current = current();
+
+        int bit = current.bit(resourceId, operation);
+        if (bit < 0) {
+            return List.of();
+        }
+
+        List<Long> roles = new ArrayList<>();
+        current.effective().forEach((roleId, effective) -> {
+            if (effective.get(bit)) {
+                roles.add(roleId);
+            }
+        });
+        roles.sort(null);
+        return roles;
+    }
+
+    /**
+     * Id del recurso cuyo patrón de ruta coincide de forma más específica, o {@code null} si la ruta
+     * no corresponde a ningún recurso registrado.
+     */
+    public Long resolveResource(String path) {
+        return current().paths().match(path);
+    }
+
+    private Snapshot current() {
+        String tenant = TenantContext.current();
+        AtomicReference<Snapshot> holder = snapshots.get(tenant);
+        if (holder == null) {
+            holder = snapshots.computeIfAbsent(tenant, t -> new AtomicReference<>(Snapshot.EMPTY));
+        }
+        Snapshot current = holder.get();
+        return current.version() == rbacVersion.current(tenant) ? current : refresh(tenant, holder);
+    }
+
+    private Snapshot refresh(String tenant, AtomicReference<Snapshot> holder) {
+        // Se bloquea solo el tenant que se recompila: los chequeos de los demás siguen
+        synchronized (holder) {
+            Snapshot current = holder.get();
+            // La versión se lee antes que los datos, igual que en RbacCatalogService
+            long version = rbacVersion.current(tenant);
+            if (current.version() == version) {
+                return current;
+            }
+
+            Snapshot next;
+            try {
+                // Una versión menor que la del snapshot (archivo restaurado de otra base) no admite delta
+                next = primaryTransaction.execute(status -> current == Snapshot.EMPTY || version < current.version()
+                        ? compile(current, version)
+                        : update(current, version));
+            } catch (DataAccessException | TransactionException e) {
+                if (current == Snapshot.EMPTY) {
+                    throw e;
+                }
+                // Sin base de datos se sigue con el último snapshot; se reintenta en el próximo chequeo
+                log.warn("No se pudo actualizar el RBAC del tenant {} a la versión {}, se sirve la {}: {}",
+                        tenant, version, current.version(), e.getMessage());
+                return current;
+            }
+            holder.set(next);
+            return next;
+        }
+    }
+
+    /**
+     * Instala un snapshot leído del archivo persistido si el tenant aún no tiene uno compilado.
+     */
+    void restore(String tenant, Snapshot snapshot) {
+        snapshots.computeIfAbsent(tenant, t -> new AtomicReference<>(Snapshot.EMPTY))
+                .compareAndSet(Snapshot.EMPTY, snapshot);
+    }
+
+    /**
+     * Tenants con un snapshot compilado o restaurado.
+     */
+    Set<String> tenants() {
+        Set<String> tenants = new TreeSet<>();
+        snapshots.forEach((tenant, holder) -> {
+            if (holder.get() != Snapshot.EMPTY) {
+                tenants.add(tenant);
+            }
+        });
+        return tenants;
+    }
+
+    /**
+     * Compila el modelo completo. Las condiciones cuyo texto ya estaba en {@code previous} reutilizan
+     * su predicado en lugar de volver a parsearse.
+     */
+    private Snapshot compile(Snapshot previous, long version) {
+        Map<Long, Set<Long>> parents = new HashMap<>();
+        for (RoleParentRow row : roleRepository.findAllParentRows()) {
+            parents.computeIfAbsent(row.roleId(), id -> new HashSet<>()).add(row.parentId());
+        }
+
+        Map<Long, int[]> bits = new HashMap<>();
+        Map<Long, Integer> permissionBits = new HashMap<>();
+        Map<Long, BitSet> direct = new HashMap<>();
+        Map<Integer, String> conditions = new HashMap<>();
+        int nextBit = collectGrants(roleRepository.findAllGrantRows(), bits, permissionBits, conditions, 0, direct);
+
+        Map<Long, BitSet> effective = new HashMap<>();
+        Set<Long> roles = new HashSet<>(direct.keySet());
+        roles.addAll(parents.keySet());
+        resolveAll(roles, parents, direct, effective);
+
+        PathTrie.Builder<Long> paths = PathTrie.builder();
+        Map<String, Long> patterns = new LinkedHashMap<>();
+        for (ResourceView resource : resourceRepository.findAllViews()) {
+            // Ante rutas repetidas gana el recurso más antiguo
+            if (paths.add(resource.path(), resource.id())) {
+                patterns.put(resource.path(), resource.id());
+            } else {
+                log.warn("Ruta de recurso inválida o repetida, se ignora: {} -> {}", resource.name(), resource.path());
+            }
+        }
+
+        log.debug("Permisos efectivos compilados para la versión RBAC {}: {} roles, {} permisos",
+                version, effective.size(), nextBit);
+        String[] expressions = expressionsByBit(new String[0], conditions, nextBit);
+        return new Snapshot(version, parents, bits, permissionBits, nextBit, direct, effective, expressions,
+                conditionsByBit(new PermissionCondition[0], expressions, conditions.keySet(),
+                        previous.conditionsByExpression()),
+                patterns, paths.build());
+    }
+
+    private Snapshot update(Snapshot current, long version) {
+        if (current.version() < changeRepository.findOldestVersion() - 1) {
+            return compile(current, version);
+        }
+
+        List<RbacChange> changes = changeRepository.findByVersionGreaterThanOrderByVersionAsc(
+                current.version(), Limit.of(MAX_INCREMENTAL_CHANGES + 1));
+        if (changes.size() > MAX_INCREMENTAL_CHANGES) {
+            return compile(current, version);
+        }
+
+        Set<Long> changedRoles = new HashSet<>();
+        for (RbacChange change : changes) {
+            switch (change.getEntityType()) {
+                case ROLE -> changedRoles.add(change.getEntityId());
+                // Un permiso o recurso borrado invalida bits de cualquier rol; un recurso también cambia el trie
+                case PERMISSION, RESOURCE -> {
+                    return compile(current, version);
+                }
+                case USER -> {
+                    // Las asignaciones de usuarios se consultan en cada chequeo
+                }
+            }
+        }
+        if (changedRoles.isEmpty()) {
+            return current.withVersion(version);
+        }
+
+        // Solo se leen las aristas y concesiones de los roles modificados
+        Map<Long, Set<Long>> parents = new HashMap<>(current.parents());
+        changedRoles.forEach(parents::remove);
+        for (RoleParentRow row : roleRepository.findParentRowsByRoleIdIn(changedRoles)) {
+            parents.computeIfAbsent(row.roleId(), id -> new HashSet<>()).add(row.parentId());
+        }
+
+        Map<Long, int[]> bits = new HashMap<>(current.bits());
+        Map<Long, Integer> permissionBits = new HashMap<>(current.permissionBits());
+        Map<Long, BitSet> direct = new HashMap<>(current.direct());
+        changedRoles.forEach(direct::remove);
+        // Las condiciones de bits ya asignados no cambian sin un cambio de permiso (recompilación)
+        Map<Integer, String> conditions = new HashMap<>();
+        int nextBit = collectGrants(roleRepository.findGrantRowsByRoleIdIn(changedRoles), bits, permissionBits,
+                conditions, current.nextBit(), direct);
+
+        // Descendientes según la jerarquía anterior y la nueva: una arista quitada también los afecta
+        Set<Long> affected = RoleGraph.withDescendants(RoleGraph.children(current.parents()), changedRoles);
+        affected.addAll(RoleGraph.withDescendants(RoleGraph.children(parents), changedRoles));
+
+        Map<Long, BitSet> effective = new HashMap<>(current.effective());
+        affected.forEach(effective::remove);
+        resolveAll(affected, parents, direct, effective);
+
+        log.debug("Permisos efectivos {} -> {}: {} roles recalculados", current.version(), version, affected.size());
+        String[] expressions = expressionsByBit(current.expressions(), conditions, nextBit);
+        return new Snapshot(version, parents, bits, permissionBits, nextBit, direct, effective, expressions,
+                conditionsByBit(current.conditions(), expressions, conditions.keySet(),
+                        current.conditionsByExpression()),
+                current.patterns(), current.paths());
+    }
+
+    /**
+     * Agrega las concesiones a {@code direct}, asignando bits nuevos a los permisos no vistos.
+     * Devuelve el siguiente bit libre. Los arreglos de {@code bits} se copian antes de modificarse.
+     */
+    private static int collectGrants(List<RoleGrantRow> grants, Map<Long, int[]> bits,
+                                     Map<Long, Integer> permissionBits, Map<Integer, String> conditions,
+                                     int nextBit, Map<Long, BitSet> direct) {
+        for (RoleGrantRow grant : grants) {
+            int[] byOperation = bits.get(grant.resourceId());
+            int bit = byOperation == null ? -1 : byOperation[grant.operation().ordinal()];
+            if (bit < 0) {
+                byOperation = byOperation == null ? emptyOperations() : byOperation.clone();
+                bit = nextBit++;
+                byOperation[grant.operation().ordinal()] = bit;
+                bits.put(grant.resourceId(), byOperation);
+            }
+            permissionBits.put(grant.permissionId(), bit);
+            if (grant.condition() != null) {
+                conditions.put(bit, grant.condition());
+            }
+
+            // Los BitSet publicados no se modifican: cada rol cambiado arranca con uno nuevo
+            direct.computeIfAbsent(grant.roleId(), id -> new BitSet()).set(bit);
+        }
+        return nextBit;
+    }
+
+    private static PermissionCondition compileCondition(String expression) {
+        try {
+            return PermissionCondition.compile(expression);
+        } catch (IllegalArgumentException e) {
+            // Se valida al guardar; si aun así no compila, el permiso no se concede
+            log.warn("Condición inválida en un permiso, se deniega: {}", e.getMessage());
+            return PermissionCondition.DENY;
+        }
+    }
+
+    private static String[] expressionsByBit(String[] previous, Map<Integer, String> added, int nextBit) {
+        String[] expressions = Arrays.copyOf(previous, nextBit);
+        added.forEach((bit, expression) -> expressions[bit] = expression);
+        return expressions;
+    }
+
+    /**
+     * Copia los predicados ya compilados y compila solo los bits indicados; un texto presente en
+     * {@code compiled} (que se completa con los nuevos) no se vuelve a parsear.
+     */
+    private static PermissionCondition[] conditionsByBit(PermissionCondition[] previous, String[] expressions,
+                                                         Collection<Integer> compileBits,
+                                                         Map<String, PermissionCondition> compiled) {
+        PermissionCondition[] conditions = Arrays.copyOf(previous, expressions.length);
+        for (Integer bit : compileBits) {
+            conditions[bit] = compiled.computeIfAbsent(expressions[bit], EffectivePermissions::compileCondition);
+        }
+        return conditions;
+    }
+
+    static void resolveAll(Collection<Long> roles, Map<Long, Set<Long>> parents,
+                                   Map<Long, BitSet> direct, Map<Long, BitSet> effective) {
+        for (Long role : roles) {
+            resolve(role, parents, direct, effective, new HashSet<>());
+        }
+    }
+
+    private static BitSet resolve(Long role, Map<Long, Set<Long>> parents, Map<Long, BitSet> direct,
+                                  Map<Long, BitSet> effective, Set<Long> path) {
+        BitSet known = effective.get(role);
+        if (known != null) {
+            return known;
+        }
+
+        BitSet bits = new BitSet();
+        BitSet own = direct.get(role);
+        if (own != null) {
+            bits.or(own);
+        }
+
+        // Los ciclos se rechazan al escribir; esto solo evita recursión infinita ante una carrera
+        if (!path.add(role)) {
+            log.warn("Ciclo en la jerarquía de roles en el rol {}", role);
+            return bits;
+        }
+        for (Long parent : parents.getOrDefault(role, Set.of())) {
+            bits.or(resolve(parent, parents, direct, effective, path));
+        }
+        path.remove(role);
+
+        effective.put(role, bits);
+        return bits;
+    }
+
+    private static int[] emptyOperations() {
+        int[] byOperation = new int[Operation.values().length];
+        Arrays.fill(byOperation, -1);
+        return byOperation;
+    }
+
+    /**
+     * Estado compilado vigente, para análisis que trabajan sobre el modelo en memoria (RbacImpactService).
+     * No debe modificarse.
+     */
+    Snapshot snapshot() {
+        return current();
+    }
+
+    /**
+     * Estado inmutable compilado para una versión RBAC. {@code bits} va de recurso a bit por
+     * operación, {@code permissionBits} de id de permiso concedido a su bit, {@code expressions} y
+     * {@code conditions} de bit a texto y predicado de la condición (null si el permiso es
+     * incondicional), y {@code patterns} de patrón de ruta a recurso, con el que se armó {@code paths}.
+     */
+    record Snapshot(long version,
+                    Map<Long, Set<Long>> parents,
+                    Map<Long, int[]> bits,
+                    Map<Long, Integer> permissionBits,
+                    int nextBit,
+                    Map<Long, BitSet> direct,
+                    Map<Long, BitSet> effective,
+                    String[] expressions,
+                    PermissionCondition[] conditions,
+                    Map<String, Long> patterns,
+                    PathTrie<Long> paths) {
+
+        static final Snapshot EMPTY = new Snapshot(-1, Map.of(), Map.of(), Map.of(), 0, Map.of(), Map.of(),
+                new String[0], new PermissionCondition[0], Map.of(), PathTrie.empty());
+
+        /**
+         * Reconstruye un snapshot leído del archivo: compila las condiciones y arma el trie de rutas.
+         */
+        static Snapshot restored(long version, Map<Long, Set<Long>> parents, Map<Long, int[]> bits,
+                                 Map<Long, Integer> permissionBits, int nextBit, Map<Long, BitSet> direct,
+                                 Map<Long, BitSet> effective, String[] expressions, Map<String, Long> patterns) {
+            List<Integer> conditional = new ArrayList<>();
+            for (int bit = 0; bit < expressions.length; bit++) {
+                if (expressions[bit] != null) {
+                    conditional.add(bit);
+                }
+            }
+            PathTrie.Builder<Long> paths = PathTrie.builder();
+            patterns.forEach(paths::add);
+            return new Snapshot(version, parents, bits, permissionBits, nextBit, direct, effective, expressions,
+                    conditionsByBit(new PermissionCondition[0], expressions, conditional, new HashMap<>()),
+                    patterns, paths.build());
+        }
+
+        int bit(Long resourceId, Operation operation) {
+            int[] byOperation = bits.get(resourceId);
+            return byOperation == null ? -1 : byOperation[operation.ordinal()];
+        }
+
+        /**
+         * Predicados compilados por texto de condición, para reutilizarlos al compilar el siguiente snapshot.
+         */
+        Map<String, PermissionCondition> conditionsByExpression() {
+            Map<String, PermissionCondition> compiled = new HashMap<>();
+            for (int bit = 0; bit < expressions.length; bit++) {
+                if (expressions[bit] != null && conditions[bit] != null) {
+                    compiled.put(expressions[bit], conditions[bit]);
+                }
+            }
+            return compiled;
+        }
+
+        Snapshot withVersion(long version) {
+            return new Snapshot(version, parents, bits, permissionBits, nextBit, direct, effective, expressions,
+                    conditions, patterns, paths);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.MfaStateRow;
+import com.security.mfaautenticate.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Estado MFA compartido por todas las cuentas con el mismo email.
+ * Cada operación es una lectura de proyección y/o un único UPDATE masivo por email,
+ * así que el costo no depende de cuántas cuentas compartan la dirección.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MfaStateService {
+
+    private final UserRepository userRepository;
+    private final MfaService mfaService;
+    private final UserStatsService userStatsService;
+
+    /**
+     * Genera un secreto nuevo y lo guarda en todas las cuentas con un solo UPDATE.
+     */
+    @Transactional
+    public String setup(String email) {
+        String secret = mfaService.generateSecretKey();
+        if (userRepository.updateMfaSecretByEmail(email, secret) == 0) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
+        return secret;
+    }
+
+    /**
+     * Verifica el código contra el secreto guardado y activa MFA en todas las cuentas.
+     * Devuelve el email tal como está registrado.
+     */
+    @Transactional
+    public String enable(String email, String code) {
+        List<MfaStateRow> accounts = state(email);
+
+        MfaStateRow first = accounts.get(0);
+        if (first.mfaSecret() == null) {
+            throw new RuntimeException("MFA no configurado");
+        }
+
+        if (!mfaService.verifyCode(first.mfaSecret(), code)) {
+            log.warn("Código MFA inválido para: {}", email);
+            userStatsService.recordMfaFailure();
+            throw new RuntimeException("Código inválido");
+        }
+
+        userRepository.enableMfaByEmail(email);
+        accounts.stream()
+            .filter(account -> !account.mfaEnabled())
+            .forEach(account -> userStatsService.recordMfaChanged(account.provider(), true));
+        return first.email();
+    }
+
+    @Transactional
+    public void disable(String email) {
+        List<MfaStateRow> accounts = state(email);
+
+        userRepository.disableMfaByEmail(email);
+        accounts.stream()
+            .filter(MfaStateRow::mfaEnabled)
+            .forEach(account -> userStatsService.recordMfaChanged(account.provider(), false));
+    }
+
+    /**
+     * Cuentas con el email, en orden de alta; la primera representa el estado compartido.
+     */
+    @Transactional
+    public List<MfaStateRow> state(String email) {
+        List<MfaStateRow> accounts = userRepository.findMfaStateByEmail(email);
+        if (accounts.isEmpty()) {
+            throw new RuntimeException("Usuario no encontrado");
+        }
+        return accounts;
+    }
+}
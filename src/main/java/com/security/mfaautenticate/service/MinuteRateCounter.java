@@ -0,0 +1,67 @@
+package com.security.mfaautenticate.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contador de eventos por minuto sobre una ventana circular, sin locks.
+ * Cada celda empaqueta (minuto epoch << 32 | cantidad) en un solo long, así que
+ * rotar la celda a un minuto nuevo e incrementar es un único compareAndSet.
+ */
+public class MinuteRateCounter {
+
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    private final AtomicLongArray buckets;
+    private final int windowMinutes;
+
+    public MinuteRateCounter(int windowMinutes) {
+        this.windowMinutes = windowMinutes;
+        this.buckets = new AtomicLongArray(windowMinutes);
+    }
+
+    public void increment() {
+        increment(currentMinute());
+    }
+
+    void increment(long minute) {
+        int index = (int) (minute % windowMinutes);
+        while (true) {
+            long current = buckets.get(index);
+            long next = (current >>> 32) == minute
+                    ? current + 1
+                    : (minute << 32) | 1;
+            if (buckets.compareAndSet(index, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Eventos de los últimos {@code minutes} minutos, del más antiguo al actual.
+     */
+    public long[] lastMinutes(int minutes) {
+        return lastMinutes(currentMinute(), Math.min(minutes, windowMinutes));
+    }
+
+    long[] lastMinutes(long now, int minutes) {
+        long[] series = new long[minutes];
+        for (int i = 0; i < minutes; i++) {
+            long minute = now - (minutes - 1 - i);
+            long value = buckets.get((int) (minute % windowMinutes));
+            series[i] = (value >>> 32) == minute ? value & COUNT_MASK : 0;
+        }
+        return series;
+    }
+
+    public long sumLastMinutes(int minutes) {
+        long total = 0;
+        for (long count : lastMinutes(minutes)) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000L;
+    }
+}
@@ -0,0 +1,159 @@
+package com.security.mfaautenticate.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie inmutable de rutas jerárquicas de recursos ("documents/drafts/2024"), por segmentos separados
+ * por '/'. Un segmento {@code *} coincide con exactamente un segmento y {@code **}, solo al final,
+ * con cero o más segmentos.
+ * La búsqueda devuelve la coincidencia más específica: segmento literal antes que {@code *}, y
+ * {@code *} antes que {@code **}; entre comodines {@code **} gana el más profundo. El costo es
+ * proporcional al número de segmentos de la ruta; solo hay retroceso cuando un literal y un
+ * {@code *} del mismo nivel llevan a ramas distintas.
+ */
+final class PathTrie<V> {
+
+    static final String ANY_SEGMENT = "*";
+    static final String ANY_SUFFIX = "**";
+
+    private static final PathTrie<?> EMPTY = new PathTrie<>(new Node<>());
+
+    private final Node<V> root;
+
+    private PathTrie(Node<V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PathTrie<V> empty() {
+        return (PathTrie<V>) EMPTY;
+    }
+
+    static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Valor del patrón más específico que coincide con la ruta, o {@code null} si ninguno coincide.
+     */
+    V match(String path) {
+        String[] segments = split(path);
+        if (segments == null) {
+            return null;
+        }
+        return match(root, segments, 0);
+    }
+
+    private static <V> V match(Node<V> node, String[] segments, int index) {
+        if (index == segments.length) {
+            if (node.value != null) {
+                return node.value;
+            }
+            // "documents/**" también cubre "documents"
+            return node.suffix;
+        }
+
+        Node<V> literal = node.children.get(segments[index]);
+        if (literal != null) {
+            V value = match(literal, segments, index + 1);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (node.anySegment != null) {
+            V value = match(node.anySegment, segments, index + 1);
+            if (value != null) {
+                return value;
+            }
+        }
+        return node.suffix;
+    }
+
+    /**
+     * Rechaza rutas vacías, segmentos vacíos y {@code **} en una posición que no sea la última.
+     */
+    static void validate(String path) {
+        String[] segments = split(path);
+        if (segments == null) {
+            throw new IllegalArgumentException("Ruta de recurso inválida: '" + path + "'");
+        }
+        for (int i = 0; i < segments.length - 1; i++) {
+            if (ANY_SUFFIX.equals(segments[i])) {
+                throw new IllegalArgumentException("'**' solo puede ser el último segmento: " + path);
+            }
+        }
+    }
+
+    /**
+     * Segmentos de la ruta, ignorando '/' inicial y final; {@code null} si la ruta está vacía
+     * o tiene segmentos vacíos.
+     */
+    private static String[] split(String path) {
+        if (path == null) {
+            return null;
+        }
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.endsWith("/") && path.length() > start ? path.length() - 1 : path.length();
+        if (start >= end) {
+            return null;
+        }
+        String[] segments = path.substring(start, end).split("/", -1);
+        for (String segment : segments) {
+            if (segment.isEmpty()) {
+                return null;
+            }
+        }
+        return segments;
+    }
+
+    private static final class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>();
+        Node<V> anySegment;
+        V value;
+        V suffix;
+    }
+
+    static final class Builder<V> {
+
+        private final Node<V> root = new Node<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Agrega un patrón. Devuelve {@code false} si la ruta no es válida o el patrón ya estaba
+         * registrado; en ese caso se conserva el primer valor.
+         */
+        boolean add(String path, V value) {
+            String[] segments = split(path);
+            if (segments == null) {
+                return false;
+            }
+
+            Node<V> node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (ANY_SUFFIX.equals(segment)) {
+                    if (i != segments.length - 1 || node.suffix != null) {
+                        return false;
+                    }
+                    node.suffix = value;
+                    return true;
+                }
+                node = ANY_SEGMENT.equals(segment)
+                        ? (node.anySegment != null ? node.anySegment : (node.anySegment = new Node<>()))
+                        : node.children.computeIfAbsent(segment, s -> new Node<>());
+            }
+            if (node.value != null) {
+                return false;
+            }
+            node.value = value;
+            return true;
+        }
+
+        PathTrie<V> build() {
+            return new PathTrie<>(root);
+        }
+    }
+}
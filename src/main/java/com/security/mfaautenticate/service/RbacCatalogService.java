@@ -0,0 +1,174 @@
+package com.security.mfaautenticate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.security.mfaautenticate.dto.*;
+import com.security.mfaautenticate.entity.RbacChange;
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.repository.*;
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Catálogos RBAC (roles, recursos, permisos) pre-serializados a JSON.
+ * Cada catálogo se renderiza una vez por tenant y versión RBAC y las lecturas siguientes
+ * devuelven los mismos bytes sin consultar la base de datos ni serializar.
+ * Se lee del primario (transacciones no readOnly): lo renderizado queda cacheado con
+ * la versión actual y no puede venir de una réplica atrasada.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RbacCatalogService {
+
+    public enum Catalog {
+        ROLES,
+        RESOURCES,
+        PERMISSIONS
+    }
+
+    public record RenderedCatalog(long version, byte[] json) {
+    }
+
+    private static final int MAX_DELTA_CHANGES = 1000;
+
+    private final RoleRepository roleRepository;
+    private final ResourceRepository resourceRepository;
+    private final PermissionRepository permissionRepository;
+    private final RbacChangeRepository changeRepository;
+    private final UserRepository userRepository;
+    private final RbacVersion rbacVersion;
+    private final ObjectMapper objectMapper;
+
+    // Por tenant: un cambio en un tenant no vuelve a renderizar los catálogos de los demás
+    private final Map<CatalogKey, RenderedCatalog> cache = new ConcurrentHashMap<>();
+
+    @Transactional
+    public RenderedCatalog get(Catalog catalog) {
+        // La versión se lee antes de consultar: si hay una escritura concurrente,
+        // el resultado queda etiquetado con la versión vieja y se vuelve a renderizar
+        CatalogKey key = new CatalogKey(TenantContext.current(), catalog);
+        long version = rbacVersion.current(key.tenant());
+
+        RenderedCatalog cached = cache.get(key);
+        if (cached != null && cached.version() == version) {
+            return cached;
+        }
+
+        RenderedCatalog rendered = new RenderedCatalog(version, render(catalog));
+        cache.merge(key, rendered, (old, fresh) -> old.version() >= fresh.version() ? old : fresh);
+        log.debug("Catálogo {} del tenant {} renderizado para la versión RBAC {}", catalog, key.tenant(), version);
+        return rendered;
+    }
+
+    private byte[] render(Catalog catalog) {
+        Object body = switch (catalog) {
+            case ROLES -> loadRoles();
+            case RESOURCES -> resourceRepository.findAllViews();
+            case PERMISSIONS -> permissionRepository.findAllViews();
+        };
+
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el catálogo " + catalog, e);
+        }
+    }
+
+    /**
+     * Entidades modificadas desde {@code since}: las que siguen existiendo se devuelven
+     * con su vista actual y las que no, como ids borrados.
+     */
+    @Transactional
+    public RbacDelta changesSince(long since) {
+        long version = rbacVersion.current();
+        if (since >= version) {
+            return RbacDelta.empty(version);
+        }
+        if (since < changeRepository.findOldestVersion() - 1) {
+            return RbacDelta.full(version);
+        }
+
+        List<RbacChange> changes = changeRepository.findByVersionGreaterThanOrderByVersionAsc(since, Limit.of(MAX_DELTA_CHANGES + 1));
+        if (changes.size() > MAX_DELTA_CHANGES) {
+            return RbacDelta.full(version);
+        }
+
+        Map<RbacEntityType, Set<Long>> changed = new EnumMap<>(RbacEntityType.class);
+        long latest = since;
+        for (RbacChange change : changes) {
+            changed.computeIfAbsent(change.getEntityType(), type -> new TreeSet<>()).add(change.getEntityId());
+            latest = Math.max(latest, change.getVersion());
+        }
+
+        Set<Long> roleIds = changed.getOrDefault(RbacEntityType.ROLE, Set.of());
+        Set<Long> resourceIds = changed.getOrDefault(RbacEntityType.RESOURCE, Set.of());
+        Set<Long> permissionIds = changed.getOrDefault(RbacEntityType.PERMISSION, Set.of());
+        Set<Long> userIds = changed.getOrDefault(RbacEntityType.USER, Set.of());
+
+        return new RbacDelta(
+                latest,
+                false,
+                delta(roleIds, ids -> assembleRoles(roleRepository.findViewsByIdIn(ids),
+                        roleRepository.findParentRowsByRoleIdIn(ids),
+                        roleRepository.findGrantRowsByRoleIdIn(ids)), RoleView::id),
+                delta(resourceIds, resourceRepository::findViewsByIdIn, ResourceView::id),
+                delta(permissionIds, permissionRepository::findViewsByIdIn, PermissionView::id),
+                delta(userIds, ids -> userRepository.findWithRolesByIdInOrderByIdAsc(ids).stream()
+                        .map(RbacUserView::of)
+                        .toList(), RbacUserView::id));
+    }
+
+    private <T> RbacDelta.EntityDelta<T> delta(Set<Long> ids, Function<Set<Long>, List<T>> loader,
+                                               Function<T, Long> idOf) {
+        if (ids.isEmpty()) {
+            return RbacDelta.EntityDelta.empty();
+        }
+
+        List<T> upserted = loader.apply(ids);
+        Set<Long> deleted = new TreeSet<>(ids);
+        upserted.forEach(view -> deleted.remove(idOf.apply(view)));
+        return new RbacDelta.EntityDelta<>(upserted, List.copyOf(deleted));
+    }
+
+    private List<RoleView> loadRoles() {
+        return assembleRoles(roleRepository.findAllViews(), roleRepository.findAllParentRows(),
+                roleRepository.findAllGrantRows());
+    }
+
+    private List<RoleView> assembleRoles(List<RoleView> roles, List<RoleParentRow> parents, List<RoleGrantRow> grants) {
+        Map<Long, RoleView> byId = roles.stream()
+                .collect(Collectors.toMap(RoleView::id, Function.identity()));
+
+        for (RoleParentRow row : parents) {
+            RoleView role = byId.get(row.roleId());
+            if (role != null) {
+                role.parents().add(row.parentId());
+            }
+        }
+
+        for (RoleGrantRow row : grants) {
+            RoleView role = byId.get(row.roleId());
+            if (role != null) {
+                role.permissions().add(new RoleView.Grant(row.permissionId(), row.resourceId(), row.operation()));
+            }
+        }
+        return roles;
+    }
+
+    private record CatalogKey(String tenant, Catalog catalog) {
+    }
+}
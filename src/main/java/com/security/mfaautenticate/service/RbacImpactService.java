@@ -0,0 +1,198 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.RbacImpact;
+import com.security.mfaautenticate.dto.RbacImpactRequest;
+import com.security.mfaautenticate.entity.Operation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Análisis "qué pasaría si" de un cambio RBAC antes de aplicarlo. Trabaja sobre los snapshots
+ * inmutables de {@link EffectivePermissions} y {@link SubjectIndex}: copia solo los roles tocados,
+ * recalcula sus permisos efectivos y los de sus descendientes, y obtiene los usuarios que ganan o
+ * pierden cada permiso con operaciones de bitsets. No toma locks ni abre transacciones.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RbacImpactService {
+
+    public static final int DEFAULT_USER_LIMIT = 100;
+
+    private final EffectivePermissions effectivePermissions;
+    private final SubjectIndex subjectIndex;
+
+    public RbacImpact simulate(RbacImpactRequest request, Integer limit) {
+        if (request.getChange() == null) {
+            throw new IllegalArgumentException("change es obligatorio");
+        }
+        int userLimit = limit == null ? DEFAULT_USER_LIMIT
+                : Math.max(0, Math.min(limit, UserListingService.MAX_PAGE_SIZE));
+
+        EffectivePermissions.Snapshot model = effectivePermissions.snapshot();
+        Map<Long, BitSet> members = subjectIndex.members();
+
+        // Copias superficiales: solo se reemplazan las entradas de los roles modificados
+        Map<Long, Set<Long>> parents = new HashMap<>(model.parents());
+        Map<Long, BitSet> direct = new HashMap<>(model.direct());
+        Set<Long> changed = new HashSet<>();
+        Set<Long> deleted = new HashSet<>();
+
+        switch (request.getChange()) {
+            case REMOVE_PERMISSION_FROM_ROLE -> {
+                Long roleId = required(request.getRoleId(), "roleId");
+                Integer bit = model.permissionBits().get(required(request.getPermissionId(), "permissionId"));
+                BitSet own = direct.get(roleId);
+                if (bit != null && own != null && own.get(bit)) {
+                    direct.put(roleId, without(own, bit));
+                    changed.add(roleId);
+                }
+            }
+            case DELETE_PERMISSION -> {
+                Integer bit = model.permissionBits().get(required(request.getPermissionId(), "permissionId"));
+                if (bit != null) {
+                    model.direct().forEach((roleId, own) -> {
+                        if (own.get(bit)) {
+                            direct.put(roleId, without(own, bit));
+                            changed.add(roleId);
+                        }
+                    });
+                }
+            }
+            case DELETE_ROLE -> {
+                Long roleId = required(request.getRoleId(), "roleId");
+                direct.remove(roleId);
+                parents.remove(roleId);
+                model.parents().forEach((child, childParents) -> {
+                    if (childParents.contains(roleId)) {
+                        Set<Long> remaining = new HashSet<>(childParents);
+                        remaining.remove(roleId);
+                        parents.put(child, remaining);
+                    }
+                });
+                changed.add(roleId);
+                deleted.add(roleId);
+            }
+            case ADD_PARENT -> {
+                Long roleId = required(request.getRoleId(), "roleId");
+                Long parentId = required(request.getParentId(), "parentId");
+                if (RoleGraph.reaches(parents, parentId, roleId)) {
+                    throw new IllegalArgumentException("Role hierarchy cycle: " + parentId + " already inherits from " + roleId);
+                }
+                Set<Long> roleParents = new HashSet<>(parents.getOrDefault(roleId, Set.of()));
+                if (roleParents.add(parentId)) {
+                    parents.put(roleId, roleParents);
+                    changed.add(roleId);
+                }
+            }
+            case REMOVE_PARENT -> {
+                Long roleId = required(request.getRoleId(), "roleId");
+                Long parentId = required(request.getParentId(), "parentId");
+                Set<Long> roleParents = new HashSet<>(parents.getOrDefault(roleId, Set.of()));
+                if (roleParents.remove(parentId)) {
+                    parents.put(roleId, roleParents);
+                    changed.add(roleId);
+                }
+            }
+        }
+
+        // Igual que en EffectivePermissions.update: descendientes según la jerarquía anterior y la nueva
+        Set<Long> affected = RoleGraph.withDescendants(RoleGraph.children(model.parents()), changed);
+        affected.addAll(RoleGraph.withDescendants(RoleGraph.children(parents), changed));
+
+        Map<Long, BitSet> effective = new HashMap<>(model.effective());
+        affected.forEach(effective::remove);
+        Set<Long> resolvable = new HashSet<>(affected);
+        resolvable.removeAll(deleted);
+        EffectivePermissions.resolveAll(resolvable, parents, direct, effective);
+
+        // Bits que cambian en algún rol afectado
+        BitSet changedBits = new BitSet();
+        for (Long roleId : affected) {
+            BitSet diff = copy(model.effective().get(roleId));
+            diff.xor(effective.getOrDefault(roleId, new BitSet()));
+            changedBits.or(diff);
+        }
+
+        Map<Integer, Map.Entry<Long, Operation>> pairs = pairsByBit(model.bits());
+        List<RbacImpact.Entry> entries = new ArrayList<>();
+        BitSet allAffected = new BitSet();
+        for (int bit = changedBits.nextSetBit(0); bit >= 0; bit = changedBits.nextSetBit(bit + 1)) {
+            BitSet before = usersWithBit(model.effective(), members, bit);
+            BitSet after = usersWithBit(effective, members, bit);
+
+            BitSet lost = copy(before);
+            lost.andNot(after);
+            BitSet gained = copy(after);
+            gained.andNot(before);
+            if (lost.isEmpty() && gained.isEmpty()) {
+                continue;
+            }
+            allAffected.or(lost);
+            allAffected.or(gained);
+
+            Map.Entry<Long, Operation> pair = pairs.get(bit);
+            entries.add(new RbacImpact.Entry(pair.getKey(), pair.getValue(),
+                    gained.cardinality(), lost.cardinality(),
+                    firstIds(gained, userLimit), firstIds(lost, userLimit)));
+        }
+        entries.sort(Comparator.comparing(RbacImpact.Entry::resourceId)
+                .thenComparing(RbacImpact.Entry::operation));
+
+        log.debug("Impacto de {} sobre la versión RBAC {}: {} permisos, {} usuarios",
+                request.getChange(), model.version(), entries.size(), allAffected.cardinality());
+        return new RbacImpact(model.version(), request.getChange(), allAffected.cardinality(), entries);
+    }
+
+    private static BitSet usersWithBit(Map<Long, BitSet> effective, Map<Long, BitSet> members, int bit) {
+        BitSet users = new BitSet();
+        effective.forEach((roleId, bits) -> {
+            BitSet roleMembers = members.get(roleId);
+            if (roleMembers != null && bits.get(bit)) {
+                users.or(roleMembers);
+            }
+        });
+        return users;
+    }
+
+    private static Map<Integer, Map.Entry<Long, Operation>> pairsByBit(Map<Long, int[]> bits) {
+        Map<Integer, Map.Entry<Long, Operation>> pairs = new HashMap<>();
+        Operation[] operations = Operation.values();
+        bits.forEach((resourceId, byOperation) -> {
+            for (int op = 0; op < byOperation.length; op++) {
+                if (byOperation[op] >= 0) {
+                    pairs.put(byOperation[op], Map.entry(resourceId, operations[op]));
+                }
+            }
+        });
+        return pairs;
+    }
+
+    private static List<Long> firstIds(BitSet users, int limit) {
+        List<Long> ids = new ArrayList<>(Math.min(limit, users.cardinality()));
+        for (int bit = users.nextSetBit(0); bit >= 0 && ids.size() < limit; bit = users.nextSetBit(bit + 1)) {
+            ids.add((long) bit);
+        }
+        return ids;
+    }
+
+    private static BitSet without(BitSet bits, int bit) {
+        BitSet copy = (BitSet) bits.clone();
+        copy.clear(bit);
+        return copy;
+    }
+
+    private static BitSet copy(BitSet bits) {
+        return bits == null ? new BitSet() : (BitSet) bits.clone();
+    }
+
+    private static <T> T required(T value, String field) {
+        if (value == null) {
+            throw new IllegalArgumentException(field + " es obligatorio");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,574 @@
+package com.security.mfaautenticate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.dataformat.yaml.YAMLGenerator;
+import com.security.mfaautenticate.dto.ManifestGrantRow;
+import com.security.mfaautenticate.dto.ManifestResourceRow;
+import com.security.mfaautenticate.dto.RbacImportResult;
+import com.security.mfaautenticate.dto.RbacManifest;
+import com.security.mfaautenticate.dto.RoleGrantRow;
+import com.security.mfaautenticate.dto.RoleParentNameRow;
+import com.security.mfaautenticate.dto.RoleParentRow;
+import com.security.mfaautenticate.entity.*;
+import com.security.mfaautenticate.repository.PermissionRepository;
+import com.security.mfaautenticate.repository.ResourceRepository;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Importación y exportación del catálogo RBAC como manifiesto.
+ * La importación compara el manifiesto con el estado actual y aplica solo las diferencias
+ * en una transacción: altas y cambios de entidades como inserts/updates en lote de Hibernate,
+ * concesiones y borrados como batches JDBC.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RbacManifestService {
+
+    // Roles que crea DataInitializer: nunca se eliminan con prune
+    private static final Set<String> PROTECTED_ROLES = Set.of("ADMIN", "USER");
+
+    private final ResourceRepository resourceRepository;
+    private final PermissionRepository permissionRepository;
+    private final RoleRepository roleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RbacVersion rbacVersion;
+    private final UserStatsService userStatsService;
+    private final ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public enum Format {
+        JSON,
+        YAML
+    }
+
+    public RbacManifest read(InputStream in, Format format) throws IOException {
+        return mapper(format).readValue(in, RbacManifest.class);
+    }
+
+    // ==================== IMPORTACIÓN ====================
+
+    /**
+     * Aplica el manifiesto. Los recursos y roles listados se crean o actualizan y las
+     * concesiones y los padres de cada rol listado quedan exactamente como en el manifiesto.
+     * Con prune además se eliminan recursos, permisos y roles que el manifiesto no menciona.
+     */
+    @Transactional
+    public RbacImportResult importManifest(RbacManifest manifest, boolean prune, boolean dryRun) {
+        validate(manifest);
+
+        RbacImportResult result = new RbacImportResult();
+        result.setDryRun(dryRun);
+        result.setPrune(prune);
+
+        // Estado actual completo: tres consultas más las concesiones
+        Map<String, Resource> resources = new HashMap<>();
+        resourceRepository.findAll().forEach(resource -> resources.put(resource.getName(), resource));
+
+        Map<String, Map<Operation, Permission>> permissions = new HashMap<>();
+        for (Permission permission : permissionRepository.findAllWithResource()) {
+            permissions.computeIfAbsent(permission.getResource().getName(), name -> new EnumMap<>(Operation.class))
+                    .put(permission.getOperation(), permission);
+        }
+
+        Map<String, Role> roles = new HashMap<>();
+        roleRepository.findAll().forEach(role -> roles.put(role.getName(), role));
+
+        Map<Long, String> roleNames = new HashMap<>();
+        roles.values().forEach(role -> roleNames.put(role.getId(), role.getName()));
+        Map<String, Set<String>> currentParents = new HashMap<>();
+        for (RoleParentRow row : roleRepository.findAllParentRows()) {
+            currentParents.computeIfAbsent(roleNames.get(row.roleId()), name -> new HashSet<>())
+                    .add(roleNames.get(row.parentId()));
+        }
+
+        Map<Long, Set<Long>> currentGrants = new HashMap<>();
+        for (RoleGrantRow row : roleRepository.findAllGrantRows()) {
+            currentGrants.computeIfAbsent(row.roleId(), id -> new HashSet<>()).add(row.permissionId());
+        }
+
+        // Con secuencias pooled-lo persist() asigna el id sin ir a la base,
+        // así que las altas se pueden referenciar en los batches de concesiones
+        Set<Long> changedResources = new TreeSet<>();
+        Set<Long> changedPermissions = new TreeSet<>();
+        Set<Long> changedRoles = new TreeSet<>();
+
+        // Recursos
+        for (RbacManifest.ResourceEntry entry : manifest.resources()) {
+            Resource resource = resources.get(entry.name());
+            if (resource == null) {
+                resource = new Resource();
+                resource.setName(entry.name());
+                resource.setDescription(entry.description());
+                resource.setPath(entry.path());
+                resources.put(entry.name(), resource);
+                result.setResourcesCreated(result.getResourcesCreated() + 1);
+                if (!dryRun) {
+                    entityManager.persist(resource);
+                    changedResources.add(resource.getId());
+                }
+            } else if (!Objects.equals(resource.getDescription(), entry.description())
+                    || !Objects.equals(resource.getPath(), entry.path())) {
+                result.setResourcesUpdated(result.getResourcesUpdated() + 1);
+                if (!dryRun) {
+                    resource.setDescription(entry.description());
+                    resource.setPath(entry.path());
+                    changedResources.add(resource.getId());
+                }
+            }
+        }
+
+        // Permisos: las operaciones de cada recurso más las que usan las concesiones
+        Map<String, Set<Operation>> wantedOperations = new HashMap<>();
+        // Condiciones de los recursos listados; los no listados conservan las suyas
+        Map<String, Map<Operation, String>> wantedConditions = new HashMap<>();
+        for (RbacManifest.ResourceEntry entry : manifest.resources()) {
+            wantedOperations.computeIfAbsent(entry.name(), name -> EnumSet.noneOf(Operation.class))
+                    .addAll(entry.operations());
+            Map<Operation, String> conditions = new EnumMap<>(Operation.class);
+            entry.conditions().forEach((operation, condition) -> {
+                String normalized = RbacService.normalizeCondition(condition);
+                if (normalized != null) {
+                    conditions.put(operation, normalized);
+                }
+            });
+            wantedConditions.put(entry.name(), conditions);
+        }
+        for (RbacManifest.RoleEntry role : manifest.roles()) {
+            for (RbacManifest.GrantEntry grant : role.grants()) {
+                if (!resources.containsKey(grant.resource())) {
+                    throw new IllegalArgumentException("Recurso desconocido en el rol " + role.name() + ": " + grant.resource());
+                }
+                wantedOperations.computeIfAbsent(grant.resource(), name -> EnumSet.noneOf(Operation.class))
+                        .addAll(grant.operations());
+            }
+        }
+
+        wantedOperations.forEach((resourceName, operations) -> {
+            Map<Operation, Permission> existing = permissions.computeIfAbsent(resourceName, name -> new EnumMap<>(Operation.class));
+            Map<Operation, String> conditions = wantedConditions.get(resourceName);
+            for (Operation operation : operations) {
+                Permission permission = existing.get(operation);
+                String condition = conditions == null ? null : conditions.get(operation);
+                if (permission == null) {
+                    permission = new Permission();
+                    permission.setResource(resources.get(resourceName));
+                    permission.setOperation(operation);
+                    permission.setCondition(condition);
+                    existing.put(operation, permission);
+                    result.setPermissionsCreated(result.getPermissionsCreated() + 1);
+                    if (!dryRun) {
+                        entityManager.persist(permission);
+                        changedPermissions.add(permission.getId());
+                    }
+                } else if (conditions != null && !Objects.equals(permission.getCondition(), condition)) {
+                    result.setPermissionsUpdated(result.getPermissionsUpdated() + 1);
+                    if (!dryRun) {
+                        permission.setCondition(condition);
+                        changedPermissions.add(permission.getId());
+                    }
+                }
+            }
+        });
+
+        // Roles y sus concesiones
+        List<Object[]> grantsToAdd = new ArrayList<>();
+        List<Object[]> grantsToRevoke = new ArrayList<>();
+        for (RbacManifest.RoleEntry entry : manifest.roles()) {
+            Role role = roles.get(entry.name());
+            boolean roleChanged = false;
+            if (role == null) {
+                role = new Role();
+                role.setName(entry.name());
+                role.setDescription(entry.description());
+                roles.put(entry.name(), role);
+                result.setRolesCreated(result.getRolesCreated() + 1);
+                roleChanged = true;
+                if (!dryRun) {
+                    entityManager.persist(role);
+                }
+            } else if (!Objects.equals(role.getDescription(), entry.description())) {
+                result.setRolesUpdated(result.getRolesUpdated() + 1);
+                roleChanged = true;
+                if (!dryRun) {
+                    role.setDescription(entry.description());
+                }
+            }
+
+            Set<Long> current = role.getId() == null ? Set.of() : currentGrants.getOrDefault(role.getId(), Set.of());
+            Set<Long> desired = new HashSet<>();
+            int added = 0;
+            for (RbacManifest.GrantEntry grant : entry.grants()) {
+                for (Operation operation : grant.operations()) {
+                    Permission permission = permissions.get(grant.resource()).get(operation);
+                    if (permission.getId() == null || !current.contains(permission.getId())) {
+                        added++;
+                        grantsToAdd.add(new Object[]{role.getId(), permission.getId()});
+                    }
+                    if (permission.getId() != null) {
+                        desired.add(permission.getId());
+                    }
+                }
+            }
+            int revoked = 0;
+            for (Long permissionId : current) {
+                if (!desired.contains(permissionId)) {
+                    revoked++;
+                    grantsToRevoke.add(new Object[]{role.getId(), permissionId});
+                }
+            }
+
+            result.setGrantsAdded(result.getGrantsAdded() + added);
+            result.setGrantsRevoked(result.getGrantsRevoked() + revoked);
+            if (!dryRun && (roleChanged || added > 0 || revoked > 0)) {
+                changedRoles.add(role.getId());
+            }
+        }
+
+        // Prune: lo que el manifiesto no menciona
+        List<Resource> resourcesToDelete = new ArrayList<>();
+        List<Permission> permissionsToDelete = new ArrayList<>();
+        List<Role> rolesToDelete = new ArrayList<>();
+        if (prune) {
+            Set<String> manifestResources = new HashSet<>();
+            manifest.resources().forEach(entry -> manifestResources.add(entry.name()));
+            Set<String> manifestRoles = new HashSet<>();
+            manifest.roles().forEach(entry -> manifestRoles.add(entry.name()));
+
+            for (Resource resource : resources.values()) {
+                if (resource.getId() != null && !manifestResources.contains(resource.getName())) {
+                    resourcesToDelete.add(resource);
+                }
+            }
+            permissions.forEach((resourceName, byOperation) -> {
+                Set<Operation> wanted = wantedOperations.getOrDefault(resourceName, Set.of());
+                byOperation.forEach((operation, permission) -> {
+                    if (permission.getId() != null && !wanted.contains(operation)) {
+                        permissionsToDelete.add(permission);
+                    }
+                });
+            });
+            for (Role role : roles.values()) {
+                if (role.getId() != null && !manifestRoles.contains(role.getName())
+                        && !PROTECTED_ROLES.contains(role.getName())) {
+                    rolesToDelete.add(role);
+                }
+            }
+
+            result.setResourcesDeleted(resourcesToDelete.size());
+            result.setPermissionsDeleted(permissionsToDelete.size());
+            result.setRolesDeleted(rolesToDelete.size());
+        }
+
+        // Jerarquía: los roles listados quedan exactamente con los padres del manifiesto
+        Set<String> deletedRoles = new HashSet<>();
+        rolesToDelete.forEach(role -> deletedRoles.add(role.getName()));
+        Map<String, Set<String>> hierarchy = new HashMap<>();
+        currentParents.forEach((name, parents) -> {
+            if (!deletedRoles.contains(name)) {
+                Set<String> kept = new HashSet<>(parents);
+                kept.removeAll(deletedRoles);
+                hierarchy.put(name, kept);
+            }
+        });
+
+        List<Object[]> parentsToAdd = new ArrayList<>();
+        List<Object[]> parentsToRemove = new ArrayList<>();
+        for (RbacManifest.RoleEntry entry : manifest.roles()) {
+            Role role = roles.get(entry.name());
+            Set<String> desired = new HashSet<>(entry.parents());
+            for (String parent : desired) {
+                if (!roles.containsKey(parent) || deletedRoles.contains(parent)) {
+                    throw new IllegalArgumentException("Rol padre desconocido en el rol " + entry.name() + ": " + parent);
+                }
+            }
+
+            Set<String> current = currentParents.getOrDefault(entry.name(), Set.of());
+            for (String parent : desired) {
+                if (!current.contains(parent)) {
+                    parentsToAdd.add(new Object[]{role.getId(), roles.get(parent).getId()});
+                }
+            }
+            for (String parent : current) {
+                if (!desired.contains(parent)) {
+                    parentsToRemove.add(new Object[]{role.getId(), roles.get(parent).getId()});
+                }
+            }
+            hierarchy.put(entry.name(), desired);
+
+            if (!dryRun && !desired.equals(current)) {
+                changedRoles.add(role.getId());
+            }
+        }
+        result.setParentsAdded(parentsToAdd.size());
+        result.setParentsRemoved(parentsToRemove.size());
+
+        RoleGraph.findCycle(hierarchy).ifPresent(role -> {
+            throw new IllegalArgumentException("Ciclo en la jerarquía de roles en el rol " + role);
+        });
+
+        if (dryRun) {
+            result.setVersion(rbacVersion.current());
+            return result;
+        }
+
+        // Las altas van a la base antes de los batches JDBC que las referencian
+        entityManager.flush();
+
+        batch("delete from role_permissions where role_id = ? and permission_id = ?", grantsToRevoke);
+        batch("insert into role_permissions (role_id, permission_id) values (?, ?)", grantsToAdd);
+        batch("delete from role_parents where role_id = ? and parent_id = ?", parentsToRemove);
+        batch("insert into role_parents (role_id, parent_id) values (?, ?)", parentsToAdd);
+
+        Set<Long> affectedUsers = new TreeSet<>();
+        if (prune) {
+            List<Object[]> deletedPermissionIds = new ArrayList<>();
+            permissionsToDelete.forEach(permission -> deletedPermissionIds.add(new Object[]{permission.getId()}));
+            for (Resource resource : resourcesToDelete) {
+                permissions.getOrDefault(resource.getName(), Map.of()).values().forEach(permission -> {
+                    if (permission.getId() != null && !permissionsToDelete.contains(permission)) {
+                        deletedPermissionIds.add(new Object[]{permission.getId()});
+                    }
+                });
+            }
+            List<Object[]> deletedRoleIds = rolesToDelete.stream().map(role -> new Object[]{role.getId()}).toList();
+            List<Object[]> deletedResourceIds = resourcesToDelete.stream().map(resource -> new Object[]{resource.getId()}).toList();
+
+            for (Object[] roleId : deletedRoleIds) {
+                affectedUsers.addAll(jdbcTemplate.queryForList(
+                        "select user_id from user_roles where role_id = ?", Long.class, roleId));
+            }
+
+            batch("delete from role_permissions where permission_id = ?", deletedPermissionIds);
+            batch("delete from permissions where id = ?", deletedPermissionIds);
+            batch("delete from resources where id = ?", deletedResourceIds);
+            // Los hijos que sobreviven dejan de heredar de los roles borrados
+            currentParents.forEach((name, parents) -> {
+                if (!deletedRoles.contains(name) && parents.stream().anyMatch(deletedRoles::contains)) {
+                    changedRoles.add(roles.get(name).getId());
+                }
+            });
+            batch("delete from role_parents where role_id = ? or parent_id = ?", rolesToDelete.stream()
+                    .map(role -> new Object[]{role.getId(), role.getId()})
+                    .toList());
+            batch("delete from user_roles where role_id = ?", deletedRoleIds);
+            batch("delete from role_permissions where role_id = ?", deletedRoleIds);
+            batch("delete from roles where id = ?", deletedRoleIds);
+
+            deletedPermissionIds.forEach(id -> changedPermissions.add((Long) id[0]));
+            deletedResourceIds.forEach(id -> changedResources.add((Long) id[0]));
+            deletedRoleIds.forEach(id -> changedRoles.add((Long) id[0]));
+            rolesToDelete.forEach(userStatsService::recordRoleDeleted);
+        }
+
+        String tenant = TenantContext.current();
+        long previousVersion = rbacVersion.current();
+        long version = rbacVersion.recordChanges(RbacEntityType.RESOURCE, changedResources);
+        version = Math.max(version, rbacVersion.recordChanges(RbacEntityType.PERMISSION, changedPermissions));
+        version = Math.max(version, rbacVersion.recordChanges(RbacEntityType.ROLE, changedRoles));
+        version = Math.max(version, rbacVersion.recordChanges(RbacEntityType.USER, affectedUsers));
+        result.setVersion(version);
+
+        // Los batches JDBC no pasan por Hibernate: se desalojan del caché de segundo nivel, al
+        // confirmar, las entidades del tenant registradas en esta importación
+        AfterCommit.run(() -> rbacVersion.evictSecondLevelCache(tenant, previousVersion));
+
+        log.info("Manifiesto RBAC importado: {}", result);
+        return result;
+    }
+
+    private void validate(RbacManifest manifest) {
+        Set<String> resourceNames = new HashSet<>();
+        for (RbacManifest.ResourceEntry entry : manifest.resources()) {
+            if (!StringUtils.hasText(entry.name()) || !StringUtils.hasText(entry.path())) {
+                throw new IllegalArgumentException("Cada recurso necesita name y path");
+            }
+            PathTrie.validate(entry.path());
+            if (!resourceNames.add(entry.name())) {
+                throw new IllegalArgumentException("Recurso duplicado en el manifiesto: " + entry.name());
+            }
+            entry.conditions().forEach((operation, condition) -> {
+                if (!entry.operations().contains(operation)) {
+                    throw new IllegalArgumentException("Condición para una operación no listada en el recurso "
+                            + entry.name() + ": " + operation);
+                }
+                // Se compila antes de escribir nada: una condición inválida rechaza el manifiesto entero
+                RbacService.normalizeCondition(condition);
+            });
+        }
+
+        Set<String> roleNames = new HashSet<>();
+        for (RbacManifest.RoleEntry entry : manifest.roles()) {
+            if (!StringUtils.hasText(entry.name())) {
+                throw new IllegalArgumentException("Cada rol necesita name");
+            }
+            if (!roleNames.add(entry.name())) {
+                throw new IllegalArgumentException("Rol duplicado en el manifiesto: " + entry.name());
+            }
+        }
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+        }
+    }
+
+    // ==================== EXPORTACIÓN ====================
+
+    /**
+     * Escribe el catálogo actual como manifiesto, recorriendo las filas con cursores de solo lectura.
+     */
+    @Transactional(readOnly = true)
+    public void exportManifest(OutputStream out, Format format) throws IOException {
+        try (JsonGenerator json = mapper(format).getFactory().createGenerator(out)) {
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (format == Format.JSON) {
+                json.useDefaultPrettyPrinter();
+            }
+
+            json.writeStartObject();
+            writeResources(json);
+            writeRoles(json);
+            json.writeEndObject();
+            json.flush();
+        }
+    }
+
+    private void writeResources(JsonGenerator json) throws IOException {
+        json.writeArrayFieldStart("resources");
+        try (Stream<ManifestResourceRow> rows = resourceRepository.streamManifestRows()) {
+            String current = null;
+            // Condiciones del recurso en curso: van después de sus operaciones
+            Map<Operation, String> conditions = new EnumMap<>(Operation.class);
+            for (Iterator<ManifestResourceRow> it = rows.iterator(); it.hasNext(); ) {
+                ManifestResourceRow row = it.next();
+                if (!row.name().equals(current)) {
+                    if (current != null) {
+                        endResource(json, conditions);
+                    }
+                    json.writeStartObject();
+                    json.writeStringField("name", row.name());
+                    json.writeStringField("description", row.description());
+                    json.writeStringField("path", row.path());
+                    json.writeArrayFieldStart("operations");
+                    current = row.name();
+                }
+                if (row.operation() != null) {
+                    json.writeString(row.operation().name());
+                    if (row.condition() != null) {
+                        conditions.put(row.operation(), row.condition());
+                    }
+                }
+            }
+            if (current != null) {
+                endResource(json, conditions);
+            }
+        }
+        json.writeEndArray();
+    }
+
+    private static void endResource(JsonGenerator json, Map<Operation, String> conditions) throws IOException {
+        json.writeEndArray();
+        if (!conditions.isEmpty()) {
+            json.writeObjectFieldStart("conditions");
+            for (Map.Entry<Operation, String> condition : conditions.entrySet()) {
+                json.writeStringField(condition.getKey().name(), condition.getValue());
+            }
+            json.writeEndObject();
+            conditions.clear();
+        }
+        json.writeEndObject();
+    }
+
+    private void writeRoles(JsonGenerator json) throws IOException {
+        // La jerarquía es pequeña: se agrupa en memoria y se escribe junto a cada rol
+        Map<String, List<String>> parents = new HashMap<>();
+        for (RoleParentNameRow row : roleRepository.findAllParentNameRows()) {
+            parents.computeIfAbsent(row.roleName(), name -> new ArrayList<>()).add(row.parentName());
+        }
+
+        json.writeArrayFieldStart("roles");
+        try (Stream<ManifestGrantRow> rows = roleRepository.streamManifestGrantRows()) {
+            String currentRole = null;
+            String currentResource = null;
+            for (Iterator<ManifestGrantRow> it = rows.iterator(); it.hasNext(); ) {
+                ManifestGrantRow row = it.next();
+                if (!row.roleName().equals(currentRole)) {
+                    if (currentResource != null) {
+                        json.writeEndArray();
+                        json.writeEndObject();
+                    }
+                    if (currentRole != null) {
+                        json.writeEndArray();
+                        json.writeEndObject();
+                    }
+                    json.writeStartObject();
+                    json.writeStringField("name", row.roleName());
+                    json.writeStringField("description", row.roleDescription());
+                    json.writeArrayFieldStart("parents");
+                    for (String parent : parents.getOrDefault(row.roleName(), List.of())) {
+                        json.writeString(parent);
+                    }
+                    json.writeEndArray();
+                    json.writeArrayFieldStart("grants");
+                    currentRole = row.roleName();
+                    currentResource = null;
+                }
+                if (row.resourceName() == null) {
+                    continue;
+                }
+                if (!row.resourceName().equals(currentResource)) {
+                    if (currentResource != null) {
+                        json.writeEndArray();
+                        json.writeEndObject();
+                    }
+                    json.writeStartObject();
+                    json.writeStringField("resource", row.resourceName());
+                    json.writeArrayFieldStart("operations");
+                    currentResource = row.resourceName();
+                }
+                json.writeString(row.operation().name());
+            }
+            if (currentResource != null) {
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+            if (currentRole != null) {
+                json.writeEndArray();
+                json.writeEndObject();
+            }
+        }
+        json.writeEndArray();
+    }
+
+    private ObjectMapper mapper(Format format) {
+        if (format == Format.JSON) {
+            return objectMapper;
+        }
+        YAMLFactory yaml = YAMLFactory.builder()
+                .disable(YAMLGenerator.Feature.WRITE_DOC_START_MARKER)
+                .enable(YAMLGenerator.Feature.MINIMIZE_QUOTES)
+                .build();
+        return objectMapper.copyWith(yaml);
+    }
+}
@@ -1,13 +1,27 @@
 package com.security.mfaautenticate.service;
 
+import com.security.mfaautenticate.dto.RbacUserView;
+import com.security.mfaautenticate.dto.ResourceSubjectsPage;
+import com.security.mfaautenticate.dto.UserRolesRow;
+import com.security.mfaautenticate.dto.UserRolesView;
 import com.security.mfaautenticate.entity.*;
 import com.security.mfaautenticate.repository.*;
+import com.security.mfaautenticate.security.ConditionContext;
+import com.security.mfaautenticate.security.PermissionCondition;
+import com.security.mfaautenticate.security.TenantContext;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 
@@ -20,6 +34,14 @@ public class RbacService {
     private final PermissionRepository permissionRepository;
     private final ResourceRepository resourceRepository;
     private final UserRepository userRepository;
+    private final UserStatsService userStatsService;
+    private final RbacVersion rbacVersion;
+    private final EffectivePermissions effectivePermissions;
+    private final SubjectIndex subjectIndex;
+
+    // Con true, una ruta que no coincide con ningún recurso se deniega en lugar de permitirse
+    @Value("${app.rbac.default-deny:false}")
+    private boolean defaultDeny;
 
     // ==================== ROLE MANAGEMENT ====================
 
@@ -35,11 +57,12 @@ public class RbacService {
 
         Role saved = roleRepository.save(role);
         log.info("Created new role: {}", name);
+        rbacVersion.recordChange(RbacEntityType.ROLE, saved.getId());
         return saved;
     }
 
     public List<Role> getAllRoles() {
-        return roleRepository.findAll();
+        return roleRepository.findAllWithPermissions();
     }
 
     public Optional<Role> getRoleByName(String name) {
@@ -48,8 +71,19 @@ public class RbacService {
 
     @Transactional
     public void deleteRole(Long roleId) {
-        roleRepository.deleteById(roleId);
+        Role role = roleRepository.findById(roleId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new NoSuchElementException("Role not found: " + roleId));
+        userStatsService.recordRoleDeleted(role);
+
+        // Los hijos dejan de heredar del rol borrado
+        for (Role child : roleRepository.findChildrenOf(roleId)) {
+            child.getParents().removeIf(parent -> parent.getId().equals(roleId));
+            rbacVersion.recordChange(RbacEntityType.ROLE, child.getId());
+        }
+        roleRepository.delete(role);
         log.info("Deleted role with id: {}", roleId);
+        rbacVersion.recordChange(RbacEntityType.ROLE, roleId);
     }
 
     // ==================== RESOURCE MANAGEMENT ====================
@@ -59,6 +93,7 @@ public class RbacService {
         if (resourceRepository.existsByName(name)) {
             throw new RuntimeException("Resource already exists: " + name);
         }
+        PathTrie.validate(path);
 
         Resource resource = new Resource();
         resource.setName(name);
@@ -67,6 +102,7 @@ public class RbacService {
 
         Resource saved = resourceRepository.save(resource);
         log.info("Created new resource: {} -> {}", name, path);
+        rbacVersion.recordChange(RbacEntityType.RESOURCE, saved.getId());
         return saved;
     }
 
@@ -80,15 +116,30 @@ public class RbacService {
 
     @Transactional
     public void deleteResource(Long resourceId) {
-        resourceRepository.deleteById(resourceId);
+        Resource resource = resourceRepository.findById(resourceId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new NoSuchElementException("Resource not found: " + resourceId));
+        resourceRepository.delete(resource);
         log.info("Deleted resource with id: {}", resourceId);
+        rbacVersion.recordChange(RbacEntityType.RESOURCE, resourceId);
     }
 
     // ==================== PERMISSION MANAGEMENT ====================
 
     @Transactional
     public Permission createPermission(Long resourceId, Operation operation) {
+        return createPermission(resourceId, operation, null);
+    }
+
+    /**
+     * Crea un permiso, opcionalmente con una condición (ver {@link PermissionCondition}) que se
+     * valida compilándola antes de guardar.
+     */
+    @Transactional
+    public Permission createPermission(Long resourceId, Operation operation, String condition) {
+        String normalized = normalizeCondition(condition);
         Resource resource = resourceRepository.findById(resourceId)
+            .filter(TenantContext::owns)
             .orElseThrow(() -> new RuntimeException("Resource not found: " + resourceId));
 
         Optional<Permission> existing = permissionRepository.findByResourceAndOperation(resource, operation);
@@ -99,117 +150,225 @@ public class RbacService {
         Permission permission = new Permission();
         permission.setResource(resource);
         permission.setOperation(operation);
+        permission.setCondition(normalized);
 
         Permission saved = permissionRepository.save(permission);
         log.info("Created new permission: {} - {}", resource.getName(), operation);
+        rbacVersion.recordChange(RbacEntityType.PERMISSION, saved.getId());
         return saved;
     }
 
+    @Transactional
+    public Permission updatePermissionCondition(Long permissionId, String condition) {
+        String normalized = normalizeCondition(condition);
+        Permission permission = permissionRepository.findWithResourceById(permissionId)
+            .orElseThrow(() -> new RuntimeException("Permission not found: " + permissionId));
+
+        permission.setCondition(normalized);
+        log.info("Updated condition of permission {}: {}", permissionId, normalized);
+        rbacVersion.recordChange(RbacEntityType.PERMISSION, permissionId);
+        return permission;
+    }
+
+    static String normalizeCondition(String condition) {
+        if (condition == null || condition.isBlank()) {
+            return null;
+        }
+        String normalized = condition.strip();
+        PermissionCondition.compile(normalized);
+        return normalized;
+    }
+
     public List<Permission> getAllPermissions() {
-        return permissionRepository.findAll();
+        return permissionRepository.findAllWithResource();
     }
 
     @Transactional
     public void deletePermission(Long permissionId) {
-        permissionRepository.deleteById(permissionId);
+        Permission permission = permissionRepository.findById(permissionId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new NoSuchElementException("Permission not found: " + permissionId));
+        permissionRepository.delete(permission);
         log.info("Deleted permission with id: {}", permissionId);
+        rbacVersion.recordChange(RbacEntityType.PERMISSION, permissionId);
     }
 
     // ==================== ROLE-PERMISSION ASSIGNMENT ====================
 
     @Transactional
     public void assignPermissionToRole(Long roleId, Long permissionId) {
-        Role role = roleRepository.findById(roleId)
+        Role role = roleRepository.findWithPermissionsById(roleId)
             .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
 
-        Permission permission = permissionRepository.findById(permissionId)
+        Permission permission = permissionRepository.findWithResourceById(permissionId)
             .orElseThrow(() -> new RuntimeException("Permission not found: " + permissionId));
 
         role.getPermissions().add(permission);
         roleRepository.save(role);
         log.info("Assigned permission {} to role {}", permissionId, role.getName());
+        rbacVersion.recordChange(RbacEntityType.ROLE, roleId);
     }
 
     @Transactional
     public void removePermissionFromRole(Long roleId, Long permissionId) {
-        Role role = roleRepository.findById(roleId)
+        Role role = roleRepository.findWithPermissionsById(roleId)
             .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
 
-        Permission permission = permissionRepository.findById(permissionId)
+        Permission permission = permissionRepository.findWithResourceById(permissionId)
             .orElseThrow(() -> new RuntimeException("Permission not found: " + permissionId));
 
         role.getPermissions().remove(permission);
         roleRepository.save(role);
         log.info("Removed permission {} from role {}", permissionId, role.getName());
+        rbacVersion.recordChange(RbacEntityType.ROLE, roleId);
+    }
+
+    // ==================== ROLE HIERARCHY ====================
+
+    @Transactional
+    public void assignParentToRole(Long roleId, Long parentId) {
+        Role role = roleRepository.findWithParentsById(roleId)
+            .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
+
+        Role parent = roleRepository.findById(parentId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new RuntimeException("Role not found: " + parentId));
+
+        // El padre (o alguno de sus ancestros) no puede ser el propio rol
+        Map<Long, Set<Long>> parents = new HashMap<>();
+        roleRepository.findAllParentRows()
+            .forEach(row -> parents.computeIfAbsent(row.roleId(), id -> new HashSet<>()).add(row.parentId()));
+        if (RoleGraph.reaches(parents, parentId, roleId)) {
+            throw new RuntimeException("Role hierarchy cycle: " + parent.getName() + " already inherits from " + role.getName());
+        }
+
+        role.getParents().add(parent);
+        roleRepository.save(role);
+        log.info("Role {} now inherits from {}", role.getName(), parent.getName());
+        rbacVersion.recordChange(RbacEntityType.ROLE, roleId);
+    }
+
+    @Transactional
+    public void removeParentFromRole(Long roleId, Long parentId) {
+        Role role = roleRepository.findWithParentsById(roleId)
+            .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
+
+        role.getParents().removeIf(parent -> parent.getId().equals(parentId));
+        roleRepository.save(role);
+        log.info("Role {} no longer inherits from role {}", role.getName(), parentId);
+        rbacVersion.recordChange(RbacEntityType.ROLE, roleId);
     }
 
     // ==================== USER-ROLE ASSIGNMENT ====================
 
     @Transactional
     public void assignRoleToUser(Long userId, Long roleId) {
-        User user = userRepository.findById(userId)
+        User user = userRepository.findWithRolesById(userId)
             .orElseThrow(() -> new RuntimeException("User not found: " + userId));
 
         Role role = roleRepository.findById(roleId)
+            .filter(TenantContext::owns)
             .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
 
-        user.getRoles().add(role);
+        if (user.getRoles().add(role)) {
+            userStatsService.recordRoleAssigned(role);
+        }
         userRepository.save(user);
         log.info("Assigned role {} to user {}", role.getName(), user.getEmail());
+        rbacVersion.recordChange(RbacEntityType.USER, userId);
     }
 
     @Transactional
     public void removeRoleFromUser(Long userId, Long roleId) {
-        User user = userRepository.findById(userId)
+        User user = userRepository.findWithRolesById(userId)
             .orElseThrow(() -> new RuntimeException("User not found: " + userId));
 
         Role role = roleRepository.findById(roleId)
+            .filter(TenantContext::owns)
             .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
 
-        user.getRoles().remove(role);
+        if (user.getRoles().remove(role)) {
+            userStatsService.recordRoleRemoved(role);
+        }
         userRepository.save(user);
         log.info("Removed role {} from user {}", role.getName(), user.getEmail());
+        rbacVersion.recordChange(RbacEntityType.USER, userId);
+    }
+
+    public Optional<UserRolesView> getUserRolesView(Long userId) {
+        List<UserRolesRow> rows = userRepository.findRolesRowsById(userId);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+
+        UserRolesRow first = rows.get(0);
+        List<UserRolesView.RoleRef> roles = rows.stream()
+            .filter(row -> row.roleId() != null)
+            .map(row -> new UserRolesView.RoleRef(row.roleId(), row.roleName(), row.roleDescription()))
+            .toList();
+        return Optional.of(new UserRolesView(first.id(), first.email(), first.name(), roles));
     }
 
     // ==================== PERMISSION CHECKING ====================
 
+    @Transactional(readOnly = true)
     public boolean hasPermission(String email, String resourcePath, Operation operation) {
-        List<User> users = userRepository.findAllByEmail(email);
-        if (users.isEmpty()) {
-            return false;
+        return hasPermission(email, resourcePath, operation, ConditionContext.NONE);
+    }
+
+    /**
+     * Chequeo con los atributos de la petición para los permisos con condición.
+     */
+    @Transactional(readOnly = true)
+    public boolean hasPermission(String email, String resourcePath, Operation operation, ConditionContext context) {
+        // La ruta se resuelve contra el trie compilado: coincidencia exacta o el comodín más específico
+        Long resourceId = effectivePermissions.resolveResource(resourcePath);
+        if (resourceId == null) {
+            // Recurso no registrado: se permite a cualquier usuario existente salvo con default-deny
+            return !defaultDeny && userRepository.existsByEmail(email);
         }
 
-        Optional<Resource> resourceOpt = resourceRepository.findByPath(resourcePath);
-        if (resourceOpt.isEmpty()) {
-            return true; // If resource not registered, allow access
+        // Roles directos del usuario; la herencia ya está resuelta en los bitsets por rol
+        List<Long> roleIds = userRepository.findRoleIdsByEmail(email);
+        return effectivePermissions.isGranted(roleIds, resourceId, operation, context);
+    }
+
+    /**
+     * Usuarios que pueden realizar la operación sobre el recurso, paginados por id. Roles y usuarios
+     * salen de los índices en memoria; solo la página de usuarios se lee de la base de datos.
+     */
+    @Transactional(readOnly = true)
+    public ResourceSubjectsPage findSubjects(Long resourceId, Operation operation, Long after, Integer size) {
+        // findById sale del caché de segundo nivel
+        resourceRepository.findById(resourceId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new RuntimeException("Resource not found: " + resourceId));
+        int pageSize = size == null ? UserListingService.DEFAULT_PAGE_SIZE
+                : Math.max(1, Math.min(size, UserListingService.MAX_PAGE_SIZE));
+
+        List<Long> roleIds = effectivePermissions.rolesGranting(resourceId, operation);
+        BitSet users = subjectIndex.usersWithAnyRole(roleIds);
+
+        // Keyset sobre los bits: el siguiente id mayor que el cursor
+        List<Long> ids = new ArrayList<>(pageSize);
+        long start = after == null ? 0 : Math.max(0, Math.min(after, Integer.MAX_VALUE - 1L) + 1);
+        for (int bit = users.nextSetBit((int) start); bit >= 0 && ids.size() <= pageSize; bit = users.nextSetBit(bit + 1)) {
+            ids.add((long) bit);
         }
 
-        Resource resource = resourceOpt.get();
-
-        for (User user : users) {
-            for (Role role : user.getRoles()) {
-                for (Permission permission : role.getPermissions()) {
-                    if (permission.getResource().getId().equals(resource.getId()) &&
-                        permission.getOperation().equals(operation)) {
-                        return true;
-                    }
-                }
-            }
+        Long nextCursor = null;
+        if (ids.size() > pageSize) {
+            ids = ids.subList(0, pageSize);
+            nextCursor = ids.get(pageSize - 1);
         }
 
-        return false;
+        List<RbacUserView> page = ids.isEmpty() ? List.of()
+                : userRepository.findWithRolesByIdInOrderByIdAsc(ids).stream().map(RbacUserView::of).toList();
+        return new ResourceSubjectsPage(resourceId, operation, roleIds, users.cardinality(), page, nextCursor);
     }
 
     public boolean isAdmin(String email) {
-        List<User> users = userRepository.findAllByEmail(email);
-        for (User user : users) {
-            for (Role role : user.getRoles()) {
-                if ("ADMIN".equals(role.getName())) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return userRepository.existsByEmailAndRolesName(email, "ADMIN");
     }
 
     // ==================== INITIALIZATION ====================
@@ -222,6 +381,7 @@ public class RbacService {
             adminRole.setDescription("Administrador con acceso completo");
             roleRepository.save(adminRole);
             log.info("Created default ADMIN role");
+            rbacVersion.recordChange(RbacEntityType.ROLE, adminRole.getId());
         }
 
         if (!roleRepository.existsByName("USER")) {
@@ -230,6 +390,7 @@ public class RbacService {
             userRole.setDescription("Usuario regular con acceso limitado");
             roleRepository.save(userRole);
             log.info("Created default USER role");
+            rbacVersion.recordChange(RbacEntityType.ROLE, userRole.getId());
         }
     }
 }
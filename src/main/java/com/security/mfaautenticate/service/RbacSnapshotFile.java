@@ -0,0 +1,347 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.entity.Operation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Formato binario del snapshot RBAC persistido. Todo en big-endian, cadenas como longitud + UTF-8:
+ * <pre>
+ * int    magic "RBAC"        short formato        long escrito (epoch ms)      int tenants
+ * por tenant:
+ *   str tenant  long versión  int nextBit
+ *   parents      int n (long rol, int k, long padre * k)
+ *   bits         int n (long recurso, int ops, int bit * ops)
+ *   permisos     int n (long permiso, int bit)
+ *   direct       int n (long rol, int w, long palabra * w)
+ *   effective    int n (long rol, int w, long palabra * w)
+ *   condiciones  int n (int bit, str expresión)
+ *   rutas        int n (str patrón, long recurso)
+ *   roles        int n (long rol, str nombre)
+ *   usuarios     int n (long id, str email, str proveedor, byte mfa, int k, long rol * k)
+ * int    CRC32 de todo lo anterior
+ * </pre>
+ * Se escribe a un temporal que reemplaza al archivo de forma atómica; se lee con el archivo
+ * mapeado en memoria y se descarta entero si la marca, el formato o el CRC no coinciden.
+ */
+final class RbacSnapshotFile {
+
+    static final int MAGIC = 0x52424143;
+    static final short FORMAT = 1;
+
+    private RbacSnapshotFile() {
+    }
+
+    /**
+     * Contenido del archivo: modelo compilado y directorio de usuarios de cada tenant.
+     */
+    record Contents(Instant writtenAt, Map<String, TenantSnapshot> tenants) {
+    }
+
+    record TenantSnapshot(EffectivePermissions.Snapshot model, Map<Long, String> roles, List<Subject> users) {
+    }
+
+    /**
+     * Usuario con sus roles directos, suficiente para armar el principal y decidir sin la base de datos.
+     */
+    record Subject(long id, String email, String provider, boolean mfaEnabled, long[] roleIds) {
+    }
+
+    static void write(Path file, Contents contents) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (OutputStream raw = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(
+                         new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc))) {
+                writeContents(out, contents);
+                out.flush();
+                // El CRC cubre lo escrito hasta aquí y no a sí mismo
+                new DataOutputStream(raw).writeInt((int) crc.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @throws IOException si el archivo no se puede leer o no es un snapshot válido de este formato
+     */
+    static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < Integer.BYTES * 2 || size > Integer.MAX_VALUE) {
+                throw new IOException("Tamaño de snapshot inválido: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int bodyLength = (int) size - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, bodyLength));
+            if ((int) crc.getValue() != buffer.getInt(bodyLength)) {
+                throw new IOException("CRC del snapshot no coincide: " + file);
+            }
+
+            ByteBuffer body = buffer.slice(0, bodyLength);
+            try {
+                return readContents(body);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException("Snapshot truncado o corrupto: " + file, e);
+            }
+        }
+    }
+
+    // ==================== ESCRITURA ====================
+
+    private static void writeContents(DataOutputStream out, Contents contents) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT);
+        out.writeLong(contents.writtenAt().toEpochMilli());
+        out.writeInt(contents.tenants().size());
+        for (Map.Entry<String, TenantSnapshot> entry : contents.tenants().entrySet()) {
+            writeString(out, entry.getKey());
+            writeTenant(out, entry.getValue());
+        }
+    }
+
+    private static void writeTenant(DataOutputStream out, TenantSnapshot tenant) throws IOException {
+        EffectivePermissions.Snapshot model = tenant.model();
+        out.writeLong(model.version());
+        out.writeInt(model.nextBit());
+
+        out.writeInt(model.parents().size());
+        for (Map.Entry<Long, Set<Long>> entry : model.parents().entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Long parent : entry.getValue()) {
+                out.writeLong(parent);
+            }
+        }
+
+        out.writeInt(model.bits().size());
+        for (Map.Entry<Long, int[]> entry : model.bits().entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            for (int bit : entry.getValue()) {
+                out.writeInt(bit);
+            }
+        }
+
+        out.writeInt(model.permissionBits().size());
+        for (Map.Entry<Long, Integer> entry : model.permissionBits().entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+
+        writeBitSets(out, model.direct());
+        writeBitSets(out, model.effective());
+
+        String[] expressions = model.expressions();
+        int conditional = (int) Arrays.stream(expressions).filter(Objects::nonNull).count();
+        out.writeInt(conditional);
+        for (int bit = 0; bit < expressions.length; bit++) {
+            if (expressions[bit] != null) {
+                out.writeInt(bit);
+                writeString(out, expressions[bit]);
+            }
+        }
+
+        out.writeInt(model.patterns().size());
+        for (Map.Entry<String, Long> entry : model.patterns().entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+
+        out.writeInt(tenant.roles().size());
+        for (Map.Entry<Long, String> entry : tenant.roles().entrySet()) {
+            out.writeLong(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+
+        out.writeInt(tenant.users().size());
+        for (Subject user : tenant.users()) {
+            out.writeLong(user.id());
+            writeString(out, user.email());
+            writeString(out, user.provider());
+            out.writeByte(user.mfaEnabled() ? 1 : 0);
+            out.writeInt(user.roleIds().length);
+            for (long roleId : user.roleIds()) {
+                out.writeLong(roleId);
+            }
+        }
+    }
+
+    private static void writeBitSets(DataOutputStream out, Map<Long, BitSet> bitSets) throws IOException {
+        out.writeInt(bitSets.size());
+        for (Map.Entry<Long, BitSet> entry : bitSets.entrySet()) {
+            long[] words = entry.getValue().toLongArray();
+            out.writeLong(entry.getKey());
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // ==================== LECTURA ====================
+
+    private static Contents readContents(ByteBuffer in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("No es un snapshot RBAC");
+        }
+        short format = in.getShort();
+        if (format != FORMAT) {
+            throw new IOException("Formato de snapshot no soportado: " + format);
+        }
+        Instant writtenAt = Instant.ofEpochMilli(in.getLong());
+
+        int count = count(in);
+        Map<String, TenantSnapshot> tenants = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String tenant = readString(in);
+            tenants.put(tenant, readTenant(in));
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("Datos sobrantes al final del snapshot");
+        }
+        return new Contents(writtenAt, tenants);
+    }
+
+    private static TenantSnapshot readTenant(ByteBuffer in) {
+        long version = in.getLong();
+        int nextBit = in.getInt();
+
+        int count = count(in);
+        Map<Long, Set<Long>> parents = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            long roleId = in.getLong();
+            int size = count(in);
+            Set<Long> roleParents = new HashSet<>();
+            for (int j = 0; j < size; j++) {
+                roleParents.add(in.getLong());
+            }
+            parents.put(roleId, roleParents);
+        }
+
+        int operations = Operation.values().length;
+        count = count(in);
+        Map<Long, int[]> bits = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            long resourceId = in.getLong();
+            int size = count(in);
+            if (size != operations) {
+                throw new IllegalArgumentException("Operaciones por recurso: " + size + " en lugar de " + operations);
+            }
+            int[] byOperation = new int[size];
+            for (int j = 0; j < size; j++) {
+                byOperation[j] = in.getInt();
+            }
+            bits.put(resourceId, byOperation);
+        }
+
+        count = count(in);
+        Map<Long, Integer> permissionBits = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            permissionBits.put(in.getLong(), in.getInt());
+        }
+
+        Map<Long, BitSet> direct = readBitSets(in);
+        Map<Long, BitSet> effective = readBitSets(in);
+
+        count = count(in);
+        String[] expressions = new String[nextBit];
+        for (int i = 0; i < count; i++) {
+            int bit = in.getInt();
+            if (bit < 0 || bit >= nextBit) {
+                throw new IllegalArgumentException("Bit de condición fuera de rango: " + bit);
+            }
+            expressions[bit] = readString(in);
+        }
+
+        count = count(in);
+        Map<String, Long> patterns = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            patterns.put(readString(in), in.getLong());
+        }
+
+        count = count(in);
+        Map<Long, String> roles = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            roles.put(in.getLong(), readString(in));
+        }
+
+        count = count(in);
+        List<Subject> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long id = in.getLong();
+            String email = readString(in);
+            String provider = readString(in);
+            boolean mfaEnabled = in.get() != 0;
+            long[] roleIds = new long[count(in)];
+            for (int j = 0; j < roleIds.length; j++) {
+                roleIds[j] = in.getLong();
+            }
+            users.add(new Subject(id, email, provider, mfaEnabled, roleIds));
+        }
+
+        EffectivePermissions.Snapshot model = EffectivePermissions.Snapshot.restored(version, parents, bits,
+                permissionBits, nextBit, direct, effective, expressions, patterns);
+        return new TenantSnapshot(model, roles, users);
+    }
+
+    private static Map<Long, BitSet> readBitSets(ByteBuffer in) {
+        int count = count(in);
+        Map<Long, BitSet> bitSets = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            long roleId = in.getLong();
+            long[] words = new long[count(in)];
+            for (int j = 0; j < words.length; j++) {
+                words[j] = in.getLong();
+            }
+            bitSets.put(roleId, BitSet.valueOf(words));
+        }
+        return bitSets;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[count(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Cantidad de elementos; una negativa o mayor que los bytes restantes indica un archivo corrupto.
+     */
+    private static int count(ByteBuffer in) {
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IllegalArgumentException("Cantidad inválida: " + count);
+        }
+        return count;
+    }
+}
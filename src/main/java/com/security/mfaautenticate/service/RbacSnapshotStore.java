@@ -0,0 +1,345 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.RbacSnapshotStats;
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.security.ConditionContext;
+import com.security.mfaautenticate.security.TenantContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Snapshot RBAC persistido en app.rbac.snapshot.path: el modelo compilado de
+ * {@link EffectivePermissions} y un directorio email -> roles de cada tenant, en el formato binario
+ * de {@link RbacSnapshotFile}.
+ * Al arrancar se lee el archivo y se restaura el modelo, de modo que los primeros chequeos solo
+ * aplican el delta desde esa versión en lugar de compilar todo. Cada app.rbac.snapshot.write-interval-ms
+ * se reescribe si cambió la versión de algún tenant.
+ * Si la base de datos no responde, {@code JwtAuthenticationFilter} y {@code PermissionInterceptor}
+ * deciden con este snapshot en modo degradado: solo operaciones READ y con la antigüedad del
+ * snapshot informada en la cabecera {@value #AGE_HEADER}. Los tenants con más de
+ * app.rbac.snapshot.max-users usuarios se guardan sin directorio y no admiten modo degradado.
+ */
+@Service
+@Slf4j
+public class RbacSnapshotStore {
+
+    public static final String AGE_HEADER = "X-RBAC-Snapshot-Age";
+
+    private static final String ADMIN_ROLE = "ADMIN";
+
+    private final EffectivePermissions effectivePermissions;
+    private final JdbcTemplate jdbcTemplate;
+    private final Path file;
+    private final int maxUsers;
+    private final boolean defaultDeny;
+
+    // Directorio del último snapshot escrito o leído; se reemplaza entero
+    private volatile Directory directory = Directory.EMPTY;
+    // Tenants del último snapshot escrito o leído: se reutilizan los que no cambiaron de versión
+    private final Map<String, RbacSnapshotFile.TenantSnapshot> written = new HashMap<>();
+    private final AtomicLong degradedDecisions = new AtomicLong();
+    private volatile Instant lastDegradedAt;
+
+    public RbacSnapshotStore(EffectivePermissions effectivePermissions,
+                             JdbcTemplate jdbcTemplate,
+                             @Value("${app.rbac.snapshot.path:}") String path,
+                             @Value("${app.rbac.snapshot.max-users:100000}") int maxUsers,
+                             @Value("${app.rbac.default-deny:false}") boolean defaultDeny) {
+        this.effectivePermissions = effectivePermissions;
+        this.jdbcTemplate = jdbcTemplate;
+        this.file = StringUtils.hasText(path) ? Path.of(path) : null;
+        this.maxUsers = maxUsers;
+        this.defaultDeny = defaultDeny;
+    }
+
+    @PostConstruct
+    public void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        try {
+            RbacSnapshotFile.Contents contents = RbacSnapshotFile.read(file);
+            contents.tenants().forEach((tenant, snapshot) -> {
+                effectivePermissions.restore(tenant, snapshot.model());
+                written.put(tenant, snapshot);
+            });
+            directory = Directory.of(contents);
+            log.info("Snapshot RBAC restaurado de {} ({} tenants, escrito {})",
+                    file, contents.tenants().size(), contents.writtenAt());
+        } catch (IOException e) {
+            log.warn("Snapshot RBAC ilegible, se ignora y se compila desde la base de datos: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.rbac.snapshot.write-interval-ms:60000}",
+            fixedDelayString = "${app.rbac.snapshot.write-interval-ms:60000}")
+    public synchronized void write() {
+        if (file == null) {
+            return;
+        }
+
+        Map<String, RbacSnapshotFile.TenantSnapshot> tenants = new TreeMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        try {
+            Map<String, EffectivePermissions.Snapshot> models = new HashMap<>();
+            for (String tenant : effectivePermissions.tenants()) {
+                // Trae el modelo del tenant a la versión vigente antes de guardarlo
+                EffectivePermissions.Snapshot model = TenantContext.callAs(tenant, effectivePermissions::snapshot);
+                models.put(tenant, model);
+                versions.put(tenant, model.version());
+            }
+            if (versions.isEmpty() || versions.equals(writtenVersions())) {
+                return;
+            }
+
+            // Roles y usuarios solo de los tenants cuya versión cambió; el resto, del snapshot anterior
+            models.forEach((tenant, model) -> {
+                RbacSnapshotFile.TenantSnapshot previous = written.get(tenant);
+                tenants.put(tenant, previous != null && previous.model().version() == model.version()
+                        ? previous
+                        : new RbacSnapshotFile.TenantSnapshot(model, roleNames(tenant), subjects(tenant)));
+            });
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("No se pudo leer el RBAC para el snapshot, se conserva el anterior: {}", e.getMessage());
+            return;
+        }
+
+        RbacSnapshotFile.Contents contents = new RbacSnapshotFile.Contents(Instant.now(), tenants);
+        try {
+            RbacSnapshotFile.write(file, contents);
+        } catch (IOException e) {
+            log.warn("No se pudo escribir el snapshot RBAC en {}: {}", file, e.getMessage());
+            return;
+        }
+        written.clear();
+        written.putAll(tenants);
+        directory = Directory.of(contents);
+        log.debug("Snapshot RBAC escrito en {}: {}", file, versions);
+    }
+
+    private Map<String, Long> writtenVersions() {
+        Map<String, Long> versions = new HashMap<>();
+        written.forEach((tenant, snapshot) -> versions.put(tenant, snapshot.model().version()));
+        return versions;
+    }
+
+    @PreDestroy
+    public void close() {
+        // Un reinicio retoma desde lo más reciente posible
+        write();
+    }
+
+    // ==================== MODO DEGRADADO ====================
+
+    /**
+     * Si el snapshot tiene directorio de usuarios para el tenant de la petición.
+     */
+    public boolean covers() {
+        return directory.tenants().containsKey(TenantContext.current());
+    }
+
+    /**
+     * Principal armado con el snapshot (id, email, proveedor, MFA y roles), para autenticar
+     * mientras la base de datos no responde. La entidad no está asociada a ninguna sesión.
+     */
+    public Optional<User> findUser(String email) {
+        TenantDirectory tenant = directory.tenants().get(TenantContext.current());
+        Entry entry = tenant == null ? null : tenant.users().get(normalize(email));
+        if (entry == null) {
+            return Optional.empty();
+        }
+
+        Set<Role> roles = new HashSet<>();
+        for (long roleId : entry.roleIds()) {
+            Role role = new Role();
+            role.setId(roleId);
+            role.setTenant(TenantContext.current());
+            role.setName(tenant.roles().get(roleId));
+            roles.add(role);
+        }
+        return Optional.of(User.builder()
+                .id(entry.subject().id())
+                .tenant(TenantContext.current())
+                .email(entry.subject().email())
+                .oauthProvider(OAuthProvider.valueOf(entry.subject().provider()))
+                .mfaEnabled(entry.subject().mfaEnabled())
+                .roles(roles)
+                .build());
+    }
+
+    /**
+     * Como {@link RbacService#isAdmin}, con los roles guardados en el snapshot.
+     */
+    public boolean isAdmin(String email) {
+        markDegraded();
+        TenantDirectory tenant = directory.tenants().get(TenantContext.current());
+        Entry entry = tenant == null ? null : tenant.users().get(normalize(email));
+        return entry != null && Arrays.stream(entry.roleIds())
+                .anyMatch(roleId -> ADMIN_ROLE.equals(tenant.roles().get(roleId)));
+    }
+
+    /**
+     * Como {@link RbacService#hasPermission(String, String, Operation, ConditionContext)}, con los
+     * roles guardados en el snapshot. El modelo en memoria es el último compilado o restaurado.
+     */
+    public boolean hasPermission(String email, String resourcePath, Operation operation, ConditionContext context) {
+        TenantDirectory tenant = directory.tenants().get(TenantContext.current());
+        Entry entry = tenant == null ? null : tenant.users().get(normalize(email));
+        if (entry == null) {
+            return false;
+        }
+
+        Long resourceId = effectivePermissions.resolveResource(resourcePath);
+        if (resourceId == null) {
+            return !defaultDeny;
+        }
+        List<Long> roleIds = Arrays.stream(entry.roleIds()).boxed().toList();
+        return effectivePermissions.isGranted(roleIds, resourceId, operation, context);
+    }
+
+    /**
+     * Antigüedad del snapshot con el que se decide en modo degradado.
+     */
+    public Duration age() {
+        Instant writtenAt = directory.writtenAt();
+        return writtenAt == null ? Duration.ZERO : Duration.between(writtenAt, Instant.now());
+    }
+
+    public RbacSnapshotStats stats() {
+        Directory current = directory;
+        Map<String, Long> versions = new TreeMap<>();
+        Map<String, Integer> users = new TreeMap<>();
+        current.tenants().forEach((tenant, entries) -> {
+            versions.put(tenant, entries.version());
+            users.put(tenant, entries.users().size());
+        });
+        return new RbacSnapshotStats(file == null ? null : file.toString(), current.writtenAt(),
+                current.writtenAt() == null ? null : age().toSeconds(), versions, users,
+                degradedDecisions.get(), lastDegradedAt);
+    }
+
+    private void markDegraded() {
+        degradedDecisions.incrementAndGet();
+        lastDegradedAt = Instant.now();
+    }
+
+    // ==================== LECTURA DE LA BASE DE DATOS ====================
+
+    private Map<Long, String> roleNames(String tenant) {
+        Map<Long, String> roles = new HashMap<>();
+        jdbcTemplate.query("select id, name from roles where tenant_id = ?",
+                rs -> {
+                    roles.put(rs.getLong(1), rs.getString(2));
+                },
+                tenant);
+        return roles;
+    }
+
+    private List<RbacSnapshotFile.Subject> subjects(String tenant) {
+        Integer count = jdbcTemplate.queryForObject("select count(*) from users where tenant_id = ?",
+                Integer.class, tenant);
+        if (count == null || count > maxUsers) {
+            log.warn("El tenant {} tiene {} usuarios (máximo {}): el snapshot no incluye su directorio",
+                    tenant, count, maxUsers);
+            return List.of();
+        }
+
+        // Una fila por asignación, ordenadas por usuario: se agrupan al vuelo
+        List<RbacSnapshotFile.Subject> subjects = new ArrayList<>(count);
+        List<Long> roleIds = new ArrayList<>();
+        Object[] current = new Object[4];
+        jdbcTemplate.query("""
+                        select u.id, u.email, u.oauth_provider, u.mfa_enabled, ur.role_id
+                        from users u left join user_roles ur on ur.user_id = u.id
+                        where u.tenant_id = ?
+                        order by u.id
+                        """,
+                rs -> {
+                    long id = rs.getLong(1);
+                    if (current[0] != null && (long) current[0] != id) {
+                        subjects.add(subject(current, roleIds));
+                        roleIds.clear();
+                    }
+                    current[0] = id;
+                    current[1] = rs.getString(2);
+                    current[2] = rs.getString(3);
+                    current[3] = rs.getBoolean(4);
+                    long roleId = rs.getLong(5);
+                    if (!rs.wasNull()) {
+                        roleIds.add(roleId);
+                    }
+                },
+                tenant);
+        if (current[0] != null) {
+            subjects.add(subject(current, roleIds));
+        }
+        return subjects;
+    }
+
+    private static RbacSnapshotFile.Subject subject(Object[] row, List<Long> roleIds) {
+        return new RbacSnapshotFile.Subject((long) row[0], (String) row[1], (String) row[2], (boolean) row[3],
+                roleIds.stream().mapToLong(Long::longValue).toArray());
+    }
+
+    private static String normalize(String email) {
+        return email == null ? "" : email.toLowerCase(Locale.ROOT);
+    }
+
+    // ==================== DIRECTORIO EN MEMORIA ====================
+
+    /**
+     * Usuario del directorio; {@code roleIds} une los roles de todas las cuentas con el mismo email,
+     * igual que las consultas por email de UserRepository.
+     */
+    private record Entry(RbacSnapshotFile.Subject subject, long[] roleIds) {
+    }
+
+    private record TenantDirectory(long version, Map<Long, String> roles, Map<String, Entry> users) {
+    }
+
+    private record Directory(Instant writtenAt, Map<String, TenantDirectory> tenants) {
+
+        static final Directory EMPTY = new Directory(null, Map.of());
+
+        static Directory of(RbacSnapshotFile.Contents contents) {
+            Map<String, TenantDirectory> tenants = new HashMap<>();
+            contents.tenants().forEach((tenant, snapshot) -> {
+                // Sin directorio (tenant demasiado grande) no hay modo degradado para el tenant
+                if (snapshot.users().isEmpty()) {
+                    return;
+                }
+                Map<String, Entry> users = new HashMap<>();
+                for (RbacSnapshotFile.Subject subject : snapshot.users()) {
+                    users.merge(normalize(subject.email()), new Entry(subject, subject.roleIds()),
+                            (first, other) -> new Entry(first.subject(), union(first.roleIds(), other.roleIds())));
+                }
+                tenants.put(tenant, new TenantDirectory(snapshot.model().version(), snapshot.roles(), users));
+            });
+            return new Directory(contents.writtenAt(), tenants);
+        }
+    }
+
+    private static long[] union(long[] first, long[] second) {
+        return LongStream.concat(Arrays.stream(first), Arrays.stream(second)).distinct().toArray();
+    }
+}
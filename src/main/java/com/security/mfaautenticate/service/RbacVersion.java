@@ -0,0 +1,237 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.config.ReplicaRoutingDataSource;
+import com.security.mfaautenticate.entity.Permission;
+import com.security.mfaautenticate.entity.RbacChange;
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.entity.Resource;
+import com.security.mfaautenticate.entity.RbacTenantVersion;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.repository.RbacChangeRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Cache;
+import org.hibernate.cache.spi.access.CollectionDataAccess;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versión del modelo RBAC de cada tenant. Cada escritura de {@link RbacService} incrementa el
+ * contador del tenant ({@link RbacTenantVersion}) y registra un {@link RbacChange} con esa versión
+ * en su transacción, así que un cambio en un tenant no invalida lo compilado o cacheado para los
+ * demás. El contador queda bloqueado hasta el commit: las versiones de un tenant se confirman en
+ * orden y un lector que pide los cambios con versión mayor que la última vista no se salta ninguno.
+ * Las lecturas usan el valor en memoria; los cambios hechos en otros nodos se detectan
+ * leyendo los contadores cada app.rbac.version-poll-ms.
+ * El caché de segundo nivel de Hibernate es local a cada nodo: ante un cambio remoto se
+ * desalojan las entradas RBAC de ese tenant para no servir roles o permisos viejos.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RbacVersion {
+
+    private static final int MAX_EVICTED_CHANGES = 1000;
+
+    private final RbacChangeRepository changeRepository;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ReplicaRoutingDataSource replicaRoutingDataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    @Value("${app.rbac.change-retention:7d}")
+    private Duration changeRetention;
+
+    /**
+     * Versión del tenant de la petición en curso.
+     */
+    public long current() {
+        return current(TenantContext.current());
+    }
+
+    public long current(String tenant) {
+        AtomicLong version = versions.get(tenant);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * Se une a la transacción de la escritura; fuera de una, el contador y el registro se
+     * confirman juntos en una propia.
+     */
+    @Transactional
+    public void recordChange(RbacEntityType entityType, Long entityId) {
+        String tenant = TenantContext.current();
+        long version = reserveVersions(tenant, 1);
+        changeRepository.save(new RbacChange(entityType, entityId, version));
+        AfterCommit.run(() -> advance(tenant, version));
+    }
+
+    /**
+     * Registra muchos cambios con un único batch JDBC (operaciones masivas).
+     * Devuelve la versión que quedará vigente al confirmar la transacción.
+     */
+    @Transactional
+    public long recordChanges(RbacEntityType entityType, Collection<Long> entityIds) {
+        if (entityIds.isEmpty()) {
+            return current();
+        }
+
+        String tenant = TenantContext.current();
+        long latest = reserveVersions(tenant, entityIds.size());
+        long version = latest - entityIds.size();
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> rows = new ArrayList<>(entityIds.size());
+        for (Long id : entityIds) {
+            rows.add(new Object[]{tenant, ++version, entityType.name(), id, now});
+        }
+        jdbcTemplate.batchUpdate("insert into rbac_changes (tenant_id, version, entity_type, entity_id, occurred_at) "
+                + "values (?, ?, ?, ?, ?)", rows);
+
+        AfterCommit.run(() -> advance(tenant, latest));
+        return latest;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.rbac.version-poll-ms:1000}",
+            fixedDelayString = "${app.rbac.version-poll-ms:1000}")
+    public void refresh() {
+        // Una fila por tenant: leer todos los contadores es más barato que recorrer el registro
+        List<Map.Entry<String, Long>> latestByTenant = jdbcTemplate.query(
+                "select tenant_id, version from rbac_versions",
+                (rs, rowNum) -> Map.entry(rs.getString(1), rs.getLong(2)));
+
+        for (Map.Entry<String, Long> entry : latestByTenant) {
+            String tenant = entry.getKey();
+            long latest = entry.getValue();
+
+            long previous = versions.computeIfAbsent(tenant, t -> new AtomicLong()).getAndAccumulate(latest, Math::max);
+            if (latest > previous && previous > 0) {
+                replicaRoutingDataSource.stickToPrimary();
+                // Los cambios locales ya avanzaron la versión al confirmar: esto viene de otro nodo
+                evictSecondLevelCache(tenant, previous);
+                log.info("Versión RBAC del tenant {} {} -> {} por un cambio remoto; caché de segundo nivel desalojado",
+                        tenant, previous, latest);
+            }
+        }
+    }
+
+    /**
+     * Desaloja del caché de segundo nivel las entidades RBAC del tenant modificadas después de
+     * {@code since}, según el registro de cambios. Necesario tras escrituras con SQL directo, que
+     * Hibernate no ve, y tras cambios hechos en otros nodos. Los demás tenants no se tocan, salvo
+     * el caché de consultas, cuyas regiones no se pueden vaciar por tenant.
+     */
+    public void evictSecondLevelCache(String tenant, long since) {
+        Map<RbacEntityType, Set<Long>> changed = new EnumMap<>(RbacEntityType.class);
+        jdbcTemplate.query("""
+                        select entity_type, entity_id from rbac_changes
+                        where tenant_id = ? and version > ? and entity_type <> 'USER'
+                        order by version
+                        limit ?
+                        """,
+                rs -> {
+                    changed.computeIfAbsent(RbacEntityType.valueOf(rs.getString(1)), type -> new HashSet<>())
+                            .add(rs.getLong(2));
+                },
+                tenant, since, MAX_EVICTED_CHANGES + 1);
+
+        SessionFactoryImplementor factory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        if (changed.values().stream().mapToInt(Set::size).sum() > MAX_EVICTED_CHANGES) {
+            evictAll(factory);
+            return;
+        }
+
+        Set<Long> roles = changed.getOrDefault(RbacEntityType.ROLE, Set.of());
+        Set<Long> permissions = changed.getOrDefault(RbacEntityType.PERMISSION, Set.of());
+        Set<Long> resources = changed.getOrDefault(RbacEntityType.RESOURCE, Set.of());
+        evictEntities(factory, Role.class, roles, tenant);
+        evictEntities(factory, Permission.class, permissions, tenant);
+        evictEntities(factory, Resource.class, resources, tenant);
+
+        // Un permiso o recurso borrado desaparece de las colecciones de cualquier rol del tenant
+        Collection<Long> collectionOwners = permissions.isEmpty() && resources.isEmpty()
+                ? roles
+                : jdbcTemplate.queryForList("select id from roles where tenant_id = ?", Long.class, tenant);
+        evictCollections(factory, Role.class.getName() + ".permissions", collectionOwners, tenant);
+        evictCollections(factory, Role.class.getName() + ".parents", collectionOwners, tenant);
+        factory.getCache().evictQueryRegions();
+    }
+
+    @Scheduled(cron = "${app.rbac.change-prune-cron:0 0 3 * * *}")
+    public void pruneChanges() {
+        // Sin filtro de tenant: se poda el registro de todos, conservando la última fila de cada uno
+        int deleted = TenantContext.callAs(TenantContext.ROOT,
+                () -> changeRepository.deleteOlderThan(Instant.now().minus(changeRetention)));
+        log.info("Eliminados {} cambios RBAC anteriores a {}", deleted, changeRetention);
+    }
+
+    /**
+     * Reserva {@code count} versiones consecutivas del tenant y devuelve la última. El UPDATE deja
+     * la fila del contador bloqueada hasta el commit: otra escritura RBAC del mismo tenant espera
+     * en este punto, así que ninguna versión se confirma antes que una menor.
+     */
+    private long reserveVersions(String tenant, int count) {
+        // Primer cambio del tenant; con inserts concurrentes el segundo espera y no hace nada
+        jdbcTemplate.update("insert into rbac_versions (tenant_id, version) values (?, 0) on conflict do nothing", tenant);
+        jdbcTemplate.update("update rbac_versions set version = version + ? where tenant_id = ?", count, tenant);
+        return jdbcTemplate.queryForObject("select version from rbac_versions where tenant_id = ?", Long.class, tenant);
+    }
+
+    private void advance(String tenant, long latest) {
+        if (versions.computeIfAbsent(tenant, t -> new AtomicLong()).getAndAccumulate(latest, Math::max) < latest) {
+            replicaRoutingDataSource.stickToPrimary();
+        }
+    }
+
+    private static void evictEntities(SessionFactoryImplementor factory, Class<?> entity, Collection<Long> ids,
+                                      String tenant) {
+        EntityPersister persister = factory.getMappingMetamodel().getEntityDescriptor(entity);
+        EntityDataAccess access = persister.getCacheAccessStrategy();
+        for (Long id : ids) {
+            access.evict(access.generateCacheKey(id, persister, factory, tenant));
+        }
+    }
+
+    private static void evictCollections(SessionFactoryImplementor factory, String role, Collection<Long> ownerIds,
+                                         String tenant) {
+        CollectionPersister persister = factory.getMappingMetamodel().getCollectionDescriptor(role);
+        CollectionDataAccess access = persister.getCacheAccessStrategy();
+        for (Long ownerId : ownerIds) {
+            access.evict(access.generateCacheKey(ownerId, persister, factory, tenant));
+        }
+    }
+
+    private static void evictAll(SessionFactoryImplementor factory) {
+        Cache cache = factory.getCache();
+        cache.evictEntityData(Role.class);
+        cache.evictEntityData(Permission.class);
+        cache.evictEntityData(Resource.class);
+        cache.evictCollectionData(Role.class.getName() + ".permissions");
+        cache.evictCollectionData(Role.class.getName() + ".parents");
+        cache.evictQueryRegions();
+    }
+}
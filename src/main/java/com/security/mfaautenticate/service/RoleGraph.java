@@ -0,0 +1,90 @@
+package com.security.mfaautenticate.service;
+
+import java.util.*;
+
+/**
+ * Recorridos sobre la jerarquía de roles representada como mapa rol -> padres.
+ */
+final class RoleGraph {
+
+    private RoleGraph() {
+    }
+
+    /**
+     * Indica si {@code from} llega a {@code target} subiendo por sus padres (incluido él mismo).
+     * Agregar {@code target -> from} como padre cerraría un ciclo exactamente en ese caso.
+     */
+    static <K> boolean reaches(Map<K, Set<K>> parents, K from, K target) {
+        Deque<K> pending = new ArrayDeque<>();
+        Set<K> visited = new HashSet<>();
+        pending.push(from);
+        while (!pending.isEmpty()) {
+            K current = pending.pop();
+            if (current.equals(target)) {
+                return true;
+            }
+            if (visited.add(current)) {
+                parents.getOrDefault(current, Set.of()).forEach(pending::push);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Algún rol que forma parte de un ciclo, si lo hay.
+     */
+    static <K> Optional<K> findCycle(Map<K, Set<K>> parents) {
+        Map<K, Boolean> state = new HashMap<>(); // false: en el camino actual, true: terminado
+        for (K start : parents.keySet()) {
+            if (state.containsKey(start)) {
+                continue;
+            }
+
+            // DFS iterativo: la jerarquía puede ser profunda
+            Deque<Map.Entry<K, Iterator<K>>> stack = new ArrayDeque<>();
+            state.put(start, false);
+            stack.push(Map.entry(start, parents.getOrDefault(start, Set.of()).iterator()));
+            while (!stack.isEmpty()) {
+                Iterator<K> next = stack.peek().getValue();
+                if (!next.hasNext()) {
+                    state.put(stack.pop().getKey(), true);
+                    continue;
+                }
+                K parent = next.next();
+                Boolean parentState = state.get(parent);
+                if (parentState == null) {
+                    state.put(parent, false);
+                    stack.push(Map.entry(parent, parents.getOrDefault(parent, Set.of()).iterator()));
+                } else if (!parentState) {
+                    return Optional.of(parent);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Invierte rol -> padres en padre -> hijos.
+     */
+    static <K> Map<K, Set<K>> children(Map<K, Set<K>> parents) {
+        Map<K, Set<K>> children = new HashMap<>();
+        parents.forEach((role, roleParents) -> roleParents.forEach(parent ->
+                children.computeIfAbsent(parent, key -> new HashSet<>()).add(role)));
+        return children;
+    }
+
+    /**
+     * Los roles dados más todos sus descendientes.
+     */
+    static <K> Set<K> withDescendants(Map<K, Set<K>> children, Collection<K> roles) {
+        Set<K> result = new HashSet<>();
+        Deque<K> pending = new ArrayDeque<>(roles);
+        while (!pending.isEmpty()) {
+            K current = pending.pop();
+            if (result.add(current)) {
+                pending.addAll(children.getOrDefault(current, Set.of()));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.UserRoleRow;
+import com.security.mfaautenticate.entity.RbacChange;
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.repository.RbacChangeRepository;
+import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * Índice inverso rol -> usuarios con el rol asignado directamente, como un bitset por rol indexado
+ * por id de usuario (1M de usuarios ocupan ~125 KB por rol). Junto con
+ * {@link EffectivePermissions#rolesGranting} responde "quién puede hacer X sobre Y" con un OR de
+ * bitsets y una paginación por cursor sobre los bits, sin recorrer la tabla de usuarios.
+ * Se compila por tenant y versión RBAC: los cambios de usuarios del registro solo releen las asignaciones de
+ * esos usuarios; un hueco en el registro o demasiados cambios recompilan todo. Los cambios de roles
+ * no tocan el índice: un rol borrado deja de conceder permisos y su bitset ya no se consulta.
+ */
+@Component
+@Slf4j
+public class SubjectIndex {
+
+    private static final int MAX_INCREMENTAL_CHANGES = 1000;
+
+    private final UserRepository userRepository;
+    private final RbacChangeRepository changeRepository;
+    private final RbacVersion rbacVersion;
+    private final TransactionTemplate primaryTransaction;
+
+    // Un snapshot independiente por tenant, cada uno con su versión
+    private final Map<String, AtomicReference<Snapshot>> snapshots = new ConcurrentHashMap<>();
+
+    public SubjectIndex(UserRepository userRepository,
+                        RbacChangeRepository changeRepository,
+                        RbacVersion rbacVersion,
+                        PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.changeRepository = changeRepository;
+        this.rbacVersion = rbacVersion;
+        // Igual que EffectivePermissions: se compila desde el primario en una transacción propia
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.primaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Usuarios con alguno de los roles. El bitset devuelto es nuevo y puede modificarse.
+     */
+    public BitSet usersWithAnyRole(Collection<Long> roleIds) {
+        Snapshot current = current();
+
+        BitSet users = new BitSet();
+        for (Long roleId : roleIds) {
+            BitSet members = current.members().get(roleId);
+            if (members != null) {
+                users.or(members);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Bitsets rol -> usuarios vigentes, para análisis en memoria (RbacImpactService). No deben modificarse.
+     */
+    Map<Long, BitSet> members() {
+        return current().members();
+    }
+
+    private Snapshot current() {
+        String tenant = TenantContext.current();
+        AtomicReference<Snapshot> holder = snapshots.get(tenant);
+        if (holder == null) {
+            holder = snapshots.computeIfAbsent(tenant, t -> new AtomicReference<>(Snapshot.EMPTY));
+        }
+        Snapshot current = holder.get();
+        return current.version() == rbacVersion.current(tenant) ? current : refresh(tenant, holder);
+    }
+
+    private Snapshot refresh(String tenant, AtomicReference<Snapshot> holder) {
+        // Se bloquea solo el tenant que se recompila: los chequeos de los demás siguen
+        synchronized (holder) {
+            Snapshot current = holder.get();
+            long version = rbacVersion.current(tenant);
+            if (current.version() == version) {
+                return current;
+            }
+
+            Snapshot next = primaryTransaction.execute(status -> current == Snapshot.EMPTY
+                    ? compile(version)
+                    : update(current, version));
+            holder.set(next);
+            return next;
+        }
+    }
+
+    private Snapshot compile(long version) {
+        Map<Long, BitSet> members = new HashMap<>();
+        try (Stream<UserRoleRow> rows = userRepository.streamUserRoleRows()) {
+            rows.forEach(row -> add(members, row));
+        }
+
+        log.debug("Índice de sujetos compilado para la versión RBAC {}: {} roles", version, members.size());
+        return new Snapshot(version, members);
+    }
+
+    private Snapshot update(Snapshot current, long version) {
+        if (current.version() < changeRepository.findOldestVersion() - 1) {
+            return compile(version);
+        }
+
+        List<RbacChange> changes = changeRepository.findByVersionGreaterThanOrderByVersionAsc(
+                current.version(), Limit.of(MAX_INCREMENTAL_CHANGES + 1));
+        if (changes.size() > MAX_INCREMENTAL_CHANGES) {
+            return compile(version);
+        }
+
+        Set<Long> changedUsers = new HashSet<>();
+        for (RbacChange change : changes) {
+            if (change.getEntityType() == RbacEntityType.USER) {
+                changedUsers.add(change.getEntityId());
+            }
+        }
+        if (changedUsers.isEmpty()) {
+            return current.withVersion(version);
+        }
+
+        // Los bitsets publicados no se modifican: se copian antes de quitar o poner bits
+        Map<Long, BitSet> members = new HashMap<>(current.members());
+        Set<Long> copied = new HashSet<>();
+        members.replaceAll((roleId, users) -> {
+            BitSet copy = null;
+            for (Long userId : changedUsers) {
+                int bit = bit(userId);
+                if (bit >= 0 && users.get(bit)) {
+                    if (copy == null) {
+                        copy = (BitSet) users.clone();
+                        copied.add(roleId);
+                    }
+                    copy.clear(bit);
+                }
+            }
+            return copy == null ? users : copy;
+        });
+
+        for (UserRoleRow row : userRepository.findUserRoleRowsByUserIdIn(changedUsers)) {
+            if (copied.add(row.roleId())) {
+                BitSet users = members.get(row.roleId());
+                members.put(row.roleId(), users == null ? new BitSet() : (BitSet) users.clone());
+            }
+            add(members, row);
+        }
+
+        log.debug("Índice de sujetos {} -> {}: {} usuarios recargados", current.version(), version, changedUsers.size());
+        return new Snapshot(version, members);
+    }
+
+    private static void add(Map<Long, BitSet> members, UserRoleRow row) {
+        int bit = bit(row.userId());
+        if (bit < 0) {
+            log.warn("Id de usuario fuera del rango del índice de sujetos: {}", row.userId());
+            return;
+        }
+        members.computeIfAbsent(row.roleId(), id -> new BitSet()).set(bit);
+    }
+
+    private static int bit(Long userId) {
+        return userId > 0 && userId <= Integer.MAX_VALUE ? userId.intValue() : -1;
+    }
+
+    /**
+     * Estado inmutable compilado para una versión RBAC.
+     */
+    private record Snapshot(long version, Map<Long, BitSet> members) {
+
+        static final Snapshot EMPTY = new Snapshot(-1, Map.of());
+
+        Snapshot withVersion(long version) {
+            return new Snapshot(version, members);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.entity.User;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Último login y última actividad de cada usuario, acumulados en memoria. Cada petición solo
+ * actualiza la entrada del usuario (se queda el instante más reciente); cada
+ * app.activity.flush-interval-ms se escriben todas con un único batch de UPDATE, así que un usuario
+ * recibe como mucho una escritura por intervalo. Si la fecha ya guardada es más reciente que el
+ * intervalo ni siquiera se acumula. Lo pendiente se vuelca también al detener el nodo.
+ */
+@Service
+@Slf4j
+public class UserActivityTracker {
+
+    // greatest ignora los null y nunca retrocede: otro nodo pudo escribir un instante posterior
+    private static final String UPDATE = """
+            update users
+            set last_login_at = greatest(last_login_at, ?), last_seen_at = greatest(last_seen_at, ?)
+            where id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration flushInterval;
+    private final Map<Long, Activity> pending = new ConcurrentHashMap<>();
+
+    public UserActivityTracker(JdbcTemplate jdbcTemplate,
+                               @Value("${app.activity.flush-interval-ms:60000}") long flushIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+    }
+
+    /**
+     * Petición autenticada del usuario. {@code user} es el principal recién cargado: su
+     * lastSeenAt permite descartar la marca sin tocar el buffer.
+     */
+    public void recordSeen(User user) {
+        Instant now = Instant.now();
+        if (user.getLastSeenAt() != null && user.getLastSeenAt().isAfter(now.minus(flushInterval))) {
+            return;
+        }
+        pending.merge(user.getId(), new Activity(null, now), Activity::latest);
+    }
+
+    public void recordLogin(Long userId) {
+        Instant now = Instant.now();
+        pending.merge(userId, new Activity(now, now), Activity::latest);
+    }
+
+    @Scheduled(initialDelayString = "${app.activity.flush-interval-ms:60000}",
+            fixedDelayString = "${app.activity.flush-interval-ms:60000}")
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        // Lo que llegue durante el volcado queda para el siguiente
+        List<Object[]> rows = new ArrayList<>(pending.size());
+        for (Long userId : pending.keySet()) {
+            Activity activity = pending.remove(userId);
+            if (activity != null) {
+                Timestamp login = activity.login() != null ? Timestamp.from(activity.login()) : null;
+                Timestamp seen = Timestamp.from(activity.seen());
+                rows.add(new Object[]{login, seen, userId});
+            }
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE, rows);
+            log.debug("Actividad de {} usuarios volcada", rows.size());
+        } catch (DataAccessException e) {
+            // Son marcas aproximadas: perder un intervalo es preferible a acumular sin límite
+            log.error("No se pudo volcar la actividad de {} usuarios: {}", rows.size(), e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    private record Activity(Instant login, Instant seen) {
+
+        Activity latest(Activity other) {
+            return new Activity(max(login, other.login), max(seen, other.seen));
+        }
+
+        private static Instant max(Instant a, Instant b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.isAfter(b) ? a : b;
+        }
+    }
+}
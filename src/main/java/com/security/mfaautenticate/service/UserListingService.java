@@ -0,0 +1,125 @@
+package com.security.mfaautenticate.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.security.mfaautenticate.dto.UserExportRow;
+import com.security.mfaautenticate.dto.UserFilter;
+import com.security.mfaautenticate.dto.UserPage;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Listados de usuarios para administración: páginas por cursor (keyset sobre id)
+ * y exportación NDJSON en streaming con memoria constante.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserListingService {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public UserPage findPage(UserFilter filter, Long after, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+
+        // Se pide un id extra para saber si existe una página siguiente sin contar filas
+        List<Long> ids = userRepository.findIdsAfter(
+                after == null ? 0L : after,
+                filter.getProvider(),
+                filter.getMfaEnabled(),
+                filter.getRole(),
+                filter.getInactiveSince(),
+                Limit.of(pageSize + 1));
+
+        Long nextCursor = null;
+        if (ids.size() > pageSize) {
+            ids = ids.subList(0, pageSize);
+            nextCursor = ids.get(pageSize - 1);
+        }
+
+        List<User> users = ids.isEmpty() ? List.of() : userRepository.findWithRolesByIdInOrderByIdAsc(ids);
+        return new UserPage(users, nextCursor);
+    }
+
+    /**
+     * Recorre la tabla con un cursor de solo lectura y escribe cada usuario como una línea JSON.
+     * Las filas (usuario x rol) llegan ordenadas por id, así que basta con agrupar filas consecutivas.
+     */
+    @Transactional(readOnly = true)
+    public long exportNdjson(UserFilter filter, OutputStream out) throws IOException {
+        long written = 0;
+
+        try (Stream<UserExportRow> rows = userRepository.streamExportRows(
+                     filter.getProvider(), filter.getMfaEnabled(), filter.getRole(), filter.getInactiveSince());
+             JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setPrettyPrinter(new MinimalPrettyPrinter(""));
+
+            Long currentId = null;
+            Iterator<UserExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                UserExportRow row = iterator.next();
+
+                if (!row.getId().equals(currentId)) {
+                    if (currentId != null) {
+                        endUser(json);
+                        if (++written % FLUSH_EVERY == 0) {
+                            json.flush();
+                        }
+                    }
+                    startUser(json, row);
+                    currentId = row.getId();
+                }
+
+                if (row.getRoleName() != null) {
+                    json.writeString(row.getRoleName());
+                }
+            }
+
+            if (currentId != null) {
+                endUser(json);
+                written++;
+            }
+            json.flush();
+        }
+
+        log.info("Exportados {} usuarios en NDJSON", written);
+        return written;
+    }
+
+    private void startUser(JsonGenerator json, UserExportRow row) throws IOException {
+        json.writeStartObject();
+        json.writeNumberField("id", row.getId());
+        json.writeStringField("email", row.getEmail());
+        json.writeStringField("name", row.getName());
+        json.writeStringField("provider", row.getProvider().name());
+        json.writeBooleanField("mfaEnabled", row.isMfaEnabled());
+        json.writeArrayFieldStart("roles");
+    }
+
+    private void endUser(JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+}
@@ -0,0 +1,159 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.BulkRoleAssignmentRequest;
+import com.security.mfaautenticate.dto.BulkRoleAssignmentResult;
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Asignación y revocación de un rol a muchos usuarios con SQL por conjuntos:
+ * un INSERT ... SELECT o un DELETE sobre user_roles, sin cargar usuarios ni colecciones.
+ * Las filas se escriben por JDBC; los usuarios no están en el caché de segundo nivel,
+ * así que la única invalidación es el avance de la versión RBAC.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserRoleBulkService {
+
+    private final RoleRepository roleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RbacVersion rbacVersion;
+    private final UserStatsService userStatsService;
+
+    @Transactional
+    public BulkRoleAssignmentResult grant(Long roleId, BulkRoleAssignmentRequest request) {
+        Role role = findRole(roleId);
+        UserCriteria criteria = UserCriteria.of(request);
+
+        String missing = " and not exists (select 1 from user_roles ur where ur.user_id = u.id and ur.role_id = ?)";
+
+        // Mismo predicado en las dos sentencias: ids para el registro de cambios y luego el alta por conjunto
+        List<Long> userIds = query("select u.id from users u where " + criteria.sql() + missing,
+                criteria.bind(null, roleId));
+        int inserted = update("insert into user_roles (user_id, role_id) select u.id, ? from users u where "
+                + criteria.sql() + missing, criteria.bind(roleId, roleId));
+
+        userStatsService.recordRoleAssigned(role, inserted);
+        long version = rbacVersion.recordChanges(RbacEntityType.USER, userIds);
+        log.info("Assigned role {} to {} users", role.getName(), inserted);
+        return new BulkRoleAssignmentResult(role.getId(), role.getName(), inserted, version);
+    }
+
+    @Transactional
+    public BulkRoleAssignmentResult revoke(Long roleId, BulkRoleAssignmentRequest request) {
+        Role role = findRole(roleId);
+        UserCriteria criteria = UserCriteria.of(request);
+
+        String matching = "select u.id from users u where " + criteria.sql();
+
+        List<Long> userIds = query("select ur.user_id from user_roles ur where ur.role_id = ? and ur.user_id in ("
+                + matching + ")", criteria.bind(roleId, null));
+        int deleted = update("delete from user_roles where role_id = ? and user_id in (" + matching + ")",
+                criteria.bind(roleId, null));
+
+        userStatsService.recordRoleRemoved(role, deleted);
+        long version = rbacVersion.recordChanges(RbacEntityType.USER, userIds);
+        log.info("Removed role {} from {} users", role.getName(), deleted);
+        return new BulkRoleAssignmentResult(role.getId(), role.getName(), deleted, version);
+    }
+
+    private Role findRole(Long roleId) {
+        return roleRepository.findById(roleId)
+            .filter(TenantContext::owns)
+            .orElseThrow(() -> new RuntimeException("Role not found: " + roleId));
+    }
+
+    private List<Long> query(String sql, List<Object> args) {
+        return jdbcTemplate.query(connection -> prepare(connection, sql, args),
+                (rs, rowNum) -> rs.getLong(1));
+    }
+
+    private int update(String sql, List<Object> args) {
+        return jdbcTemplate.update(connection -> prepare(connection, sql, args));
+    }
+
+    // Los ids viajan como un único parámetro array (= any(?)): sin límite de parámetros ni SQL distinto por tamaño
+    private static PreparedStatement prepare(Connection connection, String sql, List<Object> args) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        for (int i = 0; i < args.size(); i++) {
+            Object arg = args.get(i);
+            if (arg instanceof Long[] ids) {
+                statement.setArray(i + 1, connection.createArrayOf("bigint", ids));
+            } else {
+                statement.setObject(i + 1, arg);
+            }
+        }
+        return statement;
+    }
+
+    /**
+     * Predicado sobre el alias {@code u} de users y sus parámetros, en orden.
+     */
+    private record UserCriteria(String sql, List<Object> params) {
+
+        static UserCriteria of(BulkRoleAssignmentRequest request) {
+            List<String> clauses = new ArrayList<>();
+            List<Object> params = new ArrayList<>();
+
+            if (request.getUserIds() != null) {
+                clauses.add("u.id = any(?)");
+                params.add(request.getUserIds().toArray(Long[]::new));
+            }
+            if (request.getProvider() != null) {
+                clauses.add("u.oauth_provider = ?");
+                params.add(request.getProvider().name());
+            }
+            if (StringUtils.hasText(request.getEmailDomain())) {
+                clauses.add("lower(u.email) like ? escape '\\'");
+                params.add("%@" + escapeLike(request.getEmailDomain().trim().toLowerCase()));
+            }
+            if (request.getMfaEnabled() != null) {
+                clauses.add("u.mfa_enabled = ?");
+                params.add(request.getMfaEnabled());
+            }
+
+            // Un filtro vacío afectaría a todos los usuarios: se exige al menos un criterio
+            if (clauses.isEmpty()) {
+                throw new IllegalArgumentException("Indique userIds o al menos un filtro (provider, emailDomain, mfaEnabled)");
+            }
+            // SQL directo: el filtro de tenant de Hibernate no aplica y se agrega a mano
+            clauses.add("u.tenant_id = ?");
+            params.add(TenantContext.current());
+            return new UserCriteria(String.join(" and ", clauses), params);
+        }
+
+        /**
+         * Parámetros de la sentencia: el id de rol que va antes y/o después del predicado (null si no hay).
+         */
+        List<Object> bind(Long leading, Long trailing) {
+            List<Object> args = new ArrayList<>();
+            if (leading != null) {
+                args.add(leading);
+            }
+            args.addAll(params);
+            if (trailing != null) {
+                args.add(trailing);
+            }
+            return args;
+        }
+
+        private static String escapeLike(String value) {
+            return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.ProviderMfaCount;
+import com.security.mfaautenticate.dto.RoleCount;
+import com.security.mfaautenticate.dto.UserStatsSnapshot;
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.security.TenantContext;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas de usuarios por tenant, servidas desde memoria. Los contadores se siembran con
+ * SQL agregado al arrancar, se actualizan incrementalmente en cada alta, cambio de
+ * MFA o de roles, y se reconcilian periódicamente contra la base de datos.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserStatsService {
+
+    private static final int RATE_WINDOW_MINUTES = 60;
+    private static final int REPORTED_MINUTES = 15;
+
+    private final UserRepository userRepository;
+
+    // Tenant -> contadores; la reconciliación reemplaza el mapa entero
+    private volatile Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    private final Map<String, MinuteRateCounter> logins = new ConcurrentHashMap<>();
+    private final Map<String, MinuteRateCounter> mfaFailures = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${app.stats.reconcile-interval-ms:600000}",
+            fixedDelayString = "${app.stats.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        // Una sola pasada para todos los tenants, agrupada por tenant
+        Map<String, Counters> fresh = TenantContext.callAs(TenantContext.ROOT, () -> {
+            Map<String, Counters> counted = new ConcurrentHashMap<>();
+            for (ProviderMfaCount row : userRepository.countByProviderAndMfa()) {
+                counters(counted, row.getTenant())
+                        .slot(row.getProvider(), Boolean.TRUE.equals(row.getMfaEnabled())).add(row.getTotal());
+            }
+            for (RoleCount row : userRepository.countByRole()) {
+                counters(counted, row.getTenant()).role(row.getRole()).add(row.getTotal());
+            }
+            return counted;
+        });
+        counters = fresh;
+        log.debug("Contadores de usuarios reconciliados con la base de datos ({} tenants)", fresh.size());
+    }
+
+    // ==================== EVENTOS ====================
+
+    public void recordLogin(String tenant) {
+        rate(logins, tenant).increment();
+    }
+
+    public void recordMfaFailure() {
+        rate(mfaFailures, TenantContext.current()).increment();
+    }
+
+    public void recordUserCreated(User user) {
+        AfterCommit.run(() -> {
+            Counters current = counters(user.getTenant());
+            current.slot(user.getOauthProvider(), user.isMfaEnabled()).increment();
+            for (Role role : user.getRoles()) {
+                current.role(role.getName()).increment();
+            }
+        });
+    }
+
+    public void recordMfaChanged(OAuthProvider provider, boolean enabled) {
+        String tenant = TenantContext.current();
+        AfterCommit.run(() -> {
+            Counters current = counters(tenant);
+            current.slot(provider, !enabled).decrement();
+            current.slot(provider, enabled).increment();
+        });
+    }
+
+    public void recordRoleAssigned(Role role) {
+        recordRoleAssigned(role, 1);
+    }
+
+    public void recordRoleRemoved(Role role) {
+        recordRoleRemoved(role, 1);
+    }
+
+    public void recordRoleAssigned(Role role, long users) {
+        AfterCommit.run(() -> counters(role.getTenant()).role(role.getName()).add(users));
+    }
+
+    public void recordRoleRemoved(Role role, long users) {
+        AfterCommit.run(() -> counters(role.getTenant()).role(role.getName()).add(-users));
+    }
+
+    public void recordRoleDeleted(Role role) {
+        AfterCommit.run(() -> counters(role.getTenant()).byRole.remove(role.getName()));
+    }
+
+    // ==================== LECTURA ====================
+
+    /**
+     * Estadísticas del tenant en curso.
+     */
+    public UserStatsSnapshot snapshot() {
+        String tenant = TenantContext.current();
+        Counters current = counters.getOrDefault(tenant, Counters.EMPTY);
+        long total = 0;
+        long withMfa = 0;
+
+        Map<String, Map<String, Long>> byProvider = new LinkedHashMap<>();
+        for (OAuthProvider provider : OAuthProvider.values()) {
+            long disabled = current.slot(provider, false).sum();
+            long enabled = current.slot(provider, true).sum();
+            total += disabled + enabled;
+            withMfa += enabled;
+            byProvider.put(provider.name(), Map.of("total", disabled + enabled, "mfaEnabled", enabled));
+        }
+
+        Map<String, Long> byRole = new TreeMap<>();
+        current.byRole.forEach((role, count) -> byRole.put(role, count.sum()));
+
+        return UserStatsSnapshot.builder()
+                .totalUsers(total)
+                .usersWithMfa(withMfa)
+                .byProvider(byProvider)
+                .byRole(byRole)
+                .loginsPerMinute(rate(logins, tenant).lastMinutes(REPORTED_MINUTES))
+                .mfaFailuresPerMinute(rate(mfaFailures, tenant).lastMinutes(REPORTED_MINUTES))
+                .build();
+    }
+
+    private Counters counters(String tenant) {
+        return counters(counters, tenant);
+    }
+
+    private static Counters counters(Map<String, Counters> byTenant, String tenant) {
+        return byTenant.computeIfAbsent(tenant, key -> new Counters());
+    }
+
+    private static MinuteRateCounter rate(Map<String, MinuteRateCounter> byTenant, String tenant) {
+        return byTenant.computeIfAbsent(tenant, key -> new MinuteRateCounter(RATE_WINDOW_MINUTES));
+    }
+
+    private static final class Counters {
+
+        // Tenant sin usuarios todavía: solo se lee
+        private static final Counters EMPTY = new Counters();
+
+        // [proveedor][0 = sin MFA, 1 = con MFA]
+        private final LongAdder[][] byProviderAndMfa = new LongAdder[OAuthProvider.values().length][2];
+        private final ConcurrentHashMap<String, LongAdder> byRole = new ConcurrentHashMap<>();
+
+        private Counters() {
+            for (LongAdder[] slots : byProviderAndMfa) {
+                slots[0] = new LongAdder();
+                slots[1] = new LongAdder();
+            }
+        }
+
+        private LongAdder slot(OAuthProvider provider, boolean mfaEnabled) {
+            return byProviderAndMfa[provider.ordinal()][mfaEnabled ? 1 : 0];
+        }
+
+        private LongAdder role(String name) {
+            return byRole.computeIfAbsent(name, key -> new LongAdder());
+        }
+    }
+}
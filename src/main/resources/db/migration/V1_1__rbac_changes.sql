@@ -0,0 +1,12 @@
+-- Registro de cambios RBAC. No forma parte del esquema original: las bases marcadas como V1
+-- (baseline-on-migrate) lo reciben aquí. Las que ya lo tenían por ddl-auto lo conservan tal cual.
+
+create table if not exists rbac_changes (
+    id          bigserial                   not null,
+    entity_type varchar(255)                not null check (entity_type in ('ROLE', 'RESOURCE', 'PERMISSION', 'USER')),
+    entity_id   bigint                      not null,
+    occurred_at timestamp(6) with time zone not null,
+    primary key (id)
+);
+
+create index if not exists idx_rbac_changes_occurred_at on rbac_changes (occurred_at);
@@ -0,0 +1,56 @@
+-- Esquema tal como lo generaba Hibernate (ddl-auto) antes de adoptar migraciones versionadas.
+-- Las bases existentes se marcan como V1 (baseline-on-migrate) y no ejecutan este script.
+
+create table resources (
+    id          bigserial    not null,
+    description varchar(255),
+    name        varchar(255) not null unique,
+    path        varchar(255) not null,
+    primary key (id)
+);
+
+create table permissions (
+    id          bigserial    not null,
+    resource_id bigint       not null,
+    operation   varchar(255) not null check (operation in ('CREATE', 'READ', 'UPDATE', 'DELETE')),
+    primary key (id)
+);
+
+create table roles (
+    id          bigserial    not null,
+    description varchar(255),
+    name        varchar(255) not null unique,
+    primary key (id)
+);
+
+create table role_permissions (
+    permission_id bigint not null,
+    role_id       bigint not null,
+    primary key (permission_id, role_id)
+);
+
+create table users (
+    id             bigserial    not null,
+    email          varchar(255) not null,
+    password       varchar(255),
+    name           varchar(255),
+    oauth_provider varchar(255) not null check (oauth_provider in ('LOCAL', 'GOOGLE', 'GITHUB', 'FACEBOOK')),
+    oauth_id       varchar(255) not null,
+    mfa_enabled    boolean,
+    mfa_secret     varchar(255),
+    using_mfa      boolean,
+    primary key (id),
+    unique (oauth_provider, oauth_id)
+);
+
+create table user_roles (
+    role_id bigint not null,
+    user_id bigint not null,
+    primary key (role_id, user_id)
+);
+
+alter table if exists permissions add constraint FKio77ost2pn4qdd6hly0clvca6 foreign key (resource_id) references resources;
+alter table if exists role_permissions add constraint FKegdk29eiy7mdtefy5c7eirr6e foreign key (permission_id) references permissions;
+alter table if exists role_permissions add constraint FKn5fotdgk8d1xvo8nav9uv3muc foreign key (role_id) references roles;
+alter table if exists user_roles add constraint FKh8ciramu9cc9q3qcqiv4ue8a6 foreign key (role_id) references roles;
+alter table if exists user_roles add constraint FKhfh9dx7w3ubf1co1vdev94g3f foreign key (user_id) references users;
@@ -0,0 +1,45 @@
+-- Ids de users, roles, permissions y resources pasan de bigserial/identity a secuencias propias
+-- con incremento 50 (optimizador pooled-lo de Hibernate: cada nextval reserva un bloque de ids).
+-- Se conservan los ids existentes: cada secuencia continúa después de MAX(id).
+-- rbac_changes mantiene su bigserial.
+
+-- Primero identity (columnas creadas por Hibernate 6.0/6.1): PostgreSQL rechaza DROP DEFAULT
+-- sobre una columna identity. Después se quita el default solo donde queda uno (bigserial)
+alter table users alter column id drop identity if exists;
+alter table roles alter column id drop identity if exists;
+alter table permissions alter column id drop identity if exists;
+alter table resources alter column id drop identity if exists;
+
+do $$
+declare
+    table_name_ text;
+begin
+    foreach table_name_ in array array['users', 'roles', 'permissions', 'resources'] loop
+        if exists (select 1
+                   from information_schema.columns
+                   where table_schema = current_schema()
+                     and table_name = table_name_
+                     and column_name = 'id'
+                     and is_identity = 'NO'
+                     and column_default is not null) then
+            execute format('alter table %I alter column id drop default', table_name_);
+        end if;
+    end loop;
+end
+$$;
+
+drop sequence if exists users_id_seq;
+create sequence if not exists users_seq start with 1 increment by 50;
+select setval('users_seq', coalesce((select max(id) from users), 0) + 1, false);
+
+drop sequence if exists roles_id_seq;
+create sequence if not exists roles_seq start with 1 increment by 50;
+select setval('roles_seq', coalesce((select max(id) from roles), 0) + 1, false);
+
+drop sequence if exists permissions_id_seq;
+create sequence if not exists permissions_seq start with 1 increment by 50;
+select setval('permissions_seq', coalesce((select max(id) from permissions), 0) + 1, false);
+
+drop sequence if exists resources_id_seq;
+create sequence if not exists resources_seq start with 1 increment by 50;
+select setval('resources_seq', coalesce((select max(id) from resources), 0) + 1, false);
@@ -0,0 +1,13 @@
+-- Índices para las búsquedas de cada petición. CONCURRENTLY no bloquea escrituras mientras se
+-- construye, pero no puede ejecutarse dentro de una transacción (ver V3__lookup_indexes.sql.conf).
+
+-- Principal del JWT, flujo MFA y chequeos RBAC: lower(u.email) = lower(:email)
+create index concurrently if not exists idx_users_email_lower on users (lower(email));
+
+-- findByPath en cada chequeo de permisos
+create index concurrently if not exists idx_resources_path on resources (path);
+
+-- Las claves primarias empiezan por role_id / permission_id; estos cubren el recorrido
+-- usuario -> roles -> permisos con index-only scans
+create index concurrently if not exists idx_user_roles_user_role on user_roles (user_id, role_id);
+create index concurrently if not exists idx_role_permissions_role_permission on role_permissions (role_id, permission_id);
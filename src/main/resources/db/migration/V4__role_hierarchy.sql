@@ -0,0 +1,14 @@
+-- Jerarquía de roles: role_id hereda los permisos de parent_id (y de los padres de éste).
+-- Los ciclos se rechazan en la aplicación; la base solo impide que un rol sea su propio padre.
+
+create table role_parents (
+    role_id   bigint not null,
+    parent_id bigint not null,
+    primary key (role_id, parent_id),
+    constraint fk_role_parents_role foreign key (role_id) references roles,
+    constraint fk_role_parents_parent foreign key (parent_id) references roles,
+    constraint ck_role_parents_not_self check (role_id <> parent_id)
+);
+
+-- La clave primaria cubre rol -> padres; este cubre padre -> hijos (propagación y borrado)
+create index idx_role_parents_parent on role_parents (parent_id);
@@ -0,0 +1,4 @@
+-- Condición opcional de un permiso (expresión sobre usuario, petición y hora).
+-- Se compila en la aplicación; null significa concesión incondicional.
+
+alter table permissions add column condition_expr varchar(500);
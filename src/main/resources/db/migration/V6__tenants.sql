@@ -0,0 +1,45 @@
+-- Particiones RBAC por tenant. Las filas existentes quedan en el tenant 'default'.
+-- Los nombres de roles y recursos pasan a ser únicos dentro de cada tenant.
+
+alter table roles add column tenant_id varchar(64) not null default 'default';
+alter table resources add column tenant_id varchar(64) not null default 'default';
+alter table permissions add column tenant_id varchar(64) not null default 'default';
+alter table users add column tenant_id varchar(64) not null default 'default';
+alter table rbac_changes add column tenant_id varchar(64) not null default 'default';
+
+-- La aplicación siempre informa el tenant; sin default un insert que lo omita falla
+alter table roles alter column tenant_id drop default;
+alter table resources alter column tenant_id drop default;
+alter table permissions alter column tenant_id drop default;
+alter table users alter column tenant_id drop default;
+alter table rbac_changes alter column tenant_id drop default;
+
+-- Unicidad global de name: roles_name_key/resources_name_key si la creó V1, UK_... si la creó
+-- Hibernate (ddl-auto) en bases anteriores. Se busca por columnas, no por nombre
+do $$
+declare
+    unique_name record;
+begin
+    for unique_name in
+        select tc.table_name, tc.constraint_name
+        from information_schema.table_constraints tc
+        join information_schema.key_column_usage kcu
+             on kcu.constraint_schema = tc.constraint_schema
+            and kcu.constraint_name = tc.constraint_name
+            and kcu.table_name = tc.table_name
+        where tc.table_schema = current_schema()
+          and tc.table_name in ('roles', 'resources')
+          and tc.constraint_type = 'UNIQUE'
+        group by tc.table_name, tc.constraint_name
+        having array_agg(kcu.column_name::text) = array['name']
+    loop
+        execute format('alter table %I drop constraint %I', unique_name.table_name, unique_name.constraint_name);
+    end loop;
+end
+$$;
+
+alter table roles add constraint uk_roles_tenant_name unique (tenant_id, name);
+alter table resources add constraint uk_resources_tenant_name unique (tenant_id, name);
+
+-- Versión de cada tenant: max(id) por tenant_id y lectura del delta desde una versión
+create index idx_rbac_changes_tenant_id on rbac_changes (tenant_id, id);
@@ -0,0 +1,17 @@
+-- Registro de auditoría: decisiones de autorización, verificaciones MFA y logins.
+-- Se inserta por lotes desde la aplicación; las consultas son por rango de tiempo dentro del tenant.
+
+create table audit_events (
+    id          bigserial                   not null,
+    tenant_id   varchar(64)                 not null,
+    occurred_at timestamp(6) with time zone not null,
+    type        varchar(32)                 not null check (type in ('AUTHZ_ALLOW', 'AUTHZ_DENY', 'MFA_SUCCESS', 'MFA_FAILURE', 'LOGIN')),
+    email       varchar(255),
+    resource    varchar(255),
+    operation   varchar(16) check (operation in ('CREATE', 'READ', 'UPDATE', 'DELETE')),
+    detail      varchar(255),
+    primary key (id)
+);
+
+create index idx_audit_events_tenant_occurred_at on audit_events (tenant_id, occurred_at);
+create index idx_audit_events_tenant_email_occurred_at on audit_events (tenant_id, email, occurred_at);
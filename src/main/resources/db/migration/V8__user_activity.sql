@@ -0,0 +1,5 @@
+-- Último login y última actividad por usuario. Los escribe la aplicación con un UPDATE por lotes
+-- como mucho una vez por intervalo y usuario (app.activity.flush-interval-ms).
+
+alter table users add column last_login_at timestamp(6) with time zone;
+alter table users add column last_seen_at timestamp(6) with time zone;
@@ -0,0 +1,24 @@
+-- La versión RBAC deja de ser el id de rbac_changes. Un id IDENTITY se asigna al insertar, no al
+-- confirmar: una transacción con un id menor que confirma después que otra con uno mayor quedaba
+-- detrás del cursor "id > última vista" y su cambio se perdía para siempre.
+-- Ahora cada tenant tiene un contador que la transacción incrementa y mantiene bloqueado hasta el
+-- commit, y cada cambio guarda la versión que le tocó.
+
+create table rbac_versions (
+    tenant_id varchar(64) not null,
+    version   bigint      not null,
+    primary key (tenant_id)
+);
+
+alter table rbac_changes add column version bigint;
+
+-- Los cambios existentes conservan su número como versión: las versiones, ETags y ?since= que
+-- ya tienen los clientes siguen siendo válidos y los contadores continúan desde ahí
+update rbac_changes set version = id;
+alter table rbac_changes alter column version set not null;
+
+insert into rbac_versions (tenant_id, version)
+select tenant_id, max(version) from rbac_changes group by tenant_id;
+
+drop index if exists idx_rbac_changes_tenant_id;
+create unique index uk_rbac_changes_tenant_version on rbac_changes (tenant_id, version);
@@ -0,0 +1,193 @@
+package com.security.mfaautenticate;
+
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.security.TenantContext;
+import com.security.mfaautenticate.service.RbacService;
+import com.security.mfaautenticate.service.RbacVersion;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Migraciones Flyway sobre un PostgreSQL real (binarios embebidos, sin Docker): una base vacía y
+ * bases creadas por la aplicación anterior con ddl-auto, con ids bigserial (Hibernate 6.2+) o
+ * identity (Hibernate 6.0/6.1). En todos los casos la aplicación debe arrancar con
+ * {@code ddl-auto: validate} y conservar los datos existentes.
+ */
+@DisabledIfSystemProperty(named = "user.name", matches = "root",
+        disabledReason = "initdb de PostgreSQL no se ejecuta como root")
+class FlywayMigrationTests {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private static EmbeddedPostgres postgres;
+
+    @BeforeAll
+    static void startPostgres() throws IOException {
+        postgres = EmbeddedPostgres.start();
+    }
+
+    @AfterAll
+    static void stopPostgres() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void emptyDatabaseIsCreatedByMigrations() {
+        String database = createDatabase();
+
+        try (ConfigurableApplicationContext context = start(database)) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            assertThat(jdbcTemplate.queryForList(
+                    "select type from flyway_schema_history where success order by installed_rank", String.class))
+                    .isNotEmpty()
+                    .doesNotContain("BASELINE");
+            assertThat(jdbcTemplate.queryForList("select name from roles", String.class))
+                    .containsExactlyInAnyOrder("ADMIN", "USER");
+            assertNamesAreUniquePerTenant(context);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"bigserial", "bigint generated by default as identity"})
+    void databaseCreatedByHibernateIsUpgraded(String idColumn) throws IOException {
+        String database = createDatabase();
+        String schema = new ClassPathResource("db/hibernate-baseline-schema.sql")
+                .getContentAsString(StandardCharsets.UTF_8)
+                .replace("id bigserial", "id " + idColumn);
+        new ResourceDatabasePopulator(new ByteArrayResource(schema.getBytes(StandardCharsets.UTF_8)))
+                .execute(postgres.getDatabase("postgres", database));
+
+        try (ConfigurableApplicationContext context = start(database)) {
+            JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+            assertThat(jdbcTemplate.queryForObject(
+                    "select version from flyway_schema_history where type = 'BASELINE'", String.class))
+                    .isEqualTo("1");
+
+            // Los datos y las relaciones existentes se conservan
+            assertThat(jdbcTemplate.queryForList("select email from users order by id", String.class))
+                    .containsExactly("admin@example.com", "user@example.com");
+            assertThat(jdbcTemplate.queryForList(
+                    "select r.name from user_roles ur join roles r on r.id = ur.role_id where ur.user_id = 2",
+                    String.class)).containsExactly("USER");
+
+            // Las secuencias nuevas continúan después de los ids existentes
+            Role role = context.getBean(RbacService.class).createRole("EDITOR", null);
+            assertThat(role.getId()).isGreaterThan(2L);
+            assertThat(jdbcTemplate.queryForObject(
+                    "select count(*) from information_schema.columns where table_name in ('users', 'roles', "
+                            + "'permissions', 'resources') and column_name = 'id' "
+                            + "and (is_identity = 'YES' or column_default is not null)", Integer.class))
+                    .isZero();
+            assertNamesAreUniquePerTenant(context);
+        }
+    }
+
+    /**
+     * Una escritura RBAC espera a que confirme la anterior del mismo tenant: las versiones se hacen
+     * visibles en orden y un cursor "versión > última vista" no se salta ningún cambio (V9).
+     */
+    @Test
+    void rbacVersionsAreCommittedInOrder() throws Exception {
+        try (ConfigurableApplicationContext context = start(createDatabase())) {
+            RbacVersion rbacVersion = context.getBean(RbacVersion.class);
+            TransactionTemplate transaction = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            CountDownLatch recorded = new CountDownLatch(1);
+            CountDownLatch commit = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> first = executor.submit(() -> transaction.executeWithoutResult(status -> {
+                    rbacVersion.recordChange(RbacEntityType.ROLE, 1L);
+                    recorded.countDown();
+                    awaitUninterruptibly(commit);
+                }));
+                assertThat(recorded.await(30, TimeUnit.SECONDS)).isTrue();
+                long before = rbacVersion.current();
+
+                Future<?> second = executor.submit(() -> rbacVersion.recordChange(RbacEntityType.ROLE, 2L));
+                assertThatThrownBy(() -> second.get(500, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+                commit.countDown();
+                first.get(30, TimeUnit.SECONDS);
+                second.get(30, TimeUnit.SECONDS);
+                JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+                assertThat(jdbcTemplate.queryForList(
+                        "select entity_id from rbac_changes where version > ? order by version", Long.class, before))
+                        .containsExactly(1L, 2L);
+                assertThat(rbacVersion.current()).isEqualTo(before + 2);
+            } finally {
+                commit.countDown();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tras V6 los nombres de roles y recursos se repiten entre tenants, pero no dentro de uno.
+     */
+    private static void assertNamesAreUniquePerTenant(ConfigurableApplicationContext context) {
+        RbacService rbacService = context.getBean(RbacService.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        TenantContext.runAs("acme", () -> {
+            rbacService.createRole("ADMIN", null);
+            rbacService.createResource("Documents", null, "documents");
+        });
+        assertThat(jdbcTemplate.queryForObject("select count(*) from roles where name = 'ADMIN'", Integer.class))
+                .isEqualTo(2);
+        assertThatThrownBy(() -> jdbcTemplate.update(
+                "insert into roles (id, tenant_id, name) values (nextval('roles_seq'), 'acme', 'ADMIN')"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private static String createDatabase() {
+        String database = "migration_" + DATABASES.incrementAndGet();
+        new JdbcTemplate(postgres.getPostgresDatabase()).execute("create database " + database);
+        return database;
+    }
+
+    private static ConfigurableApplicationContext start(String database) {
+        // Configuración de application.yml (Flyway + validate) con el PostgreSQL embebido
+        return new SpringApplicationBuilder(MfaAutenticateApplication.class).run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", database),
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=",
+                "--spring.jpa.show-sql=false",
+                "--server.port=0",
+                "--app.rbac.snapshot.path=");
+    }
+}
@@ -0,0 +1,705 @@
+package com.security.mfaautenticate;
+
+import com.security.mfaautenticate.dto.MfaStateRow;
+import com.security.mfaautenticate.entity.*;
+import com.security.mfaautenticate.repository.PermissionRepository;
+import com.security.mfaautenticate.repository.ResourceRepository;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.repository.UserRepository;
+import com.security.mfaautenticate.security.ConditionContext;
+import com.security.mfaautenticate.security.JwtTokenProvider;
+import com.security.mfaautenticate.security.TenantContext;
+import com.security.mfaautenticate.service.AuditLog;
+import com.security.mfaautenticate.service.RbacService;
+import com.security.mfaautenticate.service.RbacVersion;
+import com.security.mfaautenticate.service.UserActivityTracker;
+import com.security.mfaautenticate.service.UserStatsService;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Verifica el número exacto de sentencias SQL por endpoint: ninguna lectura debe
+ * crecer con la cantidad de usuarios, roles o permisos (sin N+1).
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+class QueryCountTests {
+
+    private static final String ADMIN_EMAIL = "admin@example.com";
+    private static final int REGULAR_USERS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JwtTokenProvider tokenProvider;
+
+    @Value("${app.jwt.secret}")
+    private String jwtSecret;
+
+    @Autowired
+    private RbacService rbacService;
+
+    @Autowired
+    private RbacVersion rbacVersion;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private UserActivityTracker userActivityTracker;
+
+    @Autowired
+    private UserStatsService userStatsService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @Autowired
+    private ResourceRepository resourceRepository;
+
+    private Statistics statistics;
+    private Long adminId;
+    private Long userId;
+
+    @BeforeEach
+    void setUp() {
+        List<Long> previousUsers = userRepository.findAll().stream().map(User::getId).toList();
+        userRepository.deleteAll();
+        roleRepository.findByName("EDITOR").ifPresent(roleRepository::delete);
+        permissionRepository.deleteAll();
+        resourceRepository.deleteAll();
+
+        Resource documents = resource("Documentos", "documents");
+        Resource products = resource("Productos", "products");
+
+        Role editor = new Role();
+        editor.setName("EDITOR");
+        editor.getPermissions().add(permission(documents, Operation.READ));
+        editor.getPermissions().add(permission(documents, Operation.UPDATE));
+        editor.getPermissions().add(permission(products, Operation.READ));
+        editor = roleRepository.save(editor);
+
+        Role admin = roleRepository.findByName("ADMIN").orElseThrow();
+        Role user = roleRepository.findByName("USER").orElseThrow();
+
+        adminId = userRepository.save(user(ADMIN_EMAIL, "admin", Set.of(admin))).getId();
+        for (int i = 0; i < REGULAR_USERS; i++) {
+            userId = userRepository.save(user("user" + i + "@example.com", "user-" + i, Set.of(user, editor))).getId();
+        }
+
+        // Los datos se insertan por repositorio: se invalida la caché como lo haría RbacService
+        rbacVersion.recordChange(RbacEntityType.ROLE, editor.getId());
+        rbacVersion.recordChange(RbacEntityType.RESOURCE, documents.getId());
+        rbacVersion.recordChanges(RbacEntityType.USER, previousUsers);
+        rbacVersion.recordChanges(RbacEntityType.USER, userRepository.findAll().stream().map(User::getId).toList());
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void profileLoadsPrincipalWithSingleQuery() throws Exception {
+        assertStatements(1, "/api/user/profile");
+    }
+
+    @Test
+    void adminUserListingIsKeysetPlusFetch() throws Exception {
+        assertStatements(3, "/api/admin/users");
+        assertStatements(3, "/api/admin/users?size=2&after=" + adminId);
+        assertStatements(3, "/api/admin/users?provider=GOOGLE&mfaEnabled=false&role=EDITOR");
+    }
+
+    @Test
+    void adminUserExportStreamsWithSingleQuery() throws Exception {
+        String body = assertStatements(2, "/api/admin/users/export").getResponse().getContentAsString();
+
+        assertThat(body.lines()).hasSize(REGULAR_USERS + 1);
+        assertThat(body.lines()).allMatch(line -> line.startsWith("{\"id\":") && line.endsWith("}"));
+    }
+
+    @Test
+    void adminStatsAreServedFromMemory() throws Exception {
+        assertStatements(1, "/api/admin/stats");
+    }
+
+    @Test
+    void adminStatsAreScopedToTheAdminTenant() throws Exception {
+        TenantContext.runAs("acme", () -> {
+            Role admin = rbacService.createRole("ADMIN", null);
+            Role auditor = rbacService.createRole("AUDITOR_ACME", null);
+            userRepository.save(user("admin@acme.com", "acme-admin", Set.of(admin)));
+            userRepository.save(user(ADMIN_EMAIL, "acme-admin-2", Set.of(admin, auditor)));
+        });
+        try {
+            userStatsService.reconcile();
+
+            mockMvc.perform(get("/api/admin/stats")
+                            .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.tenant").value(TenantContext.DEFAULT))
+                    .andExpect(jsonPath("$.totalUsers").value(REGULAR_USERS + 1))
+                    .andExpect(jsonPath("$.byRole.ADMIN").value(1))
+                    .andExpect(jsonPath("$.byRole.AUDITOR_ACME").doesNotExist());
+            mockMvc.perform(get("/api/admin/stats")
+                            .header("Authorization", "Bearer " + tokenProvider.generateToken("admin@acme.com", "acme")))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.tenant").value("acme"))
+                    .andExpect(jsonPath("$.totalUsers").value(2))
+                    .andExpect(jsonPath("$.byRole.ADMIN").value(2))
+                    .andExpect(jsonPath("$.byRole.EDITOR").doesNotExist());
+        } finally {
+            TenantContext.runAs("acme", () -> {
+                userRepository.deleteAll();
+                roleRepository.deleteAll();
+            });
+            userStatsService.reconcile();
+        }
+    }
+
+    @Test
+    void rbacCatalogEndpointsRenderOncePerVersion() throws Exception {
+        assertStatements(4, "/api/rbac/roles");
+        assertStatements(2, "/api/rbac/permissions");
+        assertStatements(2, "/api/rbac/resources");
+
+        assertStatements(1, "/api/rbac/roles");
+        assertStatements(1, "/api/rbac/permissions");
+        assertStatements(1, "/api/rbac/resources");
+    }
+
+    @Test
+    void rbacConditionalGetAnswersNotModifiedWithoutQueryingCatalogs() throws Exception {
+        MvcResult first = assertStatements(4, "/api/rbac/roles");
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isEqualTo("\"rbac-roles-" + rbacVersion.current() + "\"");
+
+        // Solo la carga del principal: la versión se compara en memoria
+        assertStatements(1, get("/api/rbac/roles").header(HttpHeaders.IF_NONE_MATCH, etag),
+                status().isNotModified());
+        assertStatements(1, get("/api/rbac/users/" + userId)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"rbac-user-" + userId + "-" + rbacVersion.current() + "\""),
+                status().isNotModified());
+
+        rbacVersion.recordChange(RbacEntityType.ROLE, 0L);
+        assertStatements(4, get("/api/rbac/roles").header(HttpHeaders.IF_NONE_MATCH, etag), status().isOk());
+    }
+
+    @Test
+    void rbacChangesReturnOnlyModifiedEntities() throws Exception {
+        long since = rbacVersion.current();
+        Role role = rbacService.createRole("AUDITOR", "Solo lectura");
+        rbacService.assignRoleToUser(userId, role.getId());
+        rbacService.removeRoleFromUser(userId, role.getId());
+        rbacService.deleteRole(role.getId());
+
+        String body = assertStatements(7, "/api/rbac/changes?since=" + since).getResponse().getContentAsString();
+        assertThat(body)
+                .contains("\"full\":false")
+                .contains("\"roles\":{\"upserted\":[],\"deleted\":[" + role.getId() + "]}")
+                .contains("\"id\":" + userId)
+                .doesNotContain("AUDITOR");
+
+        assertStatements(1, "/api/rbac/changes?since=" + rbacVersion.current());
+    }
+
+    @Test
+    void deletingAMissingEntityIsNotFoundAndRecordsNoChange() throws Exception {
+        long version = rbacVersion.current();
+        for (String collection : List.of("roles", "resources", "permissions")) {
+            mockMvc.perform(delete("/api/rbac/" + collection + "/" + Long.MAX_VALUE)
+                            .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL)))
+                    .andExpect(status().isNotFound());
+        }
+        assertThat(rbacVersion.current()).isEqualTo(version);
+    }
+
+    @Test
+    void bulkRoleAssignmentIsSetBased() throws Exception {
+        Role role = rbacService.createRole("BULK", null);
+        long since = rbacVersion.current();
+
+        // El dominio se compara sin distinguir mayúsculas; admin@example.com también coincide
+        bulk(role, "grant", "{\"emailDomain\":\"EXAMPLE.com\",\"mfaEnabled\":false}")
+                .andExpect(jsonPath("$.affected").value(REGULAR_USERS + 1))
+                .andExpect(jsonPath("$.version").value(rbacVersion.current()));
+        bulk(role, "grant", "{\"provider\":\"GOOGLE\"}")
+                .andExpect(jsonPath("$.affected").value(0));
+        assertThat(rbacVersion.current()).isEqualTo(since + REGULAR_USERS + 1);
+        assertThat(rbacService.getUserRolesView(userId).orElseThrow().roles()).anyMatch(r -> r.name().equals("BULK"));
+
+        bulk(role, "revoke", "{\"userIds\":[" + userId + ", " + adminId + "]}")
+                .andExpect(jsonPath("$.affected").value(2));
+        assertThat(rbacService.getUserRolesView(userId).orElseThrow().roles()).noneMatch(r -> r.name().equals("BULK"));
+
+        bulk(role, "revoke", "{}").andExpect(status().isBadRequest());
+        bulk(role, "revoke", "{\"emailDomain\":\"example.com\"}")
+                .andExpect(jsonPath("$.affected").value(REGULAR_USERS - 1));
+        rbacService.deleteRole(role.getId());
+    }
+
+    @Test
+    void resourceSubjectsComeFromTheInvertedIndex() throws Exception {
+        Long documents = resourceRepository.findByName("Documentos").orElseThrow().getId();
+        String url = "/api/rbac/resources/" + documents + "/subjects?operation=UPDATE";
+        String token = tokenProvider.generateToken(ADMIN_EMAIL);
+        mockMvc.perform(get(url + "&size=2").header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+
+        // Principal + página de usuarios; roles y usuarios con el permiso salen de los índices
+        String body = assertStatements(2, url + "&size=2").getResponse().getContentAsString();
+        assertThat(body)
+                .contains("\"total\":" + REGULAR_USERS)
+                .contains("\"nextCursor\":")
+                .doesNotContain(ADMIN_EMAIL);
+
+        // Una asignación solo recarga los roles del usuario modificado: cada índice lee el registro
+        // de cambios (2 + 2) y el de sujetos, además, las filas de ese usuario
+        Role editor = roleRepository.findByName("EDITOR").orElseThrow();
+        rbacService.assignRoleToUser(adminId, editor.getId());
+        assertStatements(7, url + "&size=2&after=0");
+        mockMvc.perform(get(url + "&size=10").header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.total").value(REGULAR_USERS + 1))
+                .andExpect(jsonPath("$.users[0].email").value(ADMIN_EMAIL))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        mockMvc.perform(get("/api/rbac/resources/" + documents + "/subjects?operation=DELETE")
+                        .header("Authorization", "Bearer " + token))
+                .andExpect(jsonPath("$.total").value(0))
+                .andExpect(jsonPath("$.roles").isEmpty());
+    }
+
+    @Test
+    void impactAnalysisRunsInMemory() throws Exception {
+        Role editor = roleRepository.findByName("EDITOR").orElseThrow();
+        Role admin = roleRepository.findByName("ADMIN").orElseThrow();
+        Long documents = resourceRepository.findByName("Documentos").orElseThrow().getId();
+        Long update = permissionRepository.findAll().stream()
+                .filter(p -> p.getResource().getId().equals(documents) && p.getOperation() == Operation.UPDATE)
+                .findFirst().orElseThrow().getId();
+        String token = tokenProvider.generateToken(ADMIN_EMAIL);
+        mockMvc.perform(get("/api/rbac/resources/" + documents + "/subjects?operation=READ")
+                .header("Authorization", "Bearer " + token)).andExpect(status().isOk());
+
+        // Solo la carga del principal: el diff sale de los snapshots compilados
+        String body = assertStatements(1, post("/api/rbac/impact?limit=2").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"change\":\"REMOVE_PERMISSION_FROM_ROLE\",\"roleId\":" + editor.getId()
+                                + ",\"permissionId\":" + update + "}"),
+                status().isOk()).getResponse().getContentAsString();
+        assertThat(body)
+                .contains("\"usersAffected\":" + REGULAR_USERS)
+                .contains("\"operation\":\"UPDATE\",\"gained\":0,\"lost\":" + REGULAR_USERS)
+                .doesNotContain("\"operation\":\"READ\"");
+
+        mockMvc.perform(post("/api/rbac/impact").header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"change\":\"DELETE_ROLE\",\"roleId\":" + editor.getId() + "}"))
+                .andExpect(jsonPath("$.usersAffected").value(REGULAR_USERS))
+                .andExpect(jsonPath("$.entries.length()").value(3));
+
+        // ADMIN heredaría de EDITOR: el administrador gana los tres permisos
+        mockMvc.perform(post("/api/rbac/impact").header("Authorization", "Bearer " + token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"change\":\"ADD_PARENT\",\"roleId\":" + admin.getId()
+                                + ",\"parentId\":" + editor.getId() + "}"))
+                .andExpect(jsonPath("$.usersAffected").value(1))
+                .andExpect(jsonPath("$.entries[0].gainedUsers[0]").value(adminId));
+
+        // Nada se aplicó
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE)).isTrue();
+    }
+
+    @Test
+    void mfaEndpointsUpdateAllAccountsWithOneStatement() throws Exception {
+        // Segunda cuenta con el mismo email desde otro proveedor
+        userRepository.save(User.builder()
+                .email("USER0@example.com")
+                .name("user-0-github")
+                .oauthProvider(OAuthProvider.GITHUB)
+                .oauthId("user-0-github")
+                .build());
+
+        String body = assertStatements(2, post("/api/auth/mfa/setup").param("email", "user0@example.com"),
+                status().isOk()).getResponse().getContentAsString();
+        String secret = body.replaceAll(".*\"secret\":\"([A-Z2-7]+)\".*", "$1");
+        assertThat(userRepository.findMfaStateByEmail("user0@example.com"))
+                .hasSize(2)
+                .allMatch(account -> secret.equals(account.mfaSecret()));
+
+        String code = String.format("%06d", new GoogleAuthenticator().getTotpPassword(secret));
+        String verified = assertStatements(3, post("/api/auth/mfa/verify").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"email\":\"user0@example.com\",\"code\":\"" + code + "\"}"), status().isOk())
+                .getResponse().getContentAsString();
+        String token = verified.replaceAll(".*\"token\":\"([^\"]+)\".*", "$1");
+        assertThat(tokenProvider.getValidClaims(token).get(JwtTokenProvider.AMR_CLAIM, List.class)).contains("mfa");
+        assertThat(userRepository.findMfaStateByEmail("user0@example.com")).allMatch(MfaStateRow::mfaEnabled);
+
+        assertStatements(2, get("/api/auth/mfa/status").param("email", "user0@example.com"), status().isOk());
+        assertStatements(3, post("/api/auth/mfa/disable").param("email", "user0@example.com"), status().isOk());
+        assertThat(userRepository.findMfaStateByEmail("user0@example.com"))
+                .allMatch(account -> !account.mfaEnabled() && account.mfaSecret() == null);
+    }
+
+    @Test
+    void rbacUserEndpointsDoNotGrowWithUsers() throws Exception {
+        assertStatements(3, "/api/rbac/users");
+        assertStatements(2, "/api/rbac/users/" + userId);
+    }
+
+    @Test
+    void rbacUserListIsNotConditional() throws Exception {
+        String token = tokenProvider.generateToken(ADMIN_EMAIL);
+        MockHttpServletRequestBuilder request = get("/api/rbac/users?mfaEnabled=true")
+                .header("Authorization", "Bearer " + token);
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(jsonPath("$.users.length()").value(0));
+
+        // Activar MFA no registra un cambio RBAC: la lista no puede depender de la versión
+        long version = rbacVersion.current();
+        User user = userRepository.findByEmail("user0@example.com").orElseThrow();
+        user.setMfaEnabled(true);
+        userRepository.save(user);
+        assertThat(rbacVersion.current()).isEqualTo(version);
+        mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users[0].email").value("user0@example.com"));
+    }
+
+    @Test
+    void permissionChecksDoNotMaterializeTheGraph() {
+        // Los permisos efectivos y el trie de rutas se compilan una vez por versión RBAC
+        rbacService.hasPermission("user0@example.com", "documents", Operation.READ);
+        rbacService.hasPermission("user0@example.com", "products", Operation.READ);
+
+        // Queda una sola sentencia por chequeo: los roles directos del usuario
+        statistics.clear();
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE)).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        assertThat(rbacService.hasPermission("user0@example.com", "products", Operation.DELETE)).isFalse();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        statistics.clear();
+        assertThat(rbacService.isAdmin(ADMIN_EMAIL)).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+        // El email se compara normalizado (índice sobre lower(email))
+        assertThat(rbacService.isAdmin(ADMIN_EMAIL.toUpperCase())).isTrue();
+        assertThat(rbacService.hasPermission("USER0@example.com", "documents", Operation.UPDATE)).isTrue();
+    }
+
+    @Test
+    void conditionalPermissionsAreEvaluatedInMemory() {
+        Long documents = resourceRepository.findByName("Documentos").orElseThrow().getId();
+        Long update = permissionRepository.findAll().stream()
+                .filter(p -> p.getResource().getId().equals(documents) && p.getOperation() == Operation.UPDATE)
+                .findFirst().orElseThrow().getId();
+        rbacService.updatePermissionCondition(update, "user.mfaEnabled || request.var.owner == user.id");
+        assertThatThrownBy(() -> rbacService.updatePermissionCondition(update, "user.secret == 'x'"))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        User user = userRepository.findByEmail("user0@example.com").orElseThrow();
+        ConditionContext plain = new ConditionContext() {
+            @Override
+            public User user() {
+                return user;
+            }
+        };
+        ConditionContext owner = new ConditionContext() {
+            @Override
+            public User user() {
+                return user;
+            }
+
+            @Override
+            public String pathVariable(String name) {
+                return String.valueOf(user.getId());
+            }
+        };
+        rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE, plain);
+
+        // La condición no agrega sentencias: se evalúa contra el usuario ya autenticado
+        statistics.clear();
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE, plain)).isFalse();
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE, owner)).isTrue();
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.READ, plain)).isTrue();
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+
+        // Sin contexto la condición no se cumple
+        assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE)).isFalse();
+    }
+
+    @Test
+    void inheritedPermissionsAreCheckedInConstantStatements() {
+        Resource reports = resource("Reportes", "reports");
+        Permission export = permission(reports, Operation.CREATE);
+        rbacVersion.recordChange(RbacEntityType.RESOURCE, reports.getId());
+
+        // Cadena BASE <- NIVEL1 <- ... <- NIVEL5: solo BASE tiene la concesión
+        Role base = rbacService.createRole("BASE", null);
+        rbacService.assignPermissionToRole(base.getId(), export.getId());
+        Role child = base;
+        for (int level = 1; level <= 5; level++) {
+            Role next = rbacService.createRole("NIVEL" + level, null);
+            rbacService.assignParentToRole(next.getId(), child.getId());
+            child = next;
+        }
+        Role deepest = child;
+        rbacService.assignRoleToUser(userId, deepest.getId());
+        String email = userRepository.findById(userId).orElseThrow().getEmail();
+
+        rbacService.hasPermission(email, "reports", Operation.CREATE);
+        statistics.clear();
+        assertThat(rbacService.hasPermission(email, "reports", Operation.CREATE)).isTrue();
+        assertThat(rbacService.hasPermission(email, "reports", Operation.DELETE)).isFalse();
+        // Un chequeo = roles directos del usuario (la ruta se resuelve en el trie compilado)
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+
+        assertThatThrownBy(() -> rbacService.assignParentToRole(base.getId(), deepest.getId()))
+                .hasMessageContaining("cycle");
+
+        // Cortar la cadena recalcula solo los descendientes del rol modificado
+        Role level3 = roleRepository.findByName("NIVEL3").orElseThrow();
+        Role level2 = roleRepository.findByName("NIVEL2").orElseThrow();
+        rbacService.removeParentFromRole(level3.getId(), level2.getId());
+        assertThat(rbacService.hasPermission(email, "reports", Operation.CREATE)).isFalse();
+
+        rbacService.removeRoleFromUser(userId, deepest.getId());
+        for (int level = 5; level >= 1; level--) {
+            rbacService.deleteRole(roleRepository.findByName("NIVEL" + level).orElseThrow().getId());
+        }
+        rbacService.deleteRole(base.getId());
+    }
+
+    @Test
+    void stepUpIsDecidedFromTokenClaims() throws Exception {
+        // Principal + chequeo de admin en todos los casos: amr y auth_time salen del token ya verificado
+        MvcResult challenged = assertStatements(2, tokenProvider.generateToken(ADMIN_EMAIL),
+                get("/api/test/sensitive"), status().isUnauthorized());
+        assertThat(challenged.getResponse().getHeader(HttpHeaders.WWW_AUTHENTICATE))
+                .contains("error=\"insufficient_user_authentication\"")
+                .contains("max_age=300");
+
+        assertStatements(2, tokenProvider.generateMfaToken(ADMIN_EMAIL), get("/api/test/sensitive"), status().isOk());
+
+        // MFA verificado hace una hora: supera maxAuthAge
+        Instant verifiedAt = Instant.now().minus(Duration.ofHours(1));
+        String stale = Jwts.builder()
+                .subject(ADMIN_EMAIL)
+                .issuedAt(Date.from(verifiedAt))
+                .expiration(Date.from(Instant.now().plus(Duration.ofHours(1))))
+                .claim(JwtTokenProvider.AMR_CLAIM, List.of("fed", "otp", "mfa"))
+                .claim(JwtTokenProvider.AUTH_TIME_CLAIM, verifiedAt.getEpochSecond())
+                .signWith(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+        assertStatements(2, stale, get("/api/test/sensitive"), status().isUnauthorized());
+    }
+
+    @Test
+    void auditEventsAreWrittenOffTheRequestPath() throws Exception {
+        auditLog.flush();
+        long written = auditLog.stats().written();
+
+        // Las decisiones no agregan sentencias a la petición: solo se publican en memoria
+        assertStatements(2, tokenProvider.generateToken(ADMIN_EMAIL), get("/api/test/sensitive"),
+                status().isUnauthorized());
+        assertStatements(2, tokenProvider.generateMfaToken(ADMIN_EMAIL), get("/api/test/sensitive"), status().isOk());
+
+        auditLog.flush();
+        assertThat(auditLog.stats().written()).isEqualTo(written + 2);
+        assertThat(auditLog.stats().pending()).isZero();
+
+        mockMvc.perform(get("/api/admin/audit?type=AUTHZ_DENY&email=" + ADMIN_EMAIL + "&size=1")
+                        .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events[0].resource").value("test/sensitive"))
+                .andExpect(jsonPath("$.events[0].detail").value("mfa step-up required"));
+        mockMvc.perform(get("/api/admin/audit?type=AUTHZ_ALLOW&email=" + ADMIN_EMAIL)
+                        .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.events[0].operation").value("READ"))
+                .andExpect(jsonPath("$.events[0].detail").value("admin"));
+    }
+
+    @Test
+    void userActivityIsCoalescedIntoBatchedUpdates() throws Exception {
+        userActivityTracker.flush();
+
+        // Marcar actividad no agrega sentencias a la petición
+        assertStatements(1, "/api/user/profile");
+        assertStatements(1, "/api/user/profile");
+        userActivityTracker.flush();
+        Instant seen = userRepository.findByEmail(ADMIN_EMAIL).orElseThrow().getLastSeenAt();
+        assertThat(seen).isNotNull();
+
+        // Dentro del intervalo la fecha guardada basta: no se vuelve a escribir
+        assertStatements(1, "/api/user/profile");
+        userActivityTracker.flush();
+        assertThat(userRepository.findByEmail(ADMIN_EMAIL).orElseThrow().getLastSeenAt()).isEqualTo(seen);
+
+        userActivityTracker.recordLogin(userId);
+        userActivityTracker.flush();
+        assertThat(userRepository.findById(userId).orElseThrow().getLastLoginAt()).isNotNull();
+
+        // Cuentas sin actividad reciente: todas menos el admin y la que acaba de iniciar sesión
+        mockMvc.perform(get("/api/admin/users?inactiveSince=" + seen.minusSeconds(60))
+                        .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.users.length()").value(REGULAR_USERS - 1));
+    }
+
+    @Test
+    void tenantEditsDoNotRecompileOtherTenants() throws Exception {
+        Long defaultEditor = roleRepository.findByName("EDITOR").orElseThrow().getId();
+        rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE);
+        long defaultVersion = rbacVersion.current(TenantContext.DEFAULT);
+
+        // Mismos nombres y mismo email en otro tenant: particiones independientes
+        Long acmeUser = TenantContext.callAs("acme", () -> {
+            Resource documents = rbacService.createResource("Documentos", null, "documents");
+            Permission read = rbacService.createPermission(documents.getId(), Operation.READ);
+            Role user = rbacService.createRole("USER", null);
+            rbacService.assignPermissionToRole(user.getId(), read.getId());
+            Long id = userRepository.save(user("user0@example.com", "acme-user-0", Set.of())).getId();
+            rbacService.assignRoleToUser(id, user.getId());
+            return id;
+        });
+        try {
+            assertThat(TenantContext.callAs("acme",
+                    () -> rbacService.hasPermission("user0@example.com", "documents", Operation.READ))).isTrue();
+            assertThat(TenantContext.callAs("acme",
+                    () -> rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE))).isFalse();
+
+            // El snapshot de "default" sigue vigente: solo los roles directos del usuario
+            assertThat(rbacVersion.current(TenantContext.DEFAULT)).isEqualTo(defaultVersion);
+            statistics.clear();
+            assertThat(rbacService.hasPermission("user0@example.com", "documents", Operation.UPDATE)).isTrue();
+            assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+
+            // Las búsquedas por id tampoco cruzan tenants
+            assertThatThrownBy(() -> TenantContext.runAs("acme", () -> rbacService.assignRoleToUser(acmeUser, defaultEditor)))
+                    .hasMessageContaining("Role not found");
+            Long defaultDocuments = resourceRepository.findByName("Documentos").orElseThrow().getId();
+            long acmeVersion = rbacVersion.current("acme");
+            assertThatThrownBy(() -> TenantContext.runAs("acme", () -> rbacService.deleteResource(defaultDocuments)))
+                    .isInstanceOf(NoSuchElementException.class);
+            assertThat(rbacVersion.current("acme")).isEqualTo(acmeVersion);
+            assertThat(resourceRepository.existsById(defaultDocuments)).isTrue();
+            assertThat(TenantContext.callAs("acme", () -> roleRepository.findAll()).stream().map(Role::getName))
+                    .containsExactly("USER");
+
+            // El tenant del token decide qué usuario es el principal
+            mockMvc.perform(get("/api/user/profile")
+                            .header("Authorization", "Bearer " + tokenProvider.generateToken("user0@example.com", "acme")))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.id").value(acmeUser))
+                    .andExpect(jsonPath("$.roles[0]").value("USER"));
+        } finally {
+            TenantContext.runAs("acme", () -> {
+                userRepository.deleteAll();
+                roleRepository.deleteAll();
+                permissionRepository.deleteAll();
+                resourceRepository.deleteAll();
+            });
+        }
+    }
+
+    private MvcResult assertStatements(long expected, String url) throws Exception {
+        return assertStatements(expected, get(url), status().isOk());
+    }
+
+    private MvcResult assertStatements(long expected, MockHttpServletRequestBuilder request,
+                                       ResultMatcher expectedStatus) throws Exception {
+        return assertStatements(expected, tokenProvider.generateToken(ADMIN_EMAIL), request, expectedStatus);
+    }
+
+    private MvcResult assertStatements(long expected, String token, MockHttpServletRequestBuilder request,
+                                       ResultMatcher expectedStatus) throws Exception {
+        statistics.clear();
+        MvcResult result = mockMvc.perform(request.header("Authorization", "Bearer " + token))
+                .andExpect(expectedStatus)
+                .andReturn();
+
+        assertThat(statistics.getPrepareStatementCount())
+                .as("SQL statements for %s", result.getRequest().getRequestURI())
+                .isEqualTo(expected);
+        return result;
+    }
+
+    private ResultActions bulk(Role role, String action, String body) throws Exception {
+        return mockMvc.perform(post("/api/rbac/roles/" + role.getId() + "/users/" + action)
+                .header("Authorization", "Bearer " + tokenProvider.generateToken(ADMIN_EMAIL))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+
+    private Resource resource(String name, String path) {
+        Resource resource = new Resource();
+        resource.setName(name);
+        resource.setPath(path);
+        return resourceRepository.save(resource);
+    }
+
+    private Permission permission(Resource resource, Operation operation) {
+        Permission permission = new Permission();
+        permission.setResource(resource);
+        permission.setOperation(operation);
+        return permissionRepository.save(permission);
+    }
+
+    private User user(String email, String oauthId, Set<Role> roles) {
+        return User.builder()
+                .email(email)
+                .name(oauthId)
+                .oauthProvider(OAuthProvider.GOOGLE)
+                .oauthId(oauthId)
+                .roles(new HashSet<>(roles))
+                .build();
+    }
+}
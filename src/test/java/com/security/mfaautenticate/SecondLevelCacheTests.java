@@ -0,0 +1,110 @@
+package com.security.mfaautenticate;
+
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.entity.Permission;
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.repository.PermissionRepository;
+import com.security.mfaautenticate.repository.ResourceRepository;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.service.RbacService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Role, Permission y Resource se leen del caché de segundo nivel y las escrituras
+ * de RbacService invalidan entidades, colecciones y consultas cacheadas.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class SecondLevelCacheTests {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private RbacService rbacService;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private ResourceRepository resourceRepository;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        roleRepository.findByName("CACHE_TEST").ifPresent(role -> rbacService.deleteRole(role.getId()));
+        permissionRepository.deleteAll();
+        resourceRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void cachedQueriesAreInvalidatedByWrites() {
+        rbacService.createResource("Reportes", null, "reports");
+        resourceRepository.findByPath("reports");
+
+        statistics.clear();
+        assertThat(resourceRepository.findByPath("reports")).isPresent();
+        assertThat(roleRepository.findByName("ADMIN")).isPresent();
+        assertThat(roleRepository.findByName("ADMIN")).isPresent();
+        assertThat(statistics.getQueryCacheHitCount()).isGreaterThanOrEqualTo(2);
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(1);
+
+        Role role = rbacService.createRole("CACHE_TEST", null);
+        assertThat(roleRepository.findByName("CACHE_TEST")).map(Role::getId).contains(role.getId());
+
+        rbacService.deleteRole(role.getId());
+        assertThat(roleRepository.findByName("CACHE_TEST")).isEmpty();
+    }
+
+    @Test
+    void rolePermissionsCollectionIsEvictedOnAssignment() {
+        Long resourceId = rbacService.createResource("Facturas", null, "invoices").getId();
+        Permission read = rbacService.createPermission(resourceId, Operation.READ);
+        Permission update = rbacService.createPermission(resourceId, Operation.UPDATE);
+        Long roleId = rbacService.createRole("CACHE_TEST", null).getId();
+        rbacService.assignPermissionToRole(roleId, read.getId());
+
+        assertThat(permissionIds(roleId)).containsExactly(read.getId());
+
+        statistics.clear();
+        assertThat(permissionIds(roleId)).containsExactly(read.getId());
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isPositive();
+
+        rbacService.assignPermissionToRole(roleId, update.getId());
+        assertThat(permissionIds(roleId)).containsExactlyInAnyOrder(read.getId(), update.getId());
+
+        rbacService.removePermissionFromRole(roleId, read.getId());
+        assertThat(permissionIds(roleId)).containsExactly(update.getId());
+
+        rbacService.removePermissionFromRole(roleId, update.getId());
+    }
+
+    private Set<Long> permissionIds(Long roleId) {
+        return transactionTemplate.execute(status -> roleRepository.findById(roleId).orElseThrow()
+                .getPermissions().stream()
+                .map(Permission::getId)
+                .collect(Collectors.toSet()));
+    }
+}
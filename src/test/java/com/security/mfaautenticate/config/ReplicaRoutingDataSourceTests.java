@@ -0,0 +1,78 @@
+package com.security.mfaautenticate.config;
+
+import com.security.mfaautenticate.entity.RbacEntityType;
+import com.security.mfaautenticate.service.RbacVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Dos pools sobre la misma base H2 en memoria: el primario y una "réplica" sin retraso.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + ReplicaRoutingDataSourceTests.PRIMARY_URL,
+        "app.datasource.replicas[0].url=" + ReplicaRoutingDataSourceTests.REPLICA_URL,
+        "app.datasource.health-check-ms=3600000"
+})
+@ActiveProfiles("test")
+class ReplicaRoutingDataSourceTests {
+
+    static final String PRIMARY_URL = "jdbc:h2:mem:mfa_routing_test;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    static final String REPLICA_URL = PRIMARY_URL + ";IFEXISTS=TRUE";
+
+    @Autowired
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RbacVersion rbacVersion;
+
+    @BeforeEach
+    void setUp() {
+        routingDataSource.checkReplicas();
+        ReflectionTestUtils.setField(routingDataSource, "primaryUntilNanos", System.nanoTime());
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplica() {
+        assertThat(routingDataSource.hasHealthyReplica()).isTrue();
+        assertThat(targetInTransaction(true)).isEqualTo("replica-0");
+        assertThat(targetInTransaction(false)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    void rbacChangeMakesReadsStickToPrimary() {
+        rbacVersion.recordChange(RbacEntityType.ROLE, 0L);
+
+        assertThat(targetInTransaction(true)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    @Test
+    void unhealthyReplicaFallsBackToPrimary() {
+        ReflectionTestUtils.setField(routingDataSource, "healthy", new boolean[]{false});
+
+        assertThat(targetInTransaction(true)).isEqualTo(ReplicaRoutingDataSource.PRIMARY);
+    }
+
+    private Object targetInTransaction(boolean readOnly) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(readOnly);
+        return template.execute(status -> {
+            assertThat(jdbcTemplate.queryForObject("select 1", Integer.class)).isEqualTo(1);
+            return routingDataSource.determineCurrentLookupKey();
+        });
+    }
+}
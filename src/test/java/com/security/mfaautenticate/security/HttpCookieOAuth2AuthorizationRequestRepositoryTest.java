@@ -0,0 +1,116 @@
+package com.security.mfaautenticate.security;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.oauth2.core.endpoint.OAuth2AuthorizationRequest;
+import org.springframework.security.oauth2.core.endpoint.OAuth2ParameterNames;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HttpCookieOAuth2AuthorizationRequestRepositoryTest {
+
+    private static final String SECRET = "test-secret-for-the-oauth2-cookie";
+    private static final String STATE = "state-123";
+
+    private final HttpCookieOAuth2AuthorizationRequestRepository repository = repository(Duration.ofMinutes(3));
+
+    @Test
+    void savedRequestIsLoadedBack() {
+        OAuth2AuthorizationRequest saved = authorizationRequest(Map.of("registration_id", "google"));
+
+        OAuth2AuthorizationRequest loaded = repository.loadAuthorizationRequest(callback(save(repository, saved), STATE));
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.getState()).isEqualTo(STATE);
+        assertThat(loaded.getClientId()).isEqualTo(saved.getClientId());
+        assertThat(loaded.getScopes()).isEqualTo(saved.getScopes());
+        assertThat(loaded.getAttributes()).isEqualTo(saved.getAttributes());
+        assertThat(loaded.getAuthorizationRequestUri()).isEqualTo(saved.getAuthorizationRequestUri());
+    }
+
+    @Test
+    void tamperedCookieIsDiscarded() {
+        String value = save(repository, authorizationRequest(Map.of()));
+        char last = value.charAt(value.length() - 1);
+        String tampered = value.substring(0, value.length() - 1) + (last == 'A' ? 'B' : 'A');
+
+        assertThat(repository.loadAuthorizationRequest(callback(tampered, STATE))).isNull();
+    }
+
+    @Test
+    void expiredCookieIsDiscarded() {
+        HttpCookieOAuth2AuthorizationRequestRepository expired = repository(Duration.ofSeconds(-1));
+        String value = save(expired, authorizationRequest(Map.of()));
+
+        assertThat(expired.loadAuthorizationRequest(callback(value, STATE))).isNull();
+    }
+
+    @Test
+    void stateMismatchIsDiscarded() {
+        String value = save(repository, authorizationRequest(Map.of()));
+
+        assertThat(repository.loadAuthorizationRequest(callback(value, "other-state"))).isNull();
+    }
+
+    @Test
+    void classesOutsideTheAllowListAreRejected() {
+        // Cifrada con la clave correcta, pero con un atributo de un tipo que la solicitud no usa
+        String value = save(repository, authorizationRequest(Map.of("issuedAt", Instant.now())));
+
+        assertThat(repository.loadAuthorizationRequest(callback(value, STATE))).isNull();
+    }
+
+    @Test
+    void removeReturnsTheRequestAndDeletesTheCookie() {
+        String value = save(repository, authorizationRequest(Map.of()));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(repository.removeAuthorizationRequest(callback(value, STATE), response)).isNotNull();
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertThat(setCookie).startsWith(HttpCookieOAuth2AuthorizationRequestRepository.COOKIE_NAME + "=;")
+                .contains("Max-Age=0");
+    }
+
+    private static HttpCookieOAuth2AuthorizationRequestRepository repository(Duration ttl) {
+        return new HttpCookieOAuth2AuthorizationRequestRepository(SECRET, ttl, false);
+    }
+
+    private static OAuth2AuthorizationRequest authorizationRequest(Map<String, Object> attributes) {
+        return OAuth2AuthorizationRequest.authorizationCode()
+                .authorizationUri("https://authorize.example.test")
+                .clientId("client")
+                .redirectUri("http://localhost/login/oauth2/code/google")
+                .scopes(Set.of("openid", "email"))
+                .state(STATE)
+                .additionalParameters(Map.of("nonce", "n-1"))
+                .attributes(attributes)
+                .build();
+    }
+
+    /**
+     * Guarda la solicitud y devuelve el valor de la cookie emitida.
+     */
+    private static String save(HttpCookieOAuth2AuthorizationRequestRepository repository,
+                               OAuth2AuthorizationRequest authorizationRequest) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        repository.saveAuthorizationRequest(authorizationRequest, new MockHttpServletRequest(), response);
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        return setCookie.substring(setCookie.indexOf('=') + 1, setCookie.indexOf(';'));
+    }
+
+    private static MockHttpServletRequest callback(String cookieValue, String state) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/login/oauth2/code/google");
+        request.setParameter(OAuth2ParameterNames.STATE, state);
+        request.setCookies(new Cookie(HttpCookieOAuth2AuthorizationRequestRepository.COOKIE_NAME, cookieValue));
+        return request;
+    }
+}
@@ -0,0 +1,91 @@
+package com.security.mfaautenticate.security;
+
+import com.security.mfaautenticate.entity.OAuthProvider;
+import com.security.mfaautenticate.entity.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PermissionConditionTest {
+
+    // Miércoles 10:30
+    private static final ZonedDateTime WEDNESDAY_MORNING = ZonedDateTime.of(2024, 5, 15, 10, 30, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void ownerOnlyComparesPathVariableWithUserId() {
+        PermissionCondition owner = PermissionCondition.compile("request.var.userId == user.id");
+
+        assertThat(owner.test(context(user(42L, false), Map.of("userId", "42"), WEDNESDAY_MORNING))).isTrue();
+        assertThat(owner.test(context(user(42L, false), Map.of("userId", "7"), WEDNESDAY_MORNING))).isFalse();
+        // Atributos ausentes nunca cumplen la condición
+        assertThat(owner.test(context(null, Map.of(), WEDNESDAY_MORNING))).isFalse();
+        assertThat(owner.test(ConditionContext.NONE)).isFalse();
+    }
+
+    @Test
+    void businessHoursAndMfaCombine() {
+        PermissionCondition condition = PermissionCondition.compile(
+                "user.mfaEnabled && (time.dayOfWeek <= 5 && time.hour >= 9 && time.hour < 18)");
+
+        assertThat(condition.test(context(user(1L, true), Map.of(), WEDNESDAY_MORNING))).isTrue();
+        assertThat(condition.test(context(user(1L, false), Map.of(), WEDNESDAY_MORNING))).isFalse();
+        assertThat(condition.test(context(user(1L, true), Map.of(), WEDNESDAY_MORNING.plusDays(3)))).isFalse();
+        assertThat(condition.test(context(user(1L, true), Map.of(), WEDNESDAY_MORNING.withHour(20)))).isFalse();
+    }
+
+    @Test
+    void negationAndNullChecksFailClosed() {
+        assertThat(PermissionCondition.compile("!user.mfaEnabled").test(ConditionContext.NONE)).isFalse();
+        assertThat(PermissionCondition.compile("user.provider != 'GITHUB'").test(ConditionContext.NONE)).isFalse();
+        assertThat(PermissionCondition.compile("user.id == null && request.param.x == null")
+                .test(ConditionContext.NONE)).isTrue();
+        assertThat(PermissionCondition.compile("user.provider == 'GOOGLE'")
+                .test(context(user(1L, false), Map.of(), WEDNESDAY_MORNING))).isTrue();
+    }
+
+    @Test
+    void expressionsAreTrimmedAndValidated() {
+        assertThat(PermissionCondition.compile("  user.mfaEnabled ")
+                .test(context(user(1L, true), Map.of(), WEDNESDAY_MORNING))).isTrue();
+
+        assertThatThrownBy(() -> PermissionCondition.compile("user.password == 'x'"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("atributo desconocido");
+        assertThatThrownBy(() -> PermissionCondition.compile("user.id == ")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PermissionCondition.compile("(user.mfaEnabled")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PermissionCondition.compile("user.id = 1")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static User user(Long id, boolean mfaEnabled) {
+        return User.builder()
+                .id(id)
+                .email("user" + id + "@example.com")
+                .oauthProvider(OAuthProvider.GOOGLE)
+                .mfaEnabled(mfaEnabled)
+                .build();
+    }
+
+    private static ConditionContext context(User user, Map<String, String> pathVariables, ZonedDateTime now) {
+        return new ConditionContext() {
+            @Override
+            public User user() {
+                return user;
+            }
+
+            @Override
+            public String pathVariable(String name) {
+                return pathVariables.get(name);
+            }
+
+            @Override
+            public ZonedDateTime now() {
+                return now;
+            }
+        };
+    }
+}
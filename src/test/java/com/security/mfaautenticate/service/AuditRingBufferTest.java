@@ -0,0 +1,72 @@
+package com.security.mfaautenticate.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditRingBufferTest {
+
+    @Test
+    void fullBufferRejectsUntilDrained() {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(3); // se redondea a 4
+        assertThat(buffer.capacity()).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(buffer.offer(i)).isTrue();
+        }
+        assertThat(buffer.offer(4)).isFalse();
+
+        List<Integer> drained = new ArrayList<>();
+        assertThat(buffer.drainTo(drained, 3)).isEqualTo(3);
+        assertThat(drained).containsExactly(0, 1, 2);
+
+        // Las celdas liberadas se reutilizan en la vuelta siguiente
+        assertThat(buffer.offer(5)).isTrue();
+        assertThat(buffer.offer(6)).isTrue();
+        assertThat(buffer.offer(7)).isTrue();
+        assertThat(buffer.offer(8)).isFalse();
+        drained.clear();
+        buffer.drainTo(drained, 10);
+        assertThat(drained).containsExactly(3, 5, 6, 7);
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void concurrentProducersLoseNothingThatWasAccepted() throws Exception {
+        AuditRingBuffer<Integer> buffer = new AuditRingBuffer<>(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Set<Integer> accepted = ConcurrentHashMap.newKeySet();
+
+        for (int thread = 0; thread < 8; thread++) {
+            int base = thread * 100_000;
+            executor.submit(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (buffer.offer(base + i)) {
+                        accepted.add(base + i);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        List<Integer> consumed = new ArrayList<>();
+        // Un solo consumidor vacía mientras los productores publican
+        while (!executor.awaitTermination(1, TimeUnit.MILLISECONDS)) {
+            buffer.drainTo(consumed, 256);
+        }
+        buffer.drainTo(consumed, Integer.MAX_VALUE);
+
+        // Cada elemento aceptado sale exactamente una vez
+        assertThat(consumed).hasSize(accepted.size());
+        assertThat(new HashSet<>(consumed)).isEqualTo(accepted);
+    }
+}
@@ -0,0 +1,85 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.entity.Role;
+import com.security.mfaautenticate.entity.User;
+import com.security.mfaautenticate.security.CustomOAuth2User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.registration.ClientRegistration;
+import org.springframework.security.oauth2.client.userinfo.OAuth2UserRequest;
+import org.springframework.security.oauth2.core.AuthorizationGrantType;
+import org.springframework.security.oauth2.core.OAuth2AccessToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+/**
+ * Alta de usuarios por OAuth2 (userinfo simulado): quién recibe ADMIN al darse de alta.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:mfa_oauth2_users;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "app.tenancy.email-domains.acme.com=acme",
+        "app.tenancy.email-domains.globex.com=globex",
+        "app.tenancy.admin-emails.globex[0]=it@globex.com"
+})
+@ActiveProfiles("test")
+class CustomOAuth2UserServiceTests {
+
+    private static final String USER_INFO_URI = "https://userinfo.example.test/v1";
+
+    @Autowired
+    private CustomOAuth2UserService customOAuth2UserService;
+
+    private MockRestServiceServer userInfo;
+
+    @BeforeEach
+    void stubUserInfo() {
+        RestTemplate restTemplate = new RestTemplate();
+        userInfo = MockRestServiceServer.bindTo(restTemplate).build();
+        customOAuth2UserService.setRestOperations(restTemplate);
+    }
+
+    @Test
+    void onlyTheFirstUserOfTheInstallationOrAConfiguredEmailBecomesAdmin() {
+        // Primer usuario de toda la instalación
+        assertThat(roles(login("founder@example.com"))).containsExactly("ADMIN");
+        // Primero de un tenant nuevo: no administra el tenant por haber llegado antes
+        assertThat(roles(login("first@acme.com"))).containsExactly("USER");
+        // Administrador declarado en app.tenancy.admin-emails
+        assertThat(roles(login("IT@globex.com"))).containsExactly("ADMIN");
+        assertThat(roles(login("other@globex.com"))).containsExactly("USER");
+    }
+
+    private User login(String email) {
+        userInfo.reset();
+        userInfo.expect(requestTo(USER_INFO_URI)).andRespond(withSuccess(
+                "{\"sub\":\"" + email + "\",\"email\":\"" + email + "\",\"name\":\"" + email + "\"}",
+                MediaType.APPLICATION_JSON));
+
+        ClientRegistration google = ClientRegistration.withRegistrationId("google")
+                .clientId("client")
+                .authorizationGrantType(AuthorizationGrantType.AUTHORIZATION_CODE)
+                .redirectUri("{baseUrl}/login/oauth2/code/{registrationId}")
+                .authorizationUri("https://authorize.example.test")
+                .tokenUri("https://token.example.test")
+                .userInfoUri(USER_INFO_URI)
+                .userNameAttributeName("sub")
+                .build();
+        OAuth2AccessToken token = new OAuth2AccessToken(OAuth2AccessToken.TokenType.BEARER, "token",
+                Instant.now(), Instant.now().plusSeconds(60));
+        return ((CustomOAuth2User) customOAuth2UserService.loadUser(new OAuth2UserRequest(google, token))).getUser();
+    }
+
+    private static java.util.List<String> roles(User user) {
+        return user.getRoles().stream().map(Role::getName).toList();
+    }
+}
@@ -0,0 +1,43 @@
+package com.security.mfaautenticate.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinuteRateCounterTest {
+
+    @Test
+    void bucketsRotateWhenTheWindowWrapsAround() {
+        MinuteRateCounter counter = new MinuteRateCounter(3);
+
+        counter.increment(100);
+        counter.increment(100);
+        counter.increment(101);
+        counter.increment(103); // reutiliza la celda del minuto 100
+
+        assertThat(counter.lastMinutes(103, 3)).containsExactly(1, 0, 1);
+        assertThat(counter.lastMinutes(102, 3)).containsExactly(0, 1, 0);
+    }
+
+    @Test
+    void concurrentIncrementsAreNotLost() throws Exception {
+        MinuteRateCounter counter = new MinuteRateCounter(60);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int thread = 0; thread < 8; thread++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.increment(500);
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(counter.lastMinutes(500, 1)).containsExactly(80_000);
+    }
+}
@@ -0,0 +1,48 @@
+package com.security.mfaautenticate.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PathTrieTest {
+
+    @Test
+    void mostSpecificPatternWins() {
+        PathTrie.Builder<String> builder = PathTrie.builder();
+        builder.add("documents", "exact");
+        builder.add("documents/**", "subtree");
+        builder.add("documents/*", "child");
+        builder.add("documents/drafts", "drafts");
+        builder.add("documents/*/history", "history");
+        builder.add("documents/archive/**", "archive");
+        PathTrie<String> trie = builder.build();
+
+        assertThat(trie.match("documents")).isEqualTo("exact");
+        assertThat(trie.match("/documents/")).isEqualTo("exact");
+        assertThat(trie.match("documents/drafts")).isEqualTo("drafts");
+        assertThat(trie.match("documents/invoices")).isEqualTo("child");
+        assertThat(trie.match("documents/invoices/history")).isEqualTo("history");
+        assertThat(trie.match("documents/invoices/2024")).isEqualTo("subtree");
+        // El literal "drafts" no tiene "history": se retrocede al comodín del mismo nivel
+        assertThat(trie.match("documents/drafts/history")).isEqualTo("history");
+        assertThat(trie.match("documents/archive")).isEqualTo("archive");
+        assertThat(trie.match("documents/archive/2020/q1")).isEqualTo("archive");
+        assertThat(trie.match("products")).isNull();
+        assertThat(trie.match("documents//drafts")).isNull();
+    }
+
+    @Test
+    void invalidOrRepeatedPatternsAreRejected() {
+        PathTrie.Builder<String> builder = PathTrie.builder();
+        assertThat(builder.add("reports/*", "first")).isTrue();
+        assertThat(builder.add("reports/*", "second")).isFalse();
+        assertThat(builder.add("reports/**/pdf", "middle")).isFalse();
+        assertThat(builder.add("/", "root")).isFalse();
+        assertThat(builder.build().match("reports/monthly")).isEqualTo("first");
+
+        assertThatThrownBy(() -> PathTrie.validate("reports/**/pdf")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> PathTrie.validate("")).isInstanceOf(IllegalArgumentException.class);
+        PathTrie.validate("reports/**");
+    }
+}
@@ -0,0 +1,205 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.dto.RbacImportResult;
+import com.security.mfaautenticate.dto.RbacManifest;
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.repository.PermissionRepository;
+import com.security.mfaautenticate.repository.RoleRepository;
+import com.security.mfaautenticate.service.RbacManifestService.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Importación idempotente, dry-run y prune del manifiesto RBAC.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class RbacManifestServiceTests {
+
+    private static final String MANIFEST = """
+            resources:
+              - name: Documentos
+                path: documents
+                operations: [READ, UPDATE]
+              - name: Productos
+                path: products
+                operations: [READ]
+            roles:
+              - name: LECTOR
+                grants:
+                  - resource: Documentos
+                    operations: [READ]
+              - name: EDITOR
+                description: Edita documentos
+                parents: [LECTOR]
+                grants:
+                  - resource: Documentos
+                    operations: [READ, UPDATE]
+                  - resource: Productos
+                    operations: [READ, DELETE]
+            """;
+
+    @Autowired
+    private RbacManifestService manifestService;
+
+    @Autowired
+    private RbacVersion rbacVersion;
+
+    @Autowired
+    private RoleRepository roleRepository;
+
+    @Autowired
+    private PermissionRepository permissionRepository;
+
+    @BeforeEach
+    @AfterEach
+    void prune() {
+        manifestService.importManifest(new RbacManifest(List.of(), List.of()), true, false);
+    }
+
+    @Test
+    void importIsIdempotentAndExportRoundTrips() throws Exception {
+        RbacImportResult first = manifestService.importManifest(read(MANIFEST, Format.YAML), false, false);
+        assertThat(first.getResourcesCreated()).isEqualTo(2);
+        // DELETE sobre Productos solo aparece en la concesión y también se crea
+        assertThat(first.getPermissionsCreated()).isEqualTo(4);
+        assertThat(first.getRolesCreated()).isEqualTo(2);
+        assertThat(first.getGrantsAdded()).isEqualTo(5);
+        assertThat(first.getParentsAdded()).isEqualTo(1);
+        assertThat(first.getVersion()).isEqualTo(rbacVersion.current());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifestService.exportManifest(out, Format.JSON);
+        RbacManifest exported = read(out.toString(StandardCharsets.UTF_8), Format.JSON);
+        assertThat(exported.roles())
+                .filteredOn(role -> role.name().equals("EDITOR"))
+                .singleElement()
+                .satisfies(role -> {
+                    assertThat(role.parents()).containsExactly("LECTOR");
+                    assertThat(role.grants()).hasSize(2);
+                });
+
+        long version = rbacVersion.current();
+        RbacImportResult second = manifestService.importManifest(exported, false, false);
+        assertThat(second.getResourcesCreated() + second.getResourcesUpdated()
+                + second.getPermissionsCreated() + second.getPermissionsUpdated() + second.getRolesCreated() + second.getRolesUpdated()
+                + second.getGrantsAdded() + second.getGrantsRevoked()
+                + second.getParentsAdded() + second.getParentsRemoved()).isZero();
+        assertThat(rbacVersion.current()).isEqualTo(version);
+    }
+
+    @Test
+    void permissionConditionsRoundTrip() throws Exception {
+        String conditional = MANIFEST.replace("\n    operations: [READ, UPDATE]\n",
+                "\n    operations: [READ, UPDATE]\n    conditions:\n      UPDATE: user.mfaEnabled\n");
+        manifestService.importManifest(read(conditional, Format.YAML), false, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifestService.exportManifest(out, Format.JSON);
+        RbacManifest exported = read(out.toString(StandardCharsets.UTF_8), Format.JSON);
+        assertThat(exported.resources())
+                .filteredOn(resource -> resource.name().equals("Documentos"))
+                .singleElement()
+                .satisfies(resource -> assertThat(resource.conditions())
+                        .containsExactly(Map.entry(Operation.UPDATE, "user.mfaEnabled")));
+
+        long version = rbacVersion.current();
+        assertThat(manifestService.importManifest(exported, false, false).getPermissionsUpdated()).isZero();
+        assertThat(rbacVersion.current()).isEqualTo(version);
+
+        // Sin la condición en el manifiesto el permiso queda incondicional
+        RbacImportResult cleared = manifestService.importManifest(read(MANIFEST, Format.YAML), false, false);
+        assertThat(cleared.getPermissionsUpdated()).isEqualTo(1);
+        assertThat(cleared.getPermissionsCreated()).isZero();
+        assertThat(rbacVersion.current()).isGreaterThan(version);
+        assertThat(permissionRepository.findAll()).allSatisfy(permission -> assertThat(permission.getCondition()).isNull());
+
+        RbacManifest invalid = read("""
+                resources:
+                  - name: Documentos
+                    path: documents
+                    operations: [READ]
+                    conditions:
+                      READ: "user.mfaEnabled &&"
+                """, Format.YAML);
+        assertThatThrownBy(() -> manifestService.importManifest(invalid, false, false))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        RbacManifest unlisted = read("""
+                resources:
+                  - name: Documentos
+                    path: documents
+                    operations: [READ]
+                    conditions:
+                      DELETE: user.mfaEnabled
+                """, Format.YAML);
+        assertThatThrownBy(() -> manifestService.importManifest(unlisted, false, false))
+                .hasMessageContaining("DELETE");
+    }
+
+    @Test
+    void dryRunReportsChangesWithoutWriting() throws Exception {
+        manifestService.importManifest(read(MANIFEST, Format.YAML), false, false);
+        long permissions = permissionRepository.count();
+        long version = rbacVersion.current();
+
+        RbacManifest reduced = read("""
+                resources:
+                  - name: Documentos
+                    path: documents
+                    operations: [READ]
+                roles:
+                  - name: EDITOR
+                    grants:
+                      - resource: Documentos
+                        operations: [READ]
+                """, Format.YAML);
+
+        RbacImportResult dryRun = manifestService.importManifest(reduced, true, true);
+        assertThat(dryRun.getResourcesDeleted()).isEqualTo(1);
+        assertThat(dryRun.getPermissionsDeleted()).isEqualTo(3);
+        assertThat(dryRun.getGrantsRevoked()).isEqualTo(3);
+        assertThat(dryRun.getRolesDeleted()).isEqualTo(1);
+        assertThat(dryRun.getParentsRemoved()).isEqualTo(1);
+        assertThat(permissionRepository.count()).isEqualTo(permissions);
+        assertThat(rbacVersion.current()).isEqualTo(version);
+
+        RbacImportResult applied = manifestService.importManifest(reduced, true, false);
+        assertThat(applied.getPermissionsDeleted()).isEqualTo(3);
+        assertThat(permissionRepository.count()).isEqualTo(1);
+        assertThat(roleRepository.findByName("ADMIN")).isPresent();
+        assertThat(rbacVersion.current()).isGreaterThan(version);
+    }
+
+    @Test
+    void hierarchyCyclesAreRejected() throws Exception {
+        RbacManifest cyclic = read("""
+                roles:
+                  - name: A
+                    parents: [B]
+                  - name: B
+                    parents: [A]
+                """, Format.YAML);
+
+        assertThatThrownBy(() -> manifestService.importManifest(cyclic, false, true))
+                .hasMessageContaining("Ciclo");
+        assertThat(roleRepository.findByName("A")).isEmpty();
+    }
+
+    private RbacManifest read(String manifest, Format format) throws Exception {
+        return manifestService.read(new ByteArrayInputStream(manifest.getBytes(StandardCharsets.UTF_8)), format);
+    }
+}
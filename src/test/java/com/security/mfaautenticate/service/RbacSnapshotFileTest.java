@@ -0,0 +1,91 @@
+package com.security.mfaautenticate.service;
+
+import com.security.mfaautenticate.entity.Operation;
+import com.security.mfaautenticate.security.ConditionContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RbacSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotRoundTripsThroughMappedFile() throws IOException {
+        // Rol 2 hereda de 1; bit 0 = documents READ, bit 1 = documents UPDATE con condición
+        int[] documents = new int[Operation.values().length];
+        Arrays.fill(documents, -1);
+        documents[Operation.READ.ordinal()] = 0;
+        documents[Operation.UPDATE.ordinal()] = 1;
+        BitSet reader = BitSet.valueOf(new long[]{0b01});
+        BitSet editor = BitSet.valueOf(new long[]{0b11});
+        Map<String, Long> patterns = new LinkedHashMap<>();
+        patterns.put("documents/**", 10L);
+
+        EffectivePermissions.Snapshot model = EffectivePermissions.Snapshot.restored(42,
+                Map.of(2L, Set.of(1L)), Map.of(10L, documents), Map.of(100L, 0, 101L, 1), 2,
+                Map.of(1L, reader, 2L, BitSet.valueOf(new long[]{0b10})), Map.of(1L, reader, 2L, editor),
+                new String[]{null, "user.mfaEnabled"}, patterns);
+        RbacSnapshotFile.Subject alice = new RbacSnapshotFile.Subject(7, "alice@example.com", "GOOGLE", true,
+                new long[]{2L});
+        Instant writtenAt = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        Path file = directory.resolve("rbac.bin");
+        RbacSnapshotFile.write(file, new RbacSnapshotFile.Contents(writtenAt,
+                Map.of("acme", new RbacSnapshotFile.TenantSnapshot(model, Map.of(1L, "READER", 2L, "ñandú"),
+                        List.of(alice)))));
+        RbacSnapshotFile.Contents read = RbacSnapshotFile.read(file);
+
+        assertThat(read.writtenAt()).isEqualTo(writtenAt);
+        RbacSnapshotFile.TenantSnapshot tenant = read.tenants().get("acme");
+        EffectivePermissions.Snapshot restored = tenant.model();
+        assertThat(restored.version()).isEqualTo(42);
+        assertThat(restored.nextBit()).isEqualTo(2);
+        assertThat(restored.parents()).isEqualTo(Map.of(2L, Set.of(1L)));
+        assertThat(restored.permissionBits()).isEqualTo(Map.of(100L, 0, 101L, 1));
+        assertThat(restored.effective()).isEqualTo(Map.of(1L, reader, 2L, editor));
+        assertThat(restored.bit(10L, Operation.UPDATE)).isEqualTo(1);
+        assertThat(restored.bit(10L, Operation.DELETE)).isEqualTo(-1);
+        // Trie y condiciones se reconstruyen al leer
+        assertThat(restored.paths().match("documents/drafts/2024")).isEqualTo(10L);
+        assertThat(restored.conditions()[0]).isNull();
+        assertThat(restored.conditions()[1].test(ConditionContext.NONE)).isFalse();
+        assertThat(tenant.roles()).containsEntry(2L, "ñandú");
+        assertThat(tenant.users()).singleElement().satisfies(user -> {
+            assertThat(user.email()).isEqualTo("alice@example.com");
+            assertThat(user.mfaEnabled()).isTrue();
+            assertThat(user.roleIds()).containsExactly(2L);
+        });
+        // Solo queda el archivo final, sin temporales
+        try (var files = Files.list(directory)) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void corruptedOrForeignFilesAreRejected() throws IOException {
+        Path file = directory.resolve("rbac.bin");
+        RbacSnapshotFile.write(file, new RbacSnapshotFile.Contents(Instant.now(), Map.of("default",
+                new RbacSnapshotFile.TenantSnapshot(EffectivePermissions.Snapshot.EMPTY.withVersion(1), Map.of(),
+                        List.of()))));
+        assertThat(RbacSnapshotFile.read(file).tenants()).containsOnlyKeys("default");
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThatThrownBy(() -> RbacSnapshotFile.read(file)).isInstanceOf(IOException.class).hasMessageContaining("CRC");
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThatThrownBy(() -> RbacSnapshotFile.read(file)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,71 @@
+-- Esquema que generaba la aplicación antes de Flyway (Hibernate 6.3, ddl-auto: update, PostgreSQL),
+-- con datos mínimos. Las pruebas lo cargan tal cual (ids bigserial) o con columnas identity,
+-- como las creaban versiones anteriores de Hibernate 6.
+
+create table permissions (
+    id bigserial not null,
+    operation varchar(255) not null check (operation in ('CREATE','READ','UPDATE','DELETE')),
+    resource_id bigint not null,
+    primary key (id)
+);
+
+create table resources (
+    id bigserial not null,
+    description varchar(255),
+    name varchar(255) not null,
+    path varchar(255) not null,
+    primary key (id)
+);
+
+create table role_permissions (
+    role_id bigint not null,
+    permission_id bigint not null,
+    primary key (role_id, permission_id)
+);
+
+create table roles (
+    id bigserial not null,
+    description varchar(255),
+    name varchar(255) not null,
+    primary key (id)
+);
+
+create table user_roles (
+    user_id bigint not null,
+    role_id bigint not null,
+    primary key (user_id, role_id)
+);
+
+create table users (
+    id bigserial not null,
+    email varchar(255) not null,
+    mfa_enabled boolean,
+    mfa_secret varchar(255),
+    name varchar(255),
+    oauth_id varchar(255) not null,
+    oauth_provider varchar(255) not null check (oauth_provider in ('LOCAL','GOOGLE','GITHUB','FACEBOOK')),
+    password varchar(255),
+    using_mfa boolean,
+    primary key (id)
+);
+
+alter table if exists resources add constraint UK_l85pqajoc7v2drqv3tj3rcmpq unique (name);
+alter table if exists roles add constraint UK_ofx66keruapi6vyqpv6f2or37 unique (name);
+alter table if exists users add constraint UK94v11ixih73new14vukvmfkjl unique (oauth_provider, oauth_id);
+alter table if exists permissions add constraint FKio77ost2pn4qdd6hly0clvca6 foreign key (resource_id) references resources;
+alter table if exists role_permissions add constraint FKegdk29eiy7mdtefy5c7eirr6e foreign key (permission_id) references permissions;
+alter table if exists role_permissions add constraint FKn5fotdgk8d1xvo8nav9uv3muc foreign key (role_id) references roles;
+alter table if exists user_roles add constraint FKh8ciramu9cc9q3qcqiv4ue8a6 foreign key (role_id) references roles;
+alter table if exists user_roles add constraint FKhfh9dx7w3ubf1co1vdev94g3f foreign key (user_id) references users;
+
+insert into roles (name, description) values ('ADMIN', 'Administrador del sistema');
+insert into roles (name, description) values ('USER', 'Usuario estándar');
+insert into resources (name, description, path) values ('Documents', null, 'documents');
+insert into permissions (resource_id, operation) values (1, 'READ');
+insert into role_permissions (role_id, permission_id) values (2, 1);
+insert into users (email, name, oauth_provider, oauth_id, mfa_enabled, using_mfa)
+values ('admin@example.com', 'Admin', 'GOOGLE', 'google-1', false, false);
+insert into users (email, name, oauth_provider, oauth_id, mfa_enabled, using_mfa)
+values ('user@example.com', 'User', 'GITHUB', 'github-2', true, true);
+insert into user_roles (user_id, role_id) values (1, 1);
+insert into user_roles (user_id, role_id) values (2, 2);